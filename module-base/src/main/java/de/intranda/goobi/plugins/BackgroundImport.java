@@ -0,0 +1,102 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Runs imports on background threads, so that a long import does not block the thread that started the step. At most one import runs for
+ * each process, further imports wait in a queue until a thread is free. The import of a batch is registered for all of its processes.
+ */
+@Log4j2
+public final class BackgroundImport {
+
+    // number of imports running at the same time, each import can use additional threads for the catalogue requests
+    private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "structure-import-" + THREAD_NUMBER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // progress of the queued and running imports by process id
+    private static final Map<Integer, ImportProgress> IMPORTS = new ConcurrentHashMap<>();
+
+    private BackgroundImport() {
+    }
+
+    /**
+     * Start an import in the background, unless an import of the process is already queued or running
+     *
+     * @param processId the id of the process
+     * @param progress the progress of the new import
+     * @param task the import, it is called with the progress
+     * @return false if an import of the process is already queued or running
+     */
+    public static boolean start(int processId, ImportProgress progress, Runnable task) {
+        return start(Collections.singletonList(processId), progress, task);
+    }
+
+    /**
+     * Start an import of several processes in the background, unless an import of one of the processes is already queued or running
+     *
+     * @param processIds the ids of all processes changed by the import
+     * @param progress the progress of the new import, it is returned for each of the processes
+     * @param task the import, it is called with the progress
+     * @return false if an import of one of the processes is already queued or running
+     */
+    public static boolean start(Collection<Integer> processIds, ImportProgress progress, Runnable task) {
+        List<Integer> registered = new ArrayList<>();
+        for (Integer processId : new LinkedHashSet<>(processIds)) {
+            if (IMPORTS.putIfAbsent(processId, progress) != null) {
+                remove(registered, progress);
+                return false;
+            }
+            registered.add(processId);
+        }
+        try {
+            EXECUTOR.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.error("Structure import of processes {} failed", registered, e);
+                } finally {
+                    progress.finish();
+                    remove(registered, progress);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            remove(registered, progress);
+            throw e;
+        }
+        return true;
+    }
+
+    private static void remove(List<Integer> processIds, ImportProgress progress) {
+        for (Integer processId : processIds) {
+            IMPORTS.remove(processId, progress);
+        }
+    }
+
+    /**
+     *
+     * @param processId the id of the process
+     * @return the progress of the queued or running import of the process, null if there is none
+     */
+    public static ImportProgress getProgress(int processId) {
+        return IMPORTS.get(processId);
+    }
+}
@@ -0,0 +1,17 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a catalogue is not queried, because it failed repeatedly or its rate limit does not allow another request in time. The
+ * structure element is created without catalogue data.
+ */
+public class CatalogueUnavailableException extends IOException {
+
+    private static final long serialVersionUID = -4470623585416019852L;
+
+    public CatalogueUnavailableException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,80 @@
+package de.intranda.goobi.plugins;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+
+/**
+ * Converts the cells of an Excel file into the strings passed to the {@link RowHandler}. Both Excel readers use it, so that a file gives the same
+ * values with each reader. Data cells contain numbers without decimal places and the result of formulas. Header cells keep the decimal places of
+ * numbers and contain the text of formulas, so that the configured column names are matched against the header as it is written in the file.
+ */
+public final class CellFormatter {
+
+    private CellFormatter() {
+    }
+
+    /**
+     * Format a cell of the POI usermodel
+     *
+     * @param cell the cell, may be null
+     * @param headerRow true if the cell belongs to the header row
+     * @return the value of the cell, an empty string for missing, blank or error cells
+     */
+    public static String format(Cell cell, boolean headerRow) {
+        if (cell == null) {
+            return "";
+        }
+        CellType type = cell.getCellType();
+        if (type == CellType.FORMULA) {
+            if (headerRow) {
+                return formatFormula(cell.getCellFormula());
+            }
+            type = cell.getCachedFormulaResultType();
+        }
+        switch (type) {
+            case BOOLEAN:
+                return formatBoolean(cell.getBooleanCellValue());
+            case NUMERIC:
+                return formatNumber(cell.getNumericCellValue(), headerRow);
+            case STRING:
+                return formatString(cell.getStringCellValue());
+            default:
+                // none, error, blank
+                return "";
+        }
+    }
+
+    /**
+     *
+     * @return true or false
+     */
+    public static String formatBoolean(boolean value) {
+        return String.valueOf(value);
+    }
+
+    /**
+     * 
+     * @param headerRow true to keep the decimal places
+     * @return the number, in data rows without decimal places
+     */
+    public static String formatNumber(double value, boolean headerRow) {
+        return headerRow ? String.valueOf(value) : String.valueOf((long) value);
+    }
+
+    /**
+     * 
+     * @return the value, an empty string for null
+     */
+    public static String formatString(String value) {
+        return value == null ? "" : value;
+    }
+
+    /**
+     * 
+     * @param formula the formula without the leading equals sign
+     * @return the formula, an empty string for null
+     */
+    public static String formatFormula(String formula) {
+        return formula == null ? "" : formula;
+    }
+}
@@ -1,15 +1,15 @@
 package de.intranda.goobi.plugins;
 
 import lombok.Getter;
-import lombok.Setter;
+import lombok.RequiredArgsConstructor;
 
 @Getter
-@Setter
+@RequiredArgsConstructor
 public class Column {
 
     // analyze header row
-    private String columnName;
+    private final String columnName;
 
-    private String metadataName;
+    private final String metadataName;
 
-}
\ No newline at end of file
+}
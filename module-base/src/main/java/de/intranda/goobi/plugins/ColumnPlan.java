@@ -0,0 +1,206 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.Getter;
+import ugh.dl.DocStructType;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+
+/**
+ * The configured columns and structure types, resolved once per import against the header row and the ruleset. Data rows are then read by
+ * column index only. A configured structure type that is not defined in the ruleset is only an error for the rows that use it.
+ */
+public class ColumnPlan {
+
+    // index of columns that are not configured
+    public static final int NOT_CONFIGURED = -1;
+
+    @Getter
+    private final int identifierColumn;
+    @Getter
+    private final int doctypeColumn;
+    @Getter
+    private final int hierarchyColumn;
+    // only used in parent id mode
+    @Getter
+    private final int idColumn;
+    @Getter
+    private final int parentIdColumn;
+    @Getter
+    private final int imageStartColumn;
+    @Getter
+    private final int imageEndColumn;
+
+    // index and metadata type of each configured metadata column, in configuration order
+    private final int[] metadataColumns;
+    private final MetadataType[] metadataTypes;
+    // true if a later column has the same metadata type and replaces the value of the column
+    private final boolean[] overwritten;
+
+    private final Map<String, DocStructType> docStructTypes;
+    // label and name of the configured structure types that are not defined in the ruleset
+    private final Map<String, String> undefinedDocStructTypes;
+
+    private final List<String> errors = new ArrayList<>();
+
+    /**
+     * Resolve the configuration against the header row and the ruleset
+     * 
+     * @param header the values of the header row
+     * @param config the import configuration containing the column names and the structure type mapping
+     * @param prefs the ruleset
+     * @throws InvalidSpreadsheetException if a column is missing in the header row or a metadata type is not defined in the ruleset
+     */
+    public ColumnPlan(List<String> header, ImportConfiguration config, Prefs prefs) throws InvalidSpreadsheetException {
+        Map<String, Integer> headerOrder = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            headerOrder.put(header.get(i), i);
+        }
+
+        if (StringUtils.isBlank(config.getIdentifierColumnName())) {
+            identifierColumn = NOT_CONFIGURED;
+        } else {
+            identifierColumn = getColumnIndex(headerOrder, config.getIdentifierColumnName());
+        }
+        doctypeColumn = getColumnIndex(headerOrder, config.getDoctypeColumnName());
+        if (config.isParentIdMode()) {
+            hierarchyColumn = NOT_CONFIGURED;
+            idColumn = getColumnIndex(headerOrder, config.getIdColumnName());
+            parentIdColumn = getColumnIndex(headerOrder, config.getParentIdColumnName());
+        } else {
+            hierarchyColumn = getColumnIndex(headerOrder, config.getHierarchyColumnName());
+            idColumn = NOT_CONFIGURED;
+            parentIdColumn = NOT_CONFIGURED;
+        }
+        imageStartColumn = getColumnIndex(headerOrder, config.getImageStartColumnName());
+        imageEndColumn = getColumnIndex(headerOrder, config.getImageEndColumnName());
+
+        List<Column> columns = config.getColumns();
+        metadataColumns = new int[columns.size()];
+        metadataTypes = new MetadataType[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            Column col = columns.get(i);
+            metadataColumns[i] = getColumnIndex(headerOrder, col.getColumnName());
+            metadataTypes[i] = prefs.getMetadataTypeByName(col.getMetadataName());
+            if (metadataTypes[i] == null) {
+                errors.add("Metadata type '" + col.getMetadataName() + "' is not defined in the ruleset");
+            }
+        }
+
+        overwritten = new boolean[columns.size()];
+        Map<String, Integer> lastColumns = new HashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            Integer previous = lastColumns.put(columns.get(i).getMetadataName(), i);
+            if (previous != null) {
+                overwritten[previous] = true;
+            }
+        }
+
+        Map<String, DocStructType> types = new HashMap<>();
+        Map<String, String> undefinedTypes = new HashMap<>();
+        for (Map.Entry<String, String> entry : config.getDocstructs().entrySet()) {
+            DocStructType type = prefs.getDocStrctTypeByName(entry.getValue());
+            if (type == null) {
+                undefinedTypes.put(entry.getKey(), entry.getValue());
+            } else {
+                types.put(entry.getKey(), type);
+            }
+        }
+        docStructTypes = Collections.unmodifiableMap(types);
+        undefinedDocStructTypes = Collections.unmodifiableMap(undefinedTypes);
+
+        if (!errors.isEmpty()) {
+            throw new InvalidSpreadsheetException("Invalid configuration for the header row: " + String.join("; ", errors));
+        }
+    }
+
+    private int getColumnIndex(Map<String, Integer> headerOrder, String columnName) {
+        Integer index = headerOrder.get(columnName);
+        if (index == null) {
+            errors.add("Column '" + columnName + "' is missing");
+            return NOT_CONFIGURED;
+        }
+        return index;
+    }
+
+    /**
+     * Get the value of a column
+     * 
+     * @param row the values of the row
+     * @param columnIndex the index of the column
+     * @return the value or an empty string, if the column is not configured or the row has no such cell
+     */
+    public static String getValue(List<String> row, int columnIndex) {
+        if (columnIndex >= 0 && columnIndex < row.size()) {
+            return row.get(columnIndex);
+        }
+        return "";
+    }
+
+    /**
+     * 
+     * @return the number of configured metadata columns
+     */
+    public int getNumberOfMetadataColumns() {
+        return metadataColumns.length;
+    }
+
+    public int getMetadataColumn(int index) {
+        return metadataColumns[index];
+    }
+
+    public MetadataType getMetadataType(int index) {
+        return metadataTypes[index];
+    }
+
+    /**
+     * 
+     * @param index the index of a metadata column
+     * @return true if a later column has the same metadata type, its value replaces the value of this column
+     */
+    public boolean isOverwritten(int index) {
+        return overwritten[index];
+    }
+
+    /**
+     * 
+     * @return the metadata type the identifier column is imported into, or null if the identifier column is not imported as metadata
+     */
+    public MetadataType getIdentifierMetadataType() {
+        if (identifierColumn == NOT_CONFIGURED) {
+            return null;
+        }
+        for (int i = 0; i < metadataColumns.length; i++) {
+            if (metadataColumns[i] == identifierColumn) {
+                return metadataTypes[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 
+     * @param label the structure type as used in the spreadsheet
+     * @return the ruleset type or null, if the label is not mapped
+     */
+    public DocStructType getDocStructType(String label) {
+        return docStructTypes.get(label);
+    }
+
+    /**
+     * 
+     * @param label the structure type as used in the spreadsheet
+     * @return the configured name of the type, if the label is mapped to a type that is not defined in the ruleset, otherwise null
+     */
+    public String getUndefinedDocStructType(String label) {
+        return undefinedDocStructTypes.get(label);
+    }
+
+}
@@ -0,0 +1,202 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.Arrays;
+
+import de.sub.goobi.helper.StorageProvider;
+import de.sub.goobi.helper.StorageProviderInterface;
+import ugh.exceptions.UGHException;
+
+/**
+ * Reads a csv or tsv file. The file is read into memory at once through the {@link StorageProvider}, so it can also be stored in S3, and the
+ * rows are split directly on the bytes; a cell is only decoded into a string when the handler requests it. Quoted cells may contain
+ * separators, line breaks and doubled quotes. Empty lines are passed as empty rows. The separator must be an ASCII character and the charset
+ * must be ASCII compatible, like UTF-8 or ISO-8859-1.
+ */
+public class DelimitedFileReader implements SpreadsheetReader {
+
+    private static final byte QUOTE = '"';
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private final byte separator;
+    private final Charset charset;
+
+    /**
+     *
+     * @param separator the separator between two cells, usually ',', ';' or a tab
+     * @param charset the encoding of the file
+     */
+    public DelimitedFileReader(char separator, Charset charset) {
+        if (separator == 0 || separator > 127 || separator == '"' || separator == '\r' || separator == '\n') {
+            throw new IllegalArgumentException("Invalid separator '" + separator + "'");
+        }
+        this.separator = (byte) separator;
+        this.charset = charset;
+    }
+
+    @Override
+    public void read(Path file, RowHandler handler) throws IOException, UGHException {
+        ByteBuffer buffer = readFile(file);
+        int limit = buffer.limit();
+        int position = skipByteOrderMark(buffer, limit);
+        int rowNumber = 0;
+        while (position < limit) {
+            DelimitedRow row = new DelimitedRow(buffer, charset);
+            position = readRow(buffer, position, limit, row);
+            rowNumber++;
+            if (!handler.handleRow(rowNumber, row)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Read the complete file into a buffer
+     *
+     * @return the buffer, its limit is the number of bytes read
+     */
+    private static ByteBuffer readFile(Path file) throws IOException {
+        StorageProviderInterface storage = StorageProvider.getInstance();
+        long size = storage.getFileSize(file);
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("File " + file + " is too large, the maximum size is 2 GB");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        try (InputStream in = storage.newInputStream(file); ReadableByteChannel channel = Channels.newChannel(in)) {
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read until the buffer is full or the file ends
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int skipByteOrderMark(ByteBuffer buffer, int limit) {
+        if (limit >= 3 && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB && buffer.get(2) == (byte) 0xBF) {
+            return 3;
+        }
+        return 0;
+    }
+
+    /**
+     * Find the cells of the row starting at the given position
+     *
+     * @return the position of the next row
+     */
+    private int readRow(ByteBuffer buffer, int position, int limit, DelimitedRow row) {
+        int pos = position;
+        // empty line
+        if (buffer.get(pos) == CR || buffer.get(pos) == LF) {
+            return skipLineBreak(buffer, pos, limit);
+        }
+        while (true) {
+            if (pos < limit && buffer.get(pos) == QUOTE) {
+                // quoted cell, ends with a quote that is not doubled
+                int start = ++pos;
+                boolean doubledQuotes = false;
+                while (pos < limit) {
+                    if (buffer.get(pos) == QUOTE) {
+                        if (pos + 1 < limit && buffer.get(pos + 1) == QUOTE) {
+                            doubledQuotes = true;
+                            pos += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    pos++;
+                }
+                row.addCell(start, pos, doubledQuotes);
+                // skip the closing quote and anything up to the next separator
+                while (pos < limit && buffer.get(pos) != separator && buffer.get(pos) != CR && buffer.get(pos) != LF) {
+                    pos++;
+                }
+            } else {
+                int start = pos;
+                while (pos < limit && buffer.get(pos) != separator && buffer.get(pos) != CR && buffer.get(pos) != LF) {
+                    pos++;
+                }
+                row.addCell(start, pos, false);
+            }
+
+            if (pos >= limit) {
+                return limit;
+            }
+            if (buffer.get(pos) == separator) {
+                pos++;
+            } else {
+                return skipLineBreak(buffer, pos, limit);
+            }
+        }
+    }
+
+    private static int skipLineBreak(ByteBuffer buffer, int position, int limit) {
+        if (buffer.get(position) == CR && position + 1 < limit && buffer.get(position + 1) == LF) {
+            return position + 2;
+        }
+        return position + 1;
+    }
+
+    /**
+     * Read-only view of a row, holding the start and end position of each cell in the file
+     */
+    private static class DelimitedRow extends AbstractList<String> {
+
+        private final ByteBuffer buffer;
+        private final Charset charset;
+
+        // start and end of each cell, the end is negative if the cell contains doubled quotes
+        private int[] bounds = new int[32];
+        private String[] values;
+        private int size;
+
+        DelimitedRow(ByteBuffer buffer, Charset charset) {
+            this.buffer = buffer;
+            this.charset = charset;
+        }
+
+        void addCell(int start, int end, boolean doubledQuotes) {
+            if (2 * size + 1 >= bounds.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            bounds[2 * size] = start;
+            bounds[2 * size + 1] = doubledQuotes ? -end - 1 : end;
+            size++;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            if (values == null) {
+                values = new String[size];
+            }
+            if (values[index] == null) {
+                int start = bounds[2 * index];
+                int end = bounds[2 * index + 1];
+                boolean doubledQuotes = end < 0;
+                if (doubledQuotes) {
+                    end = -end - 1;
+                }
+                byte[] bytes = new byte[end - start];
+                buffer.get(start, bytes);
+                String value = new String(bytes, charset);
+                values[index] = doubledQuotes ? value.replace("\"\"", "\"") : value;
+            }
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
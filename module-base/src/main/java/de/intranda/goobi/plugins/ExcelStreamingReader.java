@@ -0,0 +1,260 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFReader.SheetIterator;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import ugh.exceptions.UGHException;
+
+/**
+ * Reads a sheet of an xlsx file using the POI event API. The sheet xml is parsed with SAX and every row is passed to the handler as soon
+ * as it is complete, so only the current row and the shared strings table are kept in memory. The cells are decoded with the
+ * {@link CellFormatter} like in the {@link ExcelWorkbookReader}.
+ */
+public class ExcelStreamingReader implements SpreadsheetReader {
+
+    @Override
+    public void read(Path file, RowHandler handler) throws IOException, UGHException {
+        read(file, 0, handler);
+    }
+
+    @Override
+    public List<String> getSheetNames(Path file) throws IOException {
+        OPCPackage pkg = null;
+        try {
+            pkg = OPCPackage.open(file.toFile(), PackageAccess.READ);
+            List<String> names = new ArrayList<>();
+            SheetIterator sheets = (SheetIterator) new XSSFReader(pkg).getSheetsData();
+            while (sheets.hasNext()) {
+                // the stream is only needed to get the name
+                sheets.next().close();
+                names.add(sheets.getSheetName());
+            }
+            return names;
+        } catch (OpenXML4JException e) {
+            throw new IOException(e);
+        } finally {
+            if (pkg != null) {
+                pkg.revert();
+            }
+        }
+    }
+
+    @Override
+    public void read(Path file, int sheetIndex, RowHandler handler) throws IOException, UGHException {
+        // each call opens the package on its own, so that different sheets can be read in parallel
+        OPCPackage pkg = null;
+        try {
+            pkg = OPCPackage.open(file.toFile(), PackageAccess.READ);
+            XSSFReader reader = new XSSFReader(pkg);
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            for (int i = 0; i < sheetIndex && sheets.hasNext(); i++) {
+                sheets.next().close();
+            }
+            if (!sheets.hasNext()) {
+                throw new IOException("File " + file + " has no sheet " + (sheetIndex + 1));
+            }
+            try (InputStream sheet = sheets.next()) {
+                parseSheet(pkg, sheet, handler);
+            }
+        } catch (OpenXML4JException e) {
+            throw new IOException(e);
+        } finally {
+            if (pkg != null) {
+                // package was opened read only, don't try to save it
+                pkg.revert();
+            }
+        }
+    }
+
+    private void parseSheet(OPCPackage pkg, InputStream sheet, RowHandler handler) throws IOException, UGHException {
+        try {
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            try {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new SheetHandler(handler, strings));
+                parser.parse(new InputSource(sheet));
+            } catch (StopReadingException e) {
+                // handler requested to stop, remaining rows are not needed
+            } catch (RowHandlingException e) {
+                throw e.getCause();
+            }
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Collects the raw cell values of the current row from the sheet xml, decodes them with the {@link CellFormatter} and passes the completed
+     * row to the {@link RowHandler}
+     */
+    private static class SheetHandler extends DefaultHandler {
+
+        private final RowHandler handler;
+        private final ReadOnlySharedStringsTable strings;
+
+        private List<String> values = new ArrayList<>();
+        // 1-based number of the current row, rows without cells are missing in the xml
+        private int rowNumber;
+        private boolean headerRow;
+        private int nextColumn;
+
+        // current cell
+        private int column;
+        private String cellType;
+        private String value;
+        private String formula;
+        private final StringBuilder inlineString = new StringBuilder();
+
+        // content of the current v, f or t element
+        private final StringBuilder text = new StringBuilder();
+        private boolean collecting;
+
+        SheetHandler(RowHandler handler, ReadOnlySharedStringsTable strings) {
+            this.handler = handler;
+            this.strings = strings;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row":
+                    String reference = attributes.getValue("r");
+                    rowNumber = reference == null ? rowNumber + 1 : Integer.parseInt(reference);
+                    headerRow = handler.isHeaderRow(rowNumber);
+                    values = new ArrayList<>();
+                    nextColumn = 0;
+                    break;
+                case "c":
+                    String cellReference = attributes.getValue("r");
+                    column = cellReference == null ? nextColumn : new CellReference(cellReference).getCol();
+                    cellType = attributes.getValue("t");
+                    value = null;
+                    formula = null;
+                    inlineString.setLength(0);
+                    break;
+                case "v":
+                case "f":
+                case "t":
+                    text.setLength(0);
+                    collecting = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (collecting) {
+                text.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v":
+                    value = text.toString();
+                    collecting = false;
+                    break;
+                case "f":
+                    formula = text.toString();
+                    collecting = false;
+                    break;
+                case "t":
+                    inlineString.append(text);
+                    collecting = false;
+                    break;
+                case "c":
+                    // fill skipped cells
+                    while (values.size() < column) {
+                        values.add("");
+                    }
+                    values.add(getCellValue());
+                    nextColumn = column + 1;
+                    break;
+                case "row":
+                    endRow();
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private String getCellValue() {
+            if (formula != null && headerRow) {
+                return CellFormatter.formatFormula(formula);
+            }
+            if ("inlineStr".equals(cellType)) {
+                return CellFormatter.formatString(inlineString.toString());
+            }
+            if (value == null) {
+                return "";
+            }
+            if (cellType == null || "n".equals(cellType)) {
+                return CellFormatter.formatNumber(Double.parseDouble(value), headerRow);
+            }
+            switch (cellType) {
+                case "s":
+                    return CellFormatter.formatString(strings.getItemAt(Integer.parseInt(value)).getString());
+                case "b":
+                    return CellFormatter.formatBoolean("1".equals(value));
+                case "e":
+                    return "";
+                default:
+                    // string result of a formula or a date in ISO format
+                    return CellFormatter.formatString(value);
+            }
+        }
+
+        private void endRow() {
+            boolean proceed;
+            try {
+                proceed = handler.handleRow(rowNumber, values);
+            } catch (UGHException e) {
+                throw new RowHandlingException(e);
+            }
+            if (!proceed) {
+                throw new StopReadingException();
+            }
+        }
+    }
+
+    private static class StopReadingException extends RuntimeException {
+        private static final long serialVersionUID = 4618406651462012447L;
+    }
+
+    private static class RowHandlingException extends RuntimeException {
+        private static final long serialVersionUID = -5284104337166180914L;
+
+        RowHandlingException(UGHException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized UGHException getCause() {
+            return (UGHException) super.getCause();
+        }
+    }
+
+}
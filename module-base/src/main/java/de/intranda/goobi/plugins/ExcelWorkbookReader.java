@@ -0,0 +1,90 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.List;
+
+import org.apache.commons.io.ByteOrderMark;
+import org.apache.commons.io.input.BOMInputStream;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+
+import ugh.exceptions.UGHException;
+
+/**
+ * Reads the first sheet of an Excel file using the POI usermodel. The complete workbook is loaded into memory before the first row is processed.
+ * The cells are decoded with the {@link CellFormatter} like in the {@link ExcelStreamingReader}.
+ */
+public class ExcelWorkbookReader implements SpreadsheetReader {
+
+    @Override
+    public void read(Path file, RowHandler handler) throws IOException, UGHException {
+        read(file, 0, handler);
+    }
+
+    @Override
+    public List<String> getSheetNames(Path file) throws IOException {
+        // the names are read from the workbook part only, without loading the sheets
+        return new ExcelStreamingReader().getSheetNames(file);
+    }
+
+    @Override
+    public void read(Path file, int sheetIndex, RowHandler handler) throws IOException, UGHException {
+        try (BOMInputStream in = BOMInputStream.builder()
+                .setPath(file)
+                .setByteOrderMarks(ByteOrderMark.UTF_8)
+                .setInclude(false)
+                .get();
+                Workbook wb = WorkbookFactory.create(in)) {
+            if (sheetIndex >= wb.getNumberOfSheets()) {
+                throw new IOException("File " + file + " has no sheet " + (sheetIndex + 1));
+            }
+            Sheet sheet = wb.getSheetAt(sheetIndex);
+            for (Row row : sheet) {
+                int rowNumber = row.getRowNum() + 1;
+                if (!handler.handleRow(rowNumber, new RowValues(row, handler.isHeaderRow(rowNumber)))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the value of a cell in a data row
+     * 
+     * @param row the row
+     * @param columnIndex the index of the column
+     * @return the value decoded by the {@link CellFormatter}
+     */
+    public static String getCellValue(Row row, int columnIndex) {
+        return CellFormatter.format(row.getCell(columnIndex), false);
+    }
+
+    /**
+     * Read-only view of a row, cells are only decoded when they are requested
+     */
+    private static class RowValues extends AbstractList<String> {
+
+        private final Row row;
+        private final boolean headerRow;
+
+        RowValues(Row row, boolean headerRow) {
+            this.row = row;
+            this.headerRow = headerRow;
+        }
+
+        @Override
+        public String get(int index) {
+            return CellFormatter.format(row.getCell(index), headerRow);
+        }
+
+        @Override
+        public int size() {
+            return Math.max(row.getLastCellNum(), 0);
+        }
+    }
+
+}
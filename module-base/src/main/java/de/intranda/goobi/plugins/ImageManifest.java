@@ -0,0 +1,71 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.net.URLConnection;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import de.sub.goobi.helper.NIOFileUtils;
+import de.sub.goobi.helper.StorageProvider;
+import de.sub.goobi.metadaten.MetadatenImagesHelper.GoobiImageFileComparator;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * The sorted names of all images in the image folder of a process. The folder is listed once, using the image filter and the sort order of
+ * Goobi workflow, so the pages are in the same order as in the pagination of Goobi workflow. The list is not stored between imports, because
+ * the modification date of the folder does not reliably show added or replaced images, e.g. in S3.
+ */
+@Log4j2
+public final class ImageManifest {
+
+    private ImageManifest() {
+    }
+
+    /**
+     * Get the names of all images in the folder
+     * 
+     * @param imageFolder the image folder
+     * @return the sorted file names
+     * @throws IOException if the folder cannot be listed
+     */
+    public static List<String> getImageNames(Path imageFolder) throws IOException {
+        long start = System.currentTimeMillis();
+        List<String> names = new ArrayList<>();
+        for (Path image : StorageProvider.getInstance().listFiles(imageFolder.toString(), NIOFileUtils.imageNameFilter)) {
+            names.add(image.getFileName().toString());
+        }
+        names.sort(new GoobiImageFileComparator());
+        log.debug("Listed {} images in {} in {} ms", names.size(), imageFolder, System.currentTimeMillis() - start);
+        return names;
+    }
+
+    /**
+     * 
+     * @param fileName the name of an image
+     * @return the mime type of the image
+     */
+    public static String getMimeType(String fileName) {
+        switch (getExtension(fileName)) {
+            case "tif":
+            case "tiff":
+                return "image/tiff";
+            case "jpg":
+            case "jpeg":
+                return "image/jpeg";
+            case "jp2":
+                return "image/jp2";
+            case "png":
+                return "image/png";
+            default:
+                String mimeType = URLConnection.guessContentTypeFromName(fileName);
+                return mimeType == null ? "image/" + getExtension(fileName) : mimeType;
+        }
+    }
+
+    private static String getExtension(String fileName) {
+        int index = fileName.lastIndexOf('.');
+        return index < 0 ? "" : fileName.substring(index + 1).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,16 @@
+package de.intranda.goobi.plugins;
+
+import ugh.exceptions.UGHException;
+
+/**
+ * Thrown when a running import was cancelled. The import is aborted and the metadata file is not changed.
+ */
+public class ImportCancelledException extends UGHException {
+
+    private static final long serialVersionUID = 2794480861935541043L;
+
+    public ImportCancelledException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,165 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.SubnodeConfiguration;
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.Getter;
+
+/**
+ * The plugin configuration for a project and step. It is read once and can be used for any number of imports. The configuration is immutable, so
+ * that a cached instance can be shared by all running imports, see {@link ImportConfigurationCache}.
+ */
+@Getter
+public class ImportConfiguration {
+
+    private final String excelFolder;
+    private final String fileType;
+    private final char csvSeparator;
+    private final String csvEncoding;
+
+    private final int headerRowNumber;
+    private final int dataRowNumber;
+    private final int lastDataRow;
+    private final boolean streamingReader;
+    // keep parsed rows and catalogue records in temporary files instead of the heap
+    private final boolean spillToDisk;
+    private final boolean incrementalImport;
+    private final boolean skipUnchangedImport;
+    private final boolean strictPageRanges;
+    private final boolean fastPagination;
+    private final boolean paginateRequiredPagesOnly;
+    private final boolean runInBackground;
+    private final int batchWorkers;
+    private final boolean readAllSheets;
+    private final List<String> sheetNames;
+    private final String sheetDocstruct;
+    private final String sheetTitleMetadata;
+    private final List<Column> columns;
+
+    private final String identifierColumnName;
+    private final String doctypeColumnName;
+    private final String hierarchyColumnName;
+    // id and parent id of each row, used instead of the hierarchy column if the parent id column is configured
+    private final String idColumnName;
+    private final String parentIdColumnName;
+    private final String imageStartColumnName;
+    private final String imageEndColumnName;
+
+    private final String opacName;
+    private final String opacSearchField;
+    private final int opacThreads;
+    private final int opacTimeout;
+    private final int opacBatchSize;
+    private final String opacIdentifierMetadata;
+    private final double opacRateLimit;
+    private final int opacFailureThreshold;
+    private final int opacRetryPause;
+    // target type by catalogue field, empty to copy all fields
+    private final Map<String, String> opacFields;
+    private final boolean excelWins;
+
+    private final String opacCacheFolder;
+    private final int opacCacheSize;
+    private final int opacCacheMemorySize;
+    private final int opacCacheTtl;
+
+    private final Map<String, String> docstructs;
+
+    public ImportConfiguration(SubnodeConfiguration config) {
+        excelFolder = config.getString("/excelFolder");
+        fileType = config.getString("/fileType", "xlsx").toLowerCase();
+        // the configuration must be read without splitting values at commas, see ImportConfigurationCache
+        String separator = config.getString("/csvSeparator", ",");
+        csvSeparator = "\\t".equals(separator) ? '\t' : separator.charAt(0);
+        csvEncoding = config.getString("/csvEncoding", "UTF-8");
+
+        headerRowNumber = config.getInt("/rowHeader", 1);
+        dataRowNumber = config.getInt("/rowDataStart", 2);
+        lastDataRow = config.getInt("/rowDataEnd", 99999);
+        streamingReader = config.getBoolean("/streamingReader", false);
+        spillToDisk = config.getBoolean("/spillToDisk", false);
+        incrementalImport = config.getBoolean("/incrementalImport", false);
+        skipUnchangedImport = config.getBoolean("/skipUnchangedImport", false);
+        strictPageRanges = config.getBoolean("/strictPageRanges", false);
+        fastPagination = config.getBoolean("/fastPagination", false);
+        paginateRequiredPagesOnly = config.getBoolean("/paginateRequiredPagesOnly", false);
+        runInBackground = config.getBoolean("/runInBackground", false);
+        batchWorkers = Math.max(config.getInt("/batchWorkers", 4), 1);
+        readAllSheets = config.getBoolean("/readAllSheets", false);
+        List<String> sheets = new ArrayList<>();
+        for (Object sheetName : config.getList("/sheet")) {
+            sheets.add(String.valueOf(sheetName));
+        }
+        sheetNames = Collections.unmodifiableList(sheets);
+        sheetDocstruct = config.getString("/sheetDocstruct");
+        sheetTitleMetadata = config.getString("/sheetTitleMetadata", "TitleDocMain");
+        List<Column> columnList = new ArrayList<>();
+        List<HierarchicalConfiguration> hcl = config.configurationsAt("/column");
+        for (HierarchicalConfiguration hc : hcl) {
+            columnList.add(new Column(hc.getString("@columnName"), hc.getString("@metadata", "")));
+        }
+        columns = Collections.unmodifiableList(columnList);
+
+        Map<String, String> docstructMap = new HashMap<>();
+        hcl = config.configurationsAt("/docstruct");
+        for (HierarchicalConfiguration hc : hcl) {
+            docstructMap.put(hc.getString("@label"), hc.getString("@value"));
+        }
+        docstructs = Collections.unmodifiableMap(docstructMap);
+
+        identifierColumnName = config.getString("/identifierColumnName");
+        doctypeColumnName = config.getString("/doctypeColumnName");
+        hierarchyColumnName = config.getString("/hierarchyColumnName");
+        idColumnName = config.getString("/idColumnName", identifierColumnName);
+        parentIdColumnName = config.getString("/parentIdColumnName");
+        imageStartColumnName = config.getString("/imageStartColumnName");
+        imageEndColumnName = config.getString("/imageEndColumnName");
+
+        opacName = config.getString("/opacName");
+        opacSearchField = config.getString("/searchField");
+        opacThreads = config.getInt("/opacThreads", 1);
+        opacTimeout = config.getInt("/opacTimeout", 60);
+        opacBatchSize = config.getInt("/opacBatchSize", 1);
+        opacIdentifierMetadata = config.getString("/opacIdentifierMetadata");
+        opacRateLimit = config.getDouble("/opacRateLimit", 0);
+        opacFailureThreshold = config.getInt("/opacFailureThreshold", 5);
+        opacRetryPause = config.getInt("/opacRetryPause", 60);
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (HierarchicalConfiguration hc : config.configurationsAt("/opacField")) {
+            String name = hc.getString("@name");
+            fields.put(name, hc.getString("@metadata", name));
+        }
+        opacFields = Collections.unmodifiableMap(fields);
+        excelWins = config.getBoolean("/excelWins", true);
+
+        opacCacheFolder = config.getString("/opacCacheFolder");
+        opacCacheSize = config.getInt("/opacCacheSize", 100000);
+        opacCacheMemorySize = config.getInt("/opacCacheMemorySize", 5000);
+        opacCacheTtl = config.getInt("/opacCacheTtl", 168);
+    }
+
+    /**
+     * 
+     * @return true if the tree is built from the id and parent id of each row instead of the hierarchy level
+     */
+    public boolean isParentIdMode() {
+        return StringUtils.isNotBlank(parentIdColumnName);
+    }
+
+    /**
+     * 
+     * @return true if all sheets or a list of sheets are imported, false if only the first sheet is imported
+     */
+    public boolean isMultipleSheets() {
+        return readAllSheets || !sheetNames.isEmpty();
+    }
+
+}
@@ -0,0 +1,109 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.SubnodeConfiguration;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+import org.goobi.beans.Step;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Keeps the configuration of each project and step, so that the configuration file is only read again after it was changed. The cached
+ * configurations are immutable and shared by all running imports.
+ */
+@Log4j2
+public final class ImportConfigurationCache {
+
+    private static final Map<String, CachedConfiguration> CONFIGURATIONS = new ConcurrentHashMap<>();
+
+    private ImportConfigurationCache() {
+    }
+
+    /**
+     * Get the configuration for the project and the step. It is read from the configuration file, if it was not read before or if the file
+     * was changed since.
+     *
+     * @param title the title of the plugin
+     * @param step the step, its title and the project of its process select the configuration
+     * @return the configuration
+     */
+    public static ImportConfiguration get(String title, Step step) {
+        Path configFile = Paths.get(ConfigurationHelper.getInstance().getConfigurationFolder(), "plugin_" + title + ".xml");
+        String version = getVersion(configFile);
+        String key = title + "|" + step.getProzess().getProjekt().getTitel() + "|" + step.getTitel();
+        CachedConfiguration cached = CONFIGURATIONS.get(key);
+        if (cached != null && cached.version.equals(version)) {
+            return cached.configuration;
+        }
+        log.debug("Read the configuration of {} for {}", title, key);
+        ImportConfiguration configuration = new ImportConfiguration(readConfiguration(configFile, step.getProzess().getProjekt().getTitel(),
+                step.getTitel()));
+        CONFIGURATIONS.put(key, new CachedConfiguration(version, configuration));
+        return configuration;
+    }
+
+    /**
+     * Read the configuration of the project and the step in the same order as ConfigPlugins.getProjectAndStepConfig, but without splitting
+     * the values at commas. Otherwise a comma as csv separator or in a sheet name would be lost.
+     *
+     * @param configFile the configuration file
+     * @param projectTitle the title of the project
+     * @param stepTitle the title of the step
+     * @return the configuration of the project and the step, or the default configuration
+     * @throws IllegalArgumentException if the file contains no matching configuration
+     */
+    static SubnodeConfiguration readConfiguration(Path configFile, String projectTitle, String stepTitle) {
+        XMLConfiguration xmlConfig = new XMLConfiguration();
+        xmlConfig.setDelimiterParsingDisabled(true);
+        xmlConfig.setExpressionEngine(new XPathExpressionEngine());
+        try {
+            xmlConfig.load(configFile.toFile());
+        } catch (ConfigurationException e) {
+            log.error("Cannot read the configuration file {}", configFile, e);
+        }
+        String[][] selectors = { { projectTitle, stepTitle }, { "*", stepTitle }, { projectTitle, "*" } };
+        for (String[] selector : selectors) {
+            try {
+                return xmlConfig.configurationAt("//config[./project = '" + selector[0] + "'][./step = '" + selector[1] + "']");
+            } catch (IllegalArgumentException e) {
+                // try the next, more general configuration
+            }
+        }
+        return xmlConfig.configurationAt("//config[./project = '*'][./step = '*']");
+    }
+
+    /**
+     * Remove all cached configurations
+     */
+    public static void clear() {
+        CONFIGURATIONS.clear();
+    }
+
+    /**
+     * 
+     * @return the modification time and size of the file, an empty string if the file does not exist
+     */
+    private static String getVersion(Path configFile) {
+        try {
+            return Files.getLastModifiedTime(configFile).toMillis() + "|" + Files.size(configFile);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class CachedConfiguration {
+        private final String version;
+        private final ImportConfiguration configuration;
+    }
+}
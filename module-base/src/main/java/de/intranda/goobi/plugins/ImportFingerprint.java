@@ -0,0 +1,144 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.IOUtils;
+
+import de.sub.goobi.helper.StorageProvider;
+import de.sub.goobi.helper.StorageProviderInterface;
+
+/**
+ * Fingerprint of everything an import depends on: the content of the excel file, the configuration values that change the result of the
+ * import and the version of the ruleset. Values that only change the speed of the import, like the number of threads or the cache, are not
+ * part of it. The fingerprint of the last successful import is stored in the process folder, so an import with the same input can
+ * be skipped.
+ */
+public final class ImportFingerprint {
+
+    public static final String FILE_NAME = "structure_import.fingerprint";
+
+    // change this, if the import creates a different structure from the same input
+    private static final String VERSION = "1";
+
+    private ImportFingerprint() {
+    }
+
+    /**
+     * Calculate the fingerprint of an import
+     *
+     * @param excelFile the excel file to import
+     * @param config the configuration
+     * @param rulesetFile the ruleset of the process
+     * @return the fingerprint as hex string
+     * @throws IOException
+     */
+    public static String create(Path excelFile, ImportConfiguration config, Path rulesetFile) throws IOException {
+        MessageDigest digest = createDigest();
+        update(digest, VERSION);
+
+        try (InputStream in = new DigestInputStream(StorageProvider.getInstance().newInputStream(excelFile), digest)) {
+            IOUtils.consume(in);
+        }
+
+        update(digest, config.getHeaderRowNumber() + "/" + config.getDataRowNumber() + "/" + config.getLastDataRow());
+        update(digest, config.getFileType() + "/" + config.getCsvSeparator() + "/" + config.getCsvEncoding() + "/" + config.isStreamingReader());
+        update(digest, config.isReadAllSheets() + "/" + config.getSheetNames() + "/" + config.getSheetDocstruct() + "/"
+                + config.getSheetTitleMetadata());
+        update(digest, config.isIncrementalImport() + "/" + config.isStrictPageRanges());
+        // the pages are only created if the pagination is missing or too short for the excel file
+        update(digest, config.isFastPagination() + "/" + config.isPaginateRequiredPagesOnly());
+        update(digest, config.getIdentifierColumnName());
+        update(digest, config.getDoctypeColumnName());
+        update(digest, config.getHierarchyColumnName());
+        update(digest, config.getIdColumnName() + "/" + config.getParentIdColumnName());
+        update(digest, config.getImageStartColumnName());
+        update(digest, config.getImageEndColumnName());
+        for (Column col : config.getColumns()) {
+            update(digest, col.getColumnName() + "=" + col.getMetadataName());
+        }
+        for (Map.Entry<String, String> entry : new TreeMap<>(config.getDocstructs()).entrySet()) {
+            update(digest, entry.getKey() + "=" + entry.getValue());
+        }
+        update(digest, config.getOpacName());
+        update(digest, config.getOpacSearchField());
+        update(digest, config.getOpacFields() + "/" + config.isExcelWins());
+        // combined queries assign the records by this metadata
+        update(digest, config.getOpacBatchSize() + "/" + config.getOpacIdentifierMetadata());
+
+        // a changed ruleset has a new modification date
+        update(digest, rulesetFile.getFileName().toString());
+        if (Files.exists(rulesetFile)) {
+            update(digest, Files.size(rulesetFile) + "/" + Files.getLastModifiedTime(rulesetFile).toMillis());
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     *
+     * @param fingerprintFile the stored fingerprint
+     * @param fingerprint the fingerprint of the current import
+     * @return true if the stored fingerprint exists and is the same
+     * @throws IOException
+     */
+    public static boolean matches(Path fingerprintFile, String fingerprint) throws IOException {
+        StorageProviderInterface storage = StorageProvider.getInstance();
+        if (!storage.isFileExists(fingerprintFile)) {
+            return false;
+        }
+        try (InputStream in = storage.newInputStream(fingerprintFile)) {
+            return fingerprint.equals(IOUtils.toString(in, StandardCharsets.UTF_8).trim());
+        }
+    }
+
+    /**
+     * Store the fingerprint of a successful import
+     *
+     * @param fingerprintFile the file to write
+     * @param fingerprint the fingerprint
+     * @throws IOException
+     */
+    public static void write(Path fingerprintFile, String fingerprint) throws IOException {
+        try (OutputStream out = StorageProvider.getInstance().newOutputStream(fingerprintFile)) {
+            out.write(fingerprint.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Remove the stored fingerprint, the metadata file no longer matches it
+     *
+     * @param fingerprintFile the file to delete
+     */
+    public static void delete(Path fingerprintFile) {
+        StorageProviderInterface storage = StorageProvider.getInstance();
+        if (storage.isFileExists(fingerprintFile)) {
+            storage.deleteFile(fingerprintFile);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        // separator, so that moving characters between two values changes the fingerprint
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every java implementation must support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
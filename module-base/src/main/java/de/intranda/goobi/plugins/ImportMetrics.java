@@ -0,0 +1,238 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import lombok.Getter;
+
+/**
+ * Timings and counters of a single import. The phases run one after another on the importing thread, the catalogue requests can run on other
+ * threads. At the end of the import the values are added to the {@link ImportStatistics} and summarised in the process journal.
+ */
+public class ImportMetrics {
+
+    /**
+     * The phases of an import, in the order they are executed
+     */
+    public enum Phase {
+        READ_METADATA("reading the metadata file"),
+        OPEN_FILE("opening the spreadsheet"),
+        PARSE("parsing the rows"),
+        PAGINATION("creating the pagination"),
+        VALIDATE("validating the rows"),
+        CLEANUP("removing the old structure"),
+        BUILD("creating the structure"),
+        OPAC("waiting for catalogue records"),
+        WRITE_METADATA("writing the metadata file");
+
+        @Getter
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    // upper bounds of the catalogue latency buckets in milliseconds, the last bucket contains all slower requests
+    public static final long[] LATENCY_BUCKETS = { 10, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+    private static final int MAX_LISTED_ROWS = 50;
+    // the heap is sampled after each phase and after this number of new elements
+    private static final int HEAP_SAMPLE_INTERVAL = 1024;
+
+    private final long[] phaseNanos = new long[Phase.values().length];
+
+    // the input was unchanged and the import was skipped
+    @Getter
+    private boolean skipped;
+    // the import failed after the metadata file was read
+    @Getter
+    private boolean failed;
+
+    @Getter
+    private long rows;
+    @Getter
+    private long createdElements;
+    @Getter
+    private long pageReferences;
+    // highest used heap of the JVM seen during the import, including other imports running at the same time
+    @Getter
+    private long peakHeapBytes;
+
+    private final AtomicLong opacRequests = new AtomicLong();
+    private final AtomicLong opacFailures = new AtomicLong();
+    private final AtomicLong opacNanos = new AtomicLong();
+    private final AtomicLongArray opacLatencies = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+
+    // rows without catalogue data because the catalogue was not available, they should be imported again
+    @Getter
+    private final List<Integer> opacRetryRows = new ArrayList<>();
+
+    /**
+     * Add the time since the start to a phase
+     *
+     * @param phase the phase
+     * @param startNanos the start of the phase, from {@link System#nanoTime()}
+     */
+    public void addTime(Phase phase, long startNanos) {
+        phaseNanos[phase.ordinal()] += System.nanoTime() - startNanos;
+        sampleHeap();
+    }
+
+    /**
+     * Record the currently used heap, if it is higher than before
+     */
+    public void sampleHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        peakHeapBytes = Math.max(peakHeapBytes, runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    public long getMillis(Phase phase) {
+        return TimeUnit.NANOSECONDS.toMillis(phaseNanos[phase.ordinal()]);
+    }
+
+    public void markSkipped() {
+        skipped = true;
+    }
+
+    public void markFailed() {
+        failed = true;
+    }
+
+    public void addRows(long count) {
+        rows += count;
+    }
+
+    public void addCreatedElement() {
+        createdElements++;
+        if (createdElements % HEAP_SAMPLE_INTERVAL == 0) {
+            sampleHeap();
+        }
+    }
+
+    public void addPageReferences(long count) {
+        pageReferences += count;
+    }
+
+    /**
+     * Record a request to the catalogue, records from the cache are not counted
+     *
+     * @param startNanos the start of the request, from {@link System#nanoTime()}
+     * @param failed true if the request threw an exception
+     */
+    public void addOpacRequest(long startNanos, boolean failed) {
+        long nanos = System.nanoTime() - startNanos;
+        opacRequests.incrementAndGet();
+        opacNanos.addAndGet(nanos);
+        if (failed) {
+            opacFailures.incrementAndGet();
+        }
+        opacLatencies.incrementAndGet(getLatencyBucket(TimeUnit.NANOSECONDS.toMillis(nanos)));
+    }
+
+    /**
+     * Record a request that did not finish in time
+     */
+    public void addOpacFailure() {
+        opacFailures.incrementAndGet();
+    }
+
+    /**
+     * Flag a row that was imported without catalogue data, because the catalogue was not available
+     *
+     * @param rowNumber the row number in the spreadsheet
+     */
+    public void addOpacRetryRow(int rowNumber) {
+        opacRetryRows.add(rowNumber);
+    }
+
+    /**
+     * Message for the process journal listing the rows without catalogue data, e.g. "Catalogue data is missing for 3 rows, because the
+     * catalogue was not available: 12, 13, 20. Run the import again to add it."
+     *
+     * @return the message
+     */
+    public String getOpacRetrySummary() {
+        StringBuilder summary = new StringBuilder("Catalogue data is missing for ");
+        summary.append(opacRetryRows.size()).append(" rows, because the catalogue was not available: ");
+        int count = Math.min(opacRetryRows.size(), MAX_LISTED_ROWS);
+        for (int i = 0; i < count; i++) {
+            summary.append(i == 0 ? "" : ", ").append(opacRetryRows.get(i));
+        }
+        if (opacRetryRows.size() > count) {
+            summary.append(", ...");
+        }
+        summary.append(". Run the import again to add it.");
+        return summary.toString();
+    }
+
+    static int getLatencyBucket(long millis) {
+        for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+            if (millis <= LATENCY_BUCKETS[i]) {
+                return i;
+            }
+        }
+        return LATENCY_BUCKETS.length;
+    }
+
+    public long getOpacRequests() {
+        return opacRequests.get();
+    }
+
+    public long getOpacFailures() {
+        return opacFailures.get();
+    }
+
+    public long getOpacMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(opacNanos.get());
+    }
+
+    public long getOpacLatencies(int bucket) {
+        return opacLatencies.get(bucket);
+    }
+
+    /**
+     *
+     * @return the time of all phases in milliseconds
+     */
+    public long getTotalMillis() {
+        long total = 0;
+        for (long nanos : phaseNanos) {
+            total += nanos;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(total);
+    }
+
+    /**
+     * Summary for the process journal, e.g. "Structure import: 120 rows, 118 new elements, 512 page assignments, 118 catalogue requests (0 failed,
+     * average 230 ms) in 3104 ms, peak heap 412 MB. Phases: reading the metadata file 95 ms, ..."
+     *
+     * @return the summary
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder("Structure import: ");
+        summary.append(rows).append(" rows, ");
+        summary.append(createdElements).append(" new elements, ");
+        summary.append(pageReferences).append(" page assignments, ");
+        summary.append(getOpacRequests()).append(" catalogue requests");
+        if (getOpacRequests() > 0) {
+            summary.append(" (").append(getOpacFailures()).append(" failed, average ").append(getOpacMillis() / getOpacRequests()).append(" ms)");
+        }
+        summary.append(" in ").append(getTotalMillis()).append(" ms");
+        if (peakHeapBytes > 0) {
+            summary.append(", peak heap ").append(peakHeapBytes / (1024 * 1024)).append(" MB");
+        }
+        summary.append('.');
+        String separator = " Phases: ";
+        for (Phase phase : Phase.values()) {
+            if (phaseNanos[phase.ordinal()] > 0) {
+                summary.append(separator).append(phase.getLabel()).append(' ').append(getMillis(phase)).append(" ms");
+                separator = ", ";
+            }
+        }
+        return summary.toString();
+    }
+}
@@ -0,0 +1,160 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import de.sub.goobi.helper.Helper;
+
+/**
+ * Progress of a running import. It is updated by the importing thread and read by the user interface, a cancellation is requested from any
+ * thread. The import checks for a cancellation between two rows and stops before the metadata file is written. The import of a batch counts
+ * processes instead of rows and checks for a cancellation between two processes.
+ */
+public class ImportProgress {
+
+    private static final String MESSAGE_PREFIX = "plugin_intranda_step_MetadataStructureImport_";
+
+    private volatile int totalRows = 0;
+    private final AtomicInteger processedRows = new AtomicInteger();
+    // start of the creation of the structure, 0 until the rows are parsed and validated
+    private volatile long startNanos = 0;
+    private volatile boolean cancelled = false;
+    private volatile boolean finished = false;
+    private volatile boolean batch = false;
+    // metrics of the import, used for the number of catalogue requests
+    private volatile ImportMetrics metrics;
+
+    /**
+     * Start the creation of the structure
+     *
+     * @param totalRows the number of rows to import
+     * @param metrics the metrics of the import
+     */
+    public void start(int totalRows, ImportMetrics metrics) {
+        this.totalRows = totalRows;
+        this.metrics = metrics;
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Start the import of a batch, each process counts as a row
+     *
+     * @param totalProcesses the number of processes to import
+     */
+    public void startBatch(int totalProcesses) {
+        totalRows = totalProcesses;
+        batch = true;
+        startNanos = System.nanoTime();
+    }
+
+    public void addProcessedRow() {
+        processedRows.incrementAndGet();
+    }
+
+    public void finish() {
+        finished = true;
+    }
+
+    /**
+     * Request the cancellation of the import, the metadata file is not changed
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Stop the import, if it was cancelled
+     *
+     * @throws ImportCancelledException if the import was cancelled
+     */
+    public void checkCancelled() throws ImportCancelledException {
+        if (cancelled) {
+            throw new ImportCancelledException("The import was cancelled after " + processedRows.get() + " of " + totalRows + " rows");
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public int getTotalRows() {
+        return totalRows;
+    }
+
+    public int getProcessedRows() {
+        return processedRows.get();
+    }
+
+    /**
+     *
+     * @return the number of finished catalogue requests
+     */
+    public long getOpacRequests() {
+        ImportMetrics current = metrics;
+        return current == null ? 0 : current.getOpacRequests();
+    }
+
+    /**
+     *
+     * @return the processed rows in percent
+     */
+    public int getPercent() {
+        return totalRows == 0 ? 0 : (int) (100L * processedRows.get() / totalRows);
+    }
+
+    /**
+     * Estimate the remaining time from the rows processed so far
+     *
+     * @return the remaining time in seconds, -1 if it cannot be estimated yet
+     */
+    public long getRemainingSeconds() {
+        int processed = processedRows.get();
+        if (startNanos == 0 || processed == 0) {
+            return -1;
+        }
+        long elapsed = System.nanoTime() - startNanos;
+        return TimeUnit.NANOSECONDS.toSeconds(elapsed * (totalRows - processed) / processed);
+    }
+
+    /**
+     * Translated summary for the user interface, e.g. "1200 of 5000 rows, 310 catalogue requests, about 95 seconds left"
+     *
+     * @return the summary
+     */
+    public String getSummary() {
+        return getSummary(Helper::getTranslation);
+    }
+
+    /**
+     * 
+     * @param translation translates a message key with its parameters
+     * @return the summary, joined from the translated parts
+     */
+    String getSummary(BiFunction<String, String[], String> translation) {
+        if (startNanos == 0) {
+            return translation.apply(MESSAGE_PREFIX + (finished ? "progressFinished" : "progressReading"), new String[0]);
+        }
+        List<String> parts = new ArrayList<>();
+        if (batch) {
+            parts.add(translation.apply(MESSAGE_PREFIX + "progressProcesses",
+                    new String[] { String.valueOf(processedRows.get()), String.valueOf(totalRows) }));
+        } else {
+            parts.add(translation.apply(MESSAGE_PREFIX + "progressRows",
+                    new String[] { String.valueOf(processedRows.get()), String.valueOf(totalRows), String.valueOf(getOpacRequests()) }));
+        }
+        long remaining = getRemainingSeconds();
+        if (finished) {
+            parts.add(translation.apply(MESSAGE_PREFIX + "progressFinished", new String[0]));
+        } else if (remaining >= 0) {
+            parts.add(translation.apply(MESSAGE_PREFIX + "progressRemaining", new String[] { String.valueOf(remaining) }));
+        }
+        return String.join(", ", parts);
+    }
+}
@@ -0,0 +1,162 @@
+package de.intranda.goobi.plugins;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Collects the metrics of all imports and exposes the totals via JMX, so that the duration of the phases and the behaviour of the catalogue
+ * can be monitored with any JMX client.
+ */
+@Log4j2
+public final class ImportStatistics implements ImportStatisticsMXBean {
+
+    public static final String OBJECT_NAME = "de.intranda.goobi.plugins:type=StructureImport";
+
+    @Getter
+    private static final ImportStatistics instance = register();
+
+    private final AtomicLong imports = new AtomicLong();
+    private final AtomicLong failedImports = new AtomicLong();
+    private final AtomicLong skippedImports = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong createdElements = new AtomicLong();
+    private final AtomicLong pageReferences = new AtomicLong();
+    private final AtomicLong opacRequests = new AtomicLong();
+    private final AtomicLong opacFailures = new AtomicLong();
+    private final AtomicLongArray phaseMillis = new AtomicLongArray(ImportMetrics.Phase.values().length);
+    private final AtomicLongArray opacLatencies = new AtomicLongArray(ImportMetrics.LATENCY_BUCKETS.length + 1);
+
+    private ImportStatistics() {
+    }
+
+    private static ImportStatistics register() {
+        ImportStatistics statistics = new ImportStatistics();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            // a redeployed plugin replaces the bean of the old class loader
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(statistics, name);
+        } catch (JMException | SecurityException e) {
+            log.warn("Cannot register import statistics: {}", e.getMessage());
+        }
+        return statistics;
+    }
+
+    /**
+     * Add the metrics of a finished import
+     * 
+     * @param metrics the metrics of the import
+     * @param failed true if the import failed
+     */
+    public void add(ImportMetrics metrics, boolean failed) {
+        imports.incrementAndGet();
+        if (failed) {
+            failedImports.incrementAndGet();
+        }
+        rows.addAndGet(metrics.getRows());
+        createdElements.addAndGet(metrics.getCreatedElements());
+        pageReferences.addAndGet(metrics.getPageReferences());
+        opacRequests.addAndGet(metrics.getOpacRequests());
+        opacFailures.addAndGet(metrics.getOpacFailures());
+        for (ImportMetrics.Phase phase : ImportMetrics.Phase.values()) {
+            phaseMillis.addAndGet(phase.ordinal(), metrics.getMillis(phase));
+        }
+        for (int i = 0; i < opacLatencies.length(); i++) {
+            opacLatencies.addAndGet(i, metrics.getOpacLatencies(i));
+        }
+    }
+
+    /**
+     * Count an import that was skipped, because its input was unchanged
+     */
+    public void addSkipped() {
+        skippedImports.incrementAndGet();
+    }
+
+    @Override
+    public long getImports() {
+        return imports.get();
+    }
+
+    @Override
+    public long getFailedImports() {
+        return failedImports.get();
+    }
+
+    @Override
+    public long getSkippedImports() {
+        return skippedImports.get();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.get();
+    }
+
+    @Override
+    public long getCreatedElements() {
+        return createdElements.get();
+    }
+
+    @Override
+    public long getPageReferences() {
+        return pageReferences.get();
+    }
+
+    @Override
+    public long getOpacRequests() {
+        return opacRequests.get();
+    }
+
+    @Override
+    public long getOpacFailures() {
+        return opacFailures.get();
+    }
+
+    @Override
+    public Map<String, Long> getPhaseMillis() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (ImportMetrics.Phase phase : ImportMetrics.Phase.values()) {
+            result.put(phase.getLabel(), phaseMillis.get(phase.ordinal()));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getOpacLatencies() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        long[] buckets = ImportMetrics.LATENCY_BUCKETS;
+        for (int i = 0; i < buckets.length; i++) {
+            result.put("<= " + buckets[i] + " ms", opacLatencies.get(i));
+        }
+        result.put("> " + buckets[buckets.length - 1] + " ms", opacLatencies.get(buckets.length));
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        for (AtomicLong counter : new AtomicLong[] { imports, failedImports, skippedImports, rows, createdElements, pageReferences, opacRequests,
+                opacFailures }) {
+            counter.set(0);
+        }
+        for (int i = 0; i < phaseMillis.length(); i++) {
+            phaseMillis.set(i, 0);
+        }
+        for (int i = 0; i < opacLatencies.length(); i++) {
+            opacLatencies.set(i, 0);
+        }
+    }
+}
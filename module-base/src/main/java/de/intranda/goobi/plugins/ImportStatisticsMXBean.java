@@ -0,0 +1,43 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Map;
+
+/**
+ * Totals of all structure imports since the start of the application, registered as
+ * {@value ImportStatistics#OBJECT_NAME} in the platform MBean server
+ */
+public interface ImportStatisticsMXBean {
+
+    long getImports();
+
+    long getFailedImports();
+
+    long getSkippedImports();
+
+    long getRows();
+
+    long getCreatedElements();
+
+    long getPageReferences();
+
+    long getOpacRequests();
+
+    long getOpacFailures();
+
+    /**
+     * 
+     * @return the total time of each phase in milliseconds
+     */
+    Map<String, Long> getPhaseMillis();
+
+    /**
+     * 
+     * @return the number of catalogue requests per latency bucket, e.g. "<= 100 ms"
+     */
+    Map<String, Long> getOpacLatencies();
+
+    /**
+     * Set all values to 0
+     */
+    void reset();
+}
@@ -0,0 +1,16 @@
+package de.intranda.goobi.plugins;
+
+import ugh.exceptions.UGHException;
+
+/**
+ * Thrown when the spreadsheet does not match the configuration. The import is aborted and the metadata file is not changed.
+ */
+public class InvalidSpreadsheetException extends UGHException {
+
+    private static final long serialVersionUID = -1851426367340613452L;
+
+    public InvalidSpreadsheetException(String message) {
+        super(message);
+    }
+
+}
@@ -1,9 +1,10 @@
 package de.intranda.goobi.plugins;
 
 import java.io.IOException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
@@ -24,56 +25,28 @@ import java.util.ArrayList;
  *
  */
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
-
-import org.apache.commons.configuration.HierarchicalConfiguration;
-import org.apache.commons.configuration.SubnodeConfiguration;
-import org.apache.commons.io.ByteOrderMark;
-import org.apache.commons.io.input.BOMInputStream;
-import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Row.MissingCellPolicy;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.goobi.beans.Batch;
 import org.goobi.beans.Process;
 import org.goobi.beans.Step;
+import org.goobi.production.enums.LogType;
 import org.goobi.production.enums.PluginGuiType;
 import org.goobi.production.enums.PluginReturnValue;
 import org.goobi.production.enums.PluginType;
 import org.goobi.production.enums.StepReturnValue;
-import org.goobi.production.plugin.interfaces.IOpacPlugin;
 import org.goobi.production.plugin.interfaces.IStepPluginVersion2;
 
-import de.sub.goobi.config.ConfigPlugins;
-import de.sub.goobi.helper.StorageProvider;
-import de.sub.goobi.helper.VariableReplacer;
+import de.sub.goobi.helper.CloseStepHelper;
+import de.sub.goobi.helper.Helper;
+import de.sub.goobi.helper.enums.StepStatus;
 import de.sub.goobi.helper.exceptions.DAOException;
-import de.sub.goobi.helper.exceptions.SwapException;
-import de.sub.goobi.metadaten.MetadatenImagesHelper;
-import de.unigoettingen.sub.search.opac.ConfigOpac;
-import de.unigoettingen.sub.search.opac.ConfigOpacCatalogue;
+import de.sub.goobi.persistence.managers.ProcessManager;
+import de.sub.goobi.persistence.managers.StepManager;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 import net.xeoh.plugins.base.annotations.PluginImplementation;
-import ugh.dl.Corporate;
-import ugh.dl.DigitalDocument;
-import ugh.dl.DocStruct;
-import ugh.dl.Fileformat;
-import ugh.dl.Metadata;
-import ugh.dl.MetadataType;
-import ugh.dl.Person;
 import ugh.dl.Prefs;
-import ugh.dl.Reference;
-import ugh.exceptions.MetadataTypeNotAllowedException;
-import ugh.exceptions.PreferencesException;
-import ugh.exceptions.TypeNotAllowedForParentException;
 import ugh.exceptions.UGHException;
-import ugh.exceptions.WriteException;
 
 @PluginImplementation
 @Log4j2
@@ -90,23 +63,7 @@ public class MetadataStructureImportStepPlugin implements IStepPluginVersion2 {
 
     private Prefs prefs;
 
-    private String excelFolder;
-
-    private int headerRowNumber;
-    private int dataRowNumber;
-    private int lastDataRow;
-    private transient List<Column> columns;
-
-    private String identifierColumnName;
-    private String doctypeColumnName;
-    private String hierarchyColumnName;
-    private String imageStartColumnName;
-    private String imageEndColumnName;
-
-    private String opacName;
-    private String opacSearchField;
-
-    private Map<String, String> docstructs;
+    private transient ImportConfiguration configuration;
 
     @Override
     public void initialize(Step step, String returnPath) {
@@ -114,332 +71,170 @@ public class MetadataStructureImportStepPlugin implements IStepPluginVersion2 {
         process = step.getProzess();
         prefs = process.getRegelsatz().getPreferences();
 
-        // load configuration
-        SubnodeConfiguration config = ConfigPlugins.getProjectAndStepConfig(title, step);
+        // load configuration, it is only read again if the file was changed
+        configuration = ImportConfigurationCache.get(title, step);
+    }
 
-        excelFolder = config.getString("/excelFolder");
+    // preview of the spreadsheet, null until it is loaded in the user interface
+    @Getter
+    private StructurePreview preview;
 
-        headerRowNumber = config.getInt("/rowHeader", 1);
-        dataRowNumber = config.getInt("/rowDataStart", 2);
-        lastDataRow = config.getInt("/rowDataEnd", 99999);
-        columns = new ArrayList<>();
+    // progress of the last import started by this instance, null if no import was started in the background
+    private transient ImportProgress progress;
 
-        List<HierarchicalConfiguration> hcl = config.configurationsAt("/column");
-        for (HierarchicalConfiguration hc : hcl) {
-            Column col = new Column();
-            col.setColumnName(hc.getString("@columnName"));
-            col.setMetadataName(hc.getString("@metadata", ""));
-            columns.add(col);
+    @Override
+    public PluginReturnValue run() {
+        if (!configuration.isRunInBackground()) {
+            return importStructure(null, new ImportProgress());
         }
-
-        docstructs = new HashMap<>();
-        hcl = config.configurationsAt("/docstruct");
-        for (HierarchicalConfiguration hc : hcl) {
-            docstructs.put(hc.getString("@label"), hc.getString("@value"));
+        ImportProgress newProgress = new ImportProgress();
+        if (BackgroundImport.start(process.getId(), newProgress, () -> importAndFinishStep(newProgress))) {
+            progress = newProgress;
+        } else {
+            log.info("The structure of process {} is already being imported", process.getId());
         }
-
-        identifierColumnName = config.getString("/identifierColumnName");
-        doctypeColumnName = config.getString("/doctypeColumnName");
-        hierarchyColumnName = config.getString("/hierarchyColumnName");
-        imageStartColumnName = config.getString("/imageStartColumnName");
-        imageEndColumnName = config.getString("/imageEndColumnName");
-
-        opacName = config.getString("/opacName");
-        opacSearchField = config.getString("/searchField");
+        return PluginReturnValue.WAIT;
     }
 
-    @Override
-    public PluginReturnValue run() {
-        // open metadata file
-        Fileformat fileformat = null;
-        DigitalDocument digDoc = null;
+    private PluginReturnValue importStructure(ParsedSpreadsheet parsed, ImportProgress importProgress) {
+        OpacLookup opacLookup = OpacLookup.create(configuration, prefs);
         try {
-            fileformat = process.readMetadataFile();
-            digDoc = fileformat.getDigitalDocument();
-        } catch (UGHException | IOException | SwapException e) {
-            log.error(e);
-            // cannot read metadata file, abort.
-            return PluginReturnValue.ERROR;
-
+            return new StructureImporter(configuration, prefs, opacLookup).importStructure(process, step, parsed, importProgress);
+        } finally {
+            if (opacLookup != null) {
+                opacLookup.close();
+            }
         }
-        DocStruct logical = digDoc.getLogicalDocStruct();
-        DocStruct physical = digDoc.getPhysicalDocStruct();
-
-        VariableReplacer replacer = new VariableReplacer(digDoc, process.getRegelsatz().getPreferences(), process, step);
+    }
 
-        // find excel file in configured folder
-        Path excelFile = null;
-        Path path = Paths.get(replacer.replace(excelFolder));
-        if (!StorageProvider.getInstance().isDirectory(path)) {
-            // excel folder not found, abort
-            return PluginReturnValue.ERROR;
+    /**
+     * Parse the spreadsheet and show the structure elements it creates, without changing the metadata file
+     */
+    public void loadPreview() {
+        try {
+            ParsedSpreadsheet parsed = new StructureImporter(configuration, prefs, null).parse(process, step);
+            preview = StructurePreview.create(process.getId(), parsed, configuration);
+        } catch (IOException | UGHException e) {
+            log.error(e);
+            preview = null;
+            Helper.setFehlerMeldung(e.getMessage());
         }
+    }
 
-        List<Path> dataInFolder = StorageProvider.getInstance().listFiles(path.toString());
-        for (Path p : dataInFolder) {
-            if (p.getFileName().toString().endsWith("xlsx")) {
-                excelFile = p;
+    /**
+     * Import the previewed rows. The spreadsheet is only parsed again, if it was changed since the preview was loaded.
+     */
+    public void applyPreview() {
+        ParsedSpreadsheet parsed = StructurePreview.removeCached(process.getId());
+        preview = null;
+        if (configuration.isRunInBackground()) {
+            ImportProgress newProgress = new ImportProgress();
+            if (BackgroundImport.start(process.getId(), newProgress, () -> importStructure(parsed, newProgress))) {
+                progress = newProgress;
+                Helper.setMeldung(Helper.getTranslation("plugin_intranda_step_MetadataStructureImport_importStarted"));
+            } else {
+                Helper.setFehlerMeldung(Helper.getTranslation("plugin_intranda_step_MetadataStructureImport_importRunning"));
             }
+        } else if (importStructure(parsed, new ImportProgress()) == PluginReturnValue.ERROR) {
+            Helper.setFehlerMeldung(Helper.getTranslation("plugin_intranda_step_MetadataStructureImport_importError"));
+        } else {
+            Helper.setMeldung(Helper.getTranslation("plugin_intranda_step_MetadataStructureImport_importFinished"));
         }
-        if (excelFile == null) {
-            // excel file not found, abort
-            return PluginReturnValue.ERROR;
-        }
+    }
 
-        // clear metadata file, remove existing structure elements
-        if (logical.getAllChildren() != null) {
-            List<DocStruct> children = new ArrayList<>(logical.getAllChildren());
-            if (children != null) {
-                for (DocStruct child : children) {
-                    List<Reference> refs = new ArrayList<>(child.getAllToReferences());
-                    for (ugh.dl.Reference ref : refs) {
-                        child.removeReferenceTo(ref.getTarget());
-                    }
-                    logical.removeChild(child);
-                }
-            }
-        }
+    /**
+     *
+     * @return true if the process belongs to a batch, then the structure data of all processes of the batch can be imported at once
+     */
+    public boolean isBatchImportAvailable() {
+        return process.getBatch() != null;
+    }
 
-        // create pagination, if missing
-        if (physical.getAllChildren() == null) {
-            MetadatenImagesHelper imagehelper = new MetadatenImagesHelper(prefs, digDoc);
-            try {
-                imagehelper.createPagination(process, process.getImagesTifDirectory(true));
-            } catch (TypeNotAllowedForParentException | IOException | SwapException | DAOException e) {
-                log.error(e);
-            }
+    /**
+     * Import the structure data of all processes of the batch, each with the configuration of its step with the title of this step. The steps
+     * of the processes are not changed.
+     */
+    public void importBatch() {
+        Batch batch = process.getBatch();
+        if (batch == null) {
+            return;
         }
-        List<DocStruct> pages = physical.getAllChildren();
-
-        // load configured opac catalogue
-        IOpacPlugin myImportOpac = null;
-        ConfigOpacCatalogue coc = null;
-        if (StringUtils.isNotBlank(opacName)) {
-            for (ConfigOpacCatalogue configOpacCatalogue : ConfigOpac.getInstance().getAllCatalogues("")) {
-                if (configOpacCatalogue.getTitle().equals(opacName)) {
-                    myImportOpac = configOpacCatalogue.getOpacPlugin();
-                    coc = configOpacCatalogue;
-                }
-            }
+        List<Integer> processIds = ProcessManager.getIdsForFilter("batchID = " + batch.getBatchId());
+        List<Process> processes = new ArrayList<>();
+        for (Integer id : processIds) {
+            processes.add(ProcessManager.getProcessById(id));
         }
-
-        // open excel file
-        Map<String, Integer> headerOrder = new HashMap<>();
-        try (BOMInputStream in = BOMInputStream.builder()
-                .setPath(excelFile)
-                .setByteOrderMarks(ByteOrderMark.UTF_8)
-                .setInclude(false)
-                .get();
-                Workbook wb = WorkbookFactory.create(in)) {
-            Sheet sheet = wb.getSheetAt(0);
-            Iterator<Row> rowIterator = sheet.rowIterator();
-
-            int rowCounter = 0;
-
-            //  find the header row
-            Row headerRow = null;
-            while (rowCounter < headerRowNumber) {
-                headerRow = rowIterator.next();
-                rowCounter++;
+        StructureImportBatch batchImport = new StructureImportBatch(step.getTitel(), configuration.getBatchWorkers());
+        if (configuration.isRunInBackground()) {
+            ImportProgress newProgress = new ImportProgress();
+            // no process of the batch can be imported on its own until the batch import is finished
+            if (BackgroundImport.start(processIds, newProgress, () -> batchImport.run(processes, newProgress))) {
+                progress = newProgress;
+                Helper.setMeldung(Helper.getTranslation("plugin_intranda_step_MetadataStructureImport_batchImportStarted", String.valueOf(processes.size())));
+            } else {
+                Helper.setFehlerMeldung(Helper.getTranslation("plugin_intranda_step_MetadataStructureImport_importRunning"));
             }
-
-            //  read the header row
-            int numberOfCells = headerRow.getLastCellNum();
-            for (int i = 0; i < numberOfCells; i++) {
-                Cell cell = headerRow.getCell(i);
-                if (cell != null) {
-                    String value = null;
-                    switch (cell.getCellType()) {
-                        case BOOLEAN:
-                            value = String.valueOf(cell.getBooleanCellValue());
-                            break;
-                        case FORMULA:
-                            value = cell.getCellFormula();
-                            break;
-                        case NUMERIC:
-                            value = String.valueOf(cell.getNumericCellValue());
-                            break;
-                        case STRING:
-                            value = cell.getStringCellValue();
-                            break;
-                        case ERROR:
-                        case BLANK:
-                        case _NONE:
-                        default:
-                            value = "";
-                            break;
-                    }
-                    headerOrder.put(value, i);
-                }
-            }
-
-            // find the first data row
-            while (rowCounter < dataRowNumber - 1) {
-                headerRow = rowIterator.next();
-                rowCounter++;
-            }
-
-            DocStruct lastElement = logical;
-            int lastHierarchy = 0;
-
-            // run through all the data rows
-            while (rowIterator.hasNext() && rowCounter < lastDataRow) {
-
-                // for each line in excel file:
-
-                // generate structure element
-                // parent element is the last element with smaller hierarchy level (or the root element)
-                // add metadata from configured columns
-                // create page assignments based on excel data
-                // opac request if configured and identifier is known
-                // excel data has higher priority than opac data
-
-                Row row = rowIterator.next();
-                rowCounter++;
-                int lastColumn = row.getLastCellNum();
-                if (lastColumn == -1) {
-                    continue;
-                }
-
-                String docType = getCellValue(row, headerOrder.get(doctypeColumnName));
-                int hierarchy = Integer.parseInt(getCellValue(row, headerOrder.get(hierarchyColumnName)));
-
-                String identifier = getCellValue(row, headerOrder.get(identifierColumnName));
-
-                int startPageNo = Integer.parseInt(getCellValue(row, headerOrder.get(imageStartColumnName)));
-                int endPageNo = Integer.parseInt(getCellValue(row, headerOrder.get(imageEndColumnName)));
-
-                DocStruct currentDocStruct = digDoc.createDocStruct(prefs.getDocStrctTypeByName(docstructs.get(docType)));
-
-                // skip first element as it is the publication type itself
-                if (hierarchy != 0) {
-
-                    // if current element hierarchy is higher than last element, its a child element of the last element
-                    if (hierarchy > lastHierarchy) {
-                        lastElement.addChild(currentDocStruct);
-                    }
-                    // if it has the same number, its a sibling, add it as child element of the parent
-                    else if (hierarchy == lastHierarchy) {
-                        lastElement.getParent().addChild(currentDocStruct);
-                    } else {
-                        // if it is smaller, go upwards to find the right parent element, insert as last
-                        while (hierarchy < lastHierarchy) {
-                            lastElement = lastElement.getParent();
-                            lastHierarchy--;
-                        }
-                        lastElement.getParent().addChild(currentDocStruct);
-                    }
-
-                    lastElement = currentDocStruct;
-                    lastHierarchy = hierarchy;
-
-                    //  get opac record for identifier
-
-                    if (StringUtils.isNotBlank(identifier) && coc != null && myImportOpac != null) {
-                        getOpacRequest(currentDocStruct, myImportOpac, coc, identifier);
-                    }
-
-                    // copy metadata from response to the new docstruct
-
-                    // assign pages
-                    List<DocStruct> pagesToAssign = pages.subList(startPageNo - 1, endPageNo);
-
-                    for (DocStruct page : pagesToAssign) {
-                        currentDocStruct.addReferenceTo(page, "logical_physical");
-                    }
-
-                    // get additional metadata from excel document
-                    for (Column col : columns) {
-                        int colId = headerOrder.get(col.getColumnName());
-                        String colVal = getCellValue(row, colId);
-
-                        // overwrite/insert new metadata
-                        MetadataType metadataType = prefs.getMetadataTypeByName(col.getMetadataName());
-
-                        List<? extends Metadata> metadataList = currentDocStruct.getAllMetadataByType(metadataType);
-                        if (!metadataList.isEmpty()) {
-                            Metadata metadata = metadataList.get(0);
-                            metadata.setValue(colVal);
-                        } else {
-                            Metadata metadata = new Metadata(metadataType);
-                            metadata.setValue(colVal);
-                            currentDocStruct.addMetadata(metadata);
-                        }
-                    }
-                }
-            }
-        } catch (IOException | UGHException e) {
-            log.error(e);
+            return;
         }
+        StructureImportBatch.BatchResult result = batchImport.run(processes);
+        for (Map.Entry<String, String> error : result.getErrors().entrySet()) {
+            Helper.setFehlerMeldung(Helper.getTranslation("plugin_intranda_step_MetadataStructureImport_batchImportError", error.getKey(), error.getValue()));
+        }
+        Helper.setMeldung(Helper.getTranslation("plugin_intranda_step_MetadataStructureImport_batchImportFinished", String.valueOf(result.getFinished().size())));
+    }
 
+    /**
+     * Import the structure in the background, then close the step. If the import failed or was cancelled, the step is set to error instead.
+     */
+    private void importAndFinishStep(ImportProgress importProgress) {
+        PluginReturnValue result;
         try {
-            process.writeMetadataFile(fileformat);
-        } catch (WriteException | PreferencesException | IOException | SwapException e) {
-            log.error(e);
+            result = importStructure(null, importProgress);
+        } catch (RuntimeException e) {
+            log.error("Structure import of process {} failed", process.getId(), e);
+            result = PluginReturnValue.ERROR;
         }
-
-        return PluginReturnValue.FINISH;
+        finishStep(result, importProgress);
     }
 
-    private void getOpacRequest(DocStruct currentDocstruct, IOpacPlugin myImportOpac, ConfigOpacCatalogue coc, String identifier)
-            throws PreferencesException {
-        Fileformat opacResponse = null;
+    private void finishStep(PluginReturnValue result, ImportProgress importProgress) {
+        if (result != PluginReturnValue.ERROR) {
+            CloseStepHelper.closeStep(step, null);
+            return;
+        }
+        Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR,
+                Helper.getTranslation(importProgress.isCancelled() ? "plugin_intranda_step_MetadataStructureImport_importCancelled" : "plugin_intranda_step_MetadataStructureImport_importFailed"));
+        step.setBearbeitungsstatusEnum(StepStatus.ERROR);
         try {
-            opacResponse = myImportOpac.search(opacSearchField, identifier, coc, prefs);
-        } catch (Exception e) {
+            StepManager.saveStep(step);
+        } catch (DAOException e) {
             log.error(e);
         }
-        if (opacResponse != null) {
-            DocStruct opacLogical = opacResponse.getDigitalDocument().getLogicalDocStruct();
-            if (opacLogical.getType().isAnchor()) {
-                opacLogical = opacLogical.getAllChildren().get(0);
-            }
-            if (opacLogical.getAllMetadata() != null) {
-                for (Metadata md : opacLogical.getAllMetadata()) {
-                    try {
-                        Metadata copy = new Metadata(md.getType());
-                        copy.setValue(md.getValue());
-                        copy.setAutorityFile(md.getAuthorityID(), md.getAuthorityURI(), md.getAuthorityValue());
-                        currentDocstruct.addMetadata(copy);
-                    } catch (MetadataTypeNotAllowedException e) {
-                        log.debug(e);
-                    }
-                }
-            }
-            if (opacLogical.getAllPersons() != null) {
-                for (Person p : opacLogical.getAllPersons()) {
-                    try {
-                        Person copy = new Person(p.getType());
-                        copy.setFirstname(p.getFirstname());
-                        copy.setLastname(p.getLastname());
-                        copy.setAutorityFile(p.getAuthorityID(), p.getAuthorityURI(), p.getAuthorityValue());
-                        currentDocstruct.addPerson(copy);
-                    } catch (MetadataTypeNotAllowedException e) {
-                        log.debug(e);
-                    }
-
-                }
-            }
-            if (opacLogical.getAllCorporates() != null) {
-                for (Corporate c : opacLogical.getAllCorporates()) {
-                    try {
-                        Corporate copy = new Corporate(c.getType());
-                        copy.setMainName(c.getMainName());
-                        copy.setAutorityFile(c.getAuthorityID(), c.getAuthorityURI(), c.getAuthorityValue());
-                        currentDocstruct.addCorporate(copy);
-                    } catch (MetadataTypeNotAllowedException e) {
-                        log.debug(e);
-
-                    }
-
-                }
-            }
+    }
+
+    /**
+     *
+     * @return the progress of the running import of the process or of the last import started here, null if there is none
+     */
+    public ImportProgress getProgress() {
+        ImportProgress running = BackgroundImport.getProgress(process.getId());
+        return running == null ? progress : running;
+    }
+
+    /**
+     * Cancel the running import of the process. It stops before the next row, the metadata file is not changed. The import of a batch stops
+     * before the next process.
+     */
+    public void cancelImport() {
+        ImportProgress running = BackgroundImport.getProgress(process.getId());
+        if (running != null) {
+            running.cancel();
         }
     }
 
     @Override
     public PluginGuiType getPluginGuiType() {
-        return PluginGuiType.NONE;
+        return PluginGuiType.PART;
     }
 
     @Override
@@ -454,6 +249,7 @@ public class MetadataStructureImportStepPlugin implements IStepPluginVersion2 {
 
     @Override
     public String cancel() {
+        cancelImport();
         return "";
     }
 
@@ -479,27 +275,7 @@ public class MetadataStructureImportStepPlugin implements IStepPluginVersion2 {
     }
 
     public String getCellValue(Row row, int columnIndex) {
-        Cell cell = row.getCell(columnIndex, MissingCellPolicy.CREATE_NULL_AS_BLANK);
-        String value = "";
-        switch (cell.getCellType()) {
-            case BOOLEAN:
-                value = String.valueOf(cell.getBooleanCellValue());
-                break;
-            case FORMULA:
-                value = cell.getRichStringCellValue().getString();
-                break;
-            case NUMERIC:
-                value = String.valueOf((long) cell.getNumericCellValue());
-                break;
-            case STRING:
-                value = cell.getStringCellValue();
-                break;
-            default:
-                // none, error, blank
-                value = "";
-                break;
-        }
-        return value;
+        return ExcelWorkbookReader.getCellValue(row, columnIndex);
     }
 
 }
@@ -0,0 +1,318 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Two level cache for catalogue records. Records are kept in a small in-memory tier shared by all imports of the JVM that use the same folder
+ * and memory size, and in the folder on disk, which can be shared by several Goobi servers. The files use a binary format instead of java
+ * serialization, so a manipulated file in a shared folder cannot create arbitrary objects. Files are written to a temporary file first and
+ * moved into place, so concurrent imports never read a partially written record. Records older than the configured time to live are ignored.
+ * When the folder contains more than the configured number of records, the least recently used records are deleted. Records found in memory
+ * count as used as well, their access time is written to the files before the eviction.
+ */
+@Log4j2
+public class OpacCache {
+
+    private static final String FILE_SUFFIX = ".record";
+    // first value of each file, files without it were written in an older format
+    private static final int FILE_FORMAT = 0x4f524331;
+
+    // in-memory tiers for each folder and memory size, each ordered by last access
+    private static final Map<List<Object>, Map<String, MemoryEntry>> memoryTiers = new HashMap<>();
+
+    private final Path folder;
+    private final int maxEntries;
+    private final int memorySize;
+    private final long timeToLive;
+    // shared by all caches with the same folder and memory size
+    private final Map<String, MemoryEntry> memory;
+
+    private final AtomicInteger memoryHits = new AtomicInteger();
+    private final AtomicInteger diskHits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * 
+     * @param folder the folder containing the cached records
+     * @param maxEntries the maximum number of records kept on disk
+     * @param memoryEntries the maximum number of records kept in memory
+     * @param timeToLive the time in milliseconds a record is valid
+     */
+    public OpacCache(Path folder, int maxEntries, int memoryEntries, long timeToLive) {
+        this.folder = folder;
+        this.maxEntries = maxEntries;
+        this.memorySize = memoryEntries;
+        this.timeToLive = timeToLive;
+        synchronized (memoryTiers) {
+            memory = memoryTiers.computeIfAbsent(List.of(folder.toAbsolutePath().normalize(), memoryEntries),
+                    k -> new LinkedHashMap<>(16, 0.75f, true));
+        }
+    }
+
+    /**
+     * Create the key of a record
+     * 
+     * @param opacName the name of the catalogue
+     * @param searchField the search field
+     * @param identifier the identifier
+     * @return the key
+     */
+    public static String createKey(String opacName, String searchField, String identifier) {
+        return opacName + "\u0000" + searchField + "\u0000" + identifier;
+    }
+
+    /**
+     * Get a cached record
+     * 
+     * @param key the key of the record
+     * @return the record or null, if the record is not cached or expired
+     */
+    public OpacRecord get(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (memory) {
+            MemoryEntry memoryEntry = memory.get(key);
+            if (memoryEntry != null && !isExpired(memoryEntry.entry, now)) {
+                // the file is not read, its access time is updated by the next eviction
+                memoryEntry.accessed = now;
+                memoryHits.incrementAndGet();
+                return memoryEntry.entry.getRecord();
+            }
+        }
+        Path file = getFile(key);
+        if (Files.isRegularFile(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                CacheEntry entry = readEntry(in);
+                if (entry == null) {
+                    // written by an older version of the plugin or not a cache file at all
+                    Files.deleteIfExists(file);
+                } else if (!isExpired(entry, now)) {
+                    // last modification date is used as access time for the eviction
+                    Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+                    putInMemory(key, entry, now);
+                    diskHits.incrementAndGet();
+                    return entry.getRecord();
+                } else {
+                    Files.deleteIfExists(file);
+                }
+            } catch (NoSuchFileException e) {
+                // removed by another import in the meantime
+            } catch (IOException e) {
+                log.warn("Cannot read cached catalogue record {}", file, e);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Store a record in both tiers
+     * 
+     * @param key the key of the record
+     * @param rec the record
+     */
+    public void put(String key, OpacRecord rec) {
+        CacheEntry entry = new CacheEntry(rec, System.currentTimeMillis());
+        putInMemory(key, entry, entry.getCreated());
+        Path file = getFile(key);
+        Path tempFile = null;
+        try {
+            Files.createDirectories(folder);
+            tempFile = Files.createTempFile(folder, file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                writeEntry(out, entry);
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Cannot write cached catalogue record {}", file, e);
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e1) {
+                    log.debug(e1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete the least recently used records, if the folder contains more than the configured number of records
+     */
+    public void evict() {
+        if (!Files.isDirectory(folder)) {
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "*" + FILE_SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        } catch (IOException e) {
+            log.warn("Cannot list catalogue cache {}", folder, e);
+            return;
+        }
+        if (files.size() <= maxEntries) {
+            return;
+        }
+        Map<Path, Long> accessTimes = new HashMap<>();
+        for (Path file : files) {
+            try {
+                accessTimes.put(file, Files.getLastModifiedTime(file).toMillis());
+            } catch (IOException e) {
+                // already deleted by another import
+                accessTimes.put(file, 0L);
+            }
+        }
+        // records found in memory were not read from disk, write their access time to the files
+        for (Map.Entry<Path, Long> access : getMemoryAccessTimes().entrySet()) {
+            Long modified = accessTimes.get(access.getKey());
+            if (modified != null && access.getValue() > modified) {
+                accessTimes.put(access.getKey(), access.getValue());
+                touch(access.getKey(), access.getValue());
+            }
+        }
+        Collections.sort(files, Comparator.comparing(accessTimes::get));
+        int deleted = 0;
+        for (Path file : files.subList(0, files.size() - maxEntries)) {
+            try {
+                if (Files.deleteIfExists(file)) {
+                    deleted++;
+                }
+            } catch (IOException e) {
+                log.debug(e);
+            }
+        }
+        log.debug("Removed {} records from catalogue cache {}", deleted, folder);
+    }
+
+    /**
+     * Write the number of cache hits and misses of this import to the log
+     */
+    public void logStatistics() {
+        log.info("Catalogue cache {}: {} memory hits, {} disk hits, {} misses", folder, memoryHits.get(), diskHits.get(), misses.get());
+    }
+
+    public int getHits() {
+        return memoryHits.get() + diskHits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    private boolean isExpired(CacheEntry entry, long now) {
+        return now - entry.getCreated() > timeToLive;
+    }
+
+    private void putInMemory(String key, CacheEntry entry, long accessed) {
+        synchronized (memory) {
+            memory.put(key, new MemoryEntry(entry, accessed));
+            while (memory.size() > memorySize) {
+                String eldest = memory.keySet().iterator().next();
+                memory.remove(eldest);
+            }
+        }
+    }
+
+    private Map<Path, Long> getMemoryAccessTimes() {
+        Map<String, Long> accessTimes = new HashMap<>();
+        synchronized (memory) {
+            for (Map.Entry<String, MemoryEntry> entry : memory.entrySet()) {
+                accessTimes.put(entry.getKey(), entry.getValue().accessed);
+            }
+        }
+        Map<Path, Long> fileAccessTimes = new HashMap<>();
+        for (Map.Entry<String, Long> entry : accessTimes.entrySet()) {
+            fileAccessTimes.put(getFile(entry.getKey()), entry.getValue());
+        }
+        return fileAccessTimes;
+    }
+
+    private void touch(Path file, long accessed) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(accessed));
+        } catch (NoSuchFileException e) {
+            // removed by another import in the meantime
+        } catch (IOException e) {
+            log.debug(e);
+        }
+    }
+
+    private Path getFile(String key) {
+        return folder.resolve(sha256(key) + FILE_SUFFIX);
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // every java implementation must support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads an entry written by {@link #writeEntry(DataOutputStream, CacheEntry)}.
+     *
+     * @return the entry, or null if the file was written in another format
+     */
+    private static CacheEntry readEntry(DataInputStream in) throws IOException {
+        if (in.readInt() != FILE_FORMAT) {
+            return null;
+        }
+        long created = in.readLong();
+        return new CacheEntry(OpacRecord.read(in), created);
+    }
+
+    private static void writeEntry(DataOutputStream out, CacheEntry entry) throws IOException {
+        out.writeInt(FILE_FORMAT);
+        out.writeLong(entry.getCreated());
+        entry.getRecord().write(out);
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class CacheEntry {
+
+        private final OpacRecord record;
+        private final long created;
+    }
+
+    private static class MemoryEntry {
+
+        private final CacheEntry entry;
+        // last access in memory, later than the last modification of the file after a memory hit
+        private long accessed;
+
+        MemoryEntry(CacheEntry entry, long accessed) {
+            this.entry = entry;
+            this.accessed = accessed;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Stops querying a catalogue after repeated failures. When the configured number of requests failed one after another, the circuit opens and
+ * no further requests are sent, the structure is created without catalogue data. After the pause a single request is let through: if it
+ * succeeds, the circuit closes again, otherwise it stays open for another pause. One circuit is shared by all imports of the JVM that use the
+ * same catalogue.
+ */
+@Log4j2
+public final class OpacCircuitBreaker {
+
+    private static final Map<String, OpacCircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    private final String opacName;
+    // consecutive failures that open the circuit, 0 or less to never open it
+    private final int threshold;
+    private final long pause;
+
+    private int failures;
+    private long openUntil;
+    // a request is sent to check if the catalogue is available again
+    private boolean probing;
+
+    /**
+     *
+     * @param opacName the name of the catalogue, used for logging
+     * @param threshold the number of consecutive failures that open the circuit, 0 or less to never open it
+     * @param pause the time in milliseconds before the catalogue is queried again
+     */
+    OpacCircuitBreaker(String opacName, int threshold, long pause) {
+        this.opacName = opacName;
+        this.threshold = threshold;
+        this.pause = pause;
+    }
+
+    /**
+     * Get the circuit of a catalogue. A new circuit is created, if the configuration was changed.
+     *
+     * @param opacName the name of the catalogue
+     * @param threshold the number of consecutive failures that open the circuit, 0 or less to never open it
+     * @param pause the time in milliseconds before the catalogue is queried again
+     * @return the circuit
+     */
+    public static OpacCircuitBreaker get(String opacName, int threshold, long pause) {
+        return BREAKERS.compute(opacName,
+                (name, breaker) -> breaker != null && breaker.threshold == threshold && breaker.pause == pause ? breaker
+                        : new OpacCircuitBreaker(name, threshold, pause));
+    }
+
+    /**
+     *
+     * @return true if a request may be sent. Each permitted request must be followed by {@link #onSuccess()} or {@link #onFailure()}
+     */
+    public synchronized boolean allowRequest() {
+        if (threshold <= 0 || failures < threshold) {
+            return true;
+        }
+        if (probing || System.currentTimeMillis() < openUntil) {
+            return false;
+        }
+        probing = true;
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (failures >= threshold && threshold > 0) {
+            log.info("Catalogue {} is available again", opacName);
+        }
+        failures = 0;
+        probing = false;
+    }
+
+    /**
+     * A permitted request was not sent or its result is unknown, e.g. because the import was cancelled
+     */
+    public synchronized void onCancelled() {
+        probing = false;
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+        probing = false;
+        if (threshold > 0 && failures >= threshold) {
+            if (failures == threshold) {
+                log.warn("{} requests to catalogue {} failed, stop querying it for {} seconds", failures, opacName, pause / 1000);
+            }
+            openUntil = System.currentTimeMillis() + pause;
+        }
+    }
+
+    /**
+     *
+     * @return true if requests are currently not sent to the catalogue
+     */
+    public synchronized boolean isOpen() {
+        return threshold > 0 && failures >= threshold;
+    }
+}
@@ -0,0 +1,600 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.goobi.production.plugin.interfaces.IOpacPlugin;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import de.unigoettingen.sub.search.opac.ConfigOpac;
+import de.unigoettingen.sub.search.opac.ConfigOpacCatalogue;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.Fileformat;
+import ugh.dl.Prefs;
+
+/**
+ * Requests catalogue records for the identifiers of a spreadsheet. Each identifier is requested only once per import. If a cache is configured,
+ * it is asked before the catalogue is queried. With more than one thread, requests can be submitted while the spreadsheet is read, the results
+ * are collected afterwards in row order. If a batch size and the metadata of the identifier in the records are configured, the submitted
+ * identifiers are collected and sent as one OR query for each batch. Batches only save requests if at most one identifier of a batch has a
+ * record, otherwise the identifiers are requested again on their own.
+ * <p>
+ * Each catalogue call is cancelled after the timeout, limited by a {@link OpacRateLimiter} and skipped while the {@link OpacCircuitBreaker}
+ * of the catalogue is open. Identifiers without a record because of this are remembered, their rows can be imported again later.
+ * <p>
+ * If a {@link SpoolFile} is used, the records are written to the file as soon as they arrive and are only read again when the result is
+ * collected, so that the records of a very large import are not kept in memory until the end.
+ */
+@Log4j2
+public class OpacLookup implements AutoCloseable {
+
+    private final ConfigOpacCatalogue coc;
+    private final String opacName;
+    private final String searchField;
+    private final Prefs prefs;
+    private final int timeout;
+    private final OpacCache cache;
+    // file for the received records, null to keep them in memory
+    private final SpoolFile spool;
+    // maximum number of identifiers in a single query, 1 if the catalogue is queried for each identifier
+    private final int batchSize;
+    // metadata of a catalogue record that contains its identifier, to assign the record of a batch query
+    private final String identifierMetadata;
+
+    private final OpacRateLimiter rateLimiter;
+    private final OpacCircuitBreaker circuitBreaker;
+
+    private final ExecutorService executor;
+    // runs the catalogue calls, so that a call that does not return in time can be abandoned. The threads and the queue are limited, calls
+    // that hang despite being cancelled block a thread and further calls are rejected instead of starting more threads
+    private final ThreadPoolExecutor callExecutor;
+
+    // opac plugins keep the state of the last search, each thread of the call executor uses its own instance
+    private final ThreadLocal<IOpacPlugin> opacPlugins;
+
+    // all requests of the current import, used to request repeated identifiers only once
+    private final Map<String, Future<OpacRecord>> requests = new ConcurrentHashMap<>();
+    private final AtomicInteger lookups = new AtomicInteger();
+    // identifiers whose request failed, timed out or was not sent because the catalogue was not available
+    private final Set<String> unavailable = ConcurrentHashMap.newKeySet();
+
+    // identifiers waiting for the next batch query, in the order they were submitted
+    private final Map<String, CompletableFuture<OpacRecord>> batch = new LinkedHashMap<>();
+
+    /**
+     * 
+     * @param coc the catalogue to query
+     * @param searchField the search field used for the identifier
+     * @param prefs the ruleset of the process
+     * @param threads the maximum number of parallel requests, 1 to run all requests on the calling thread
+     * @param timeout the maximum time in seconds to wait for a single request
+     * @param cache the cache for catalogue records, can be null
+     * @param rateLimiter limits the requests to the catalogue
+     * @param circuitBreaker stops the requests to the catalogue after repeated failures
+     */
+    public OpacLookup(ConfigOpacCatalogue coc, String searchField, Prefs prefs, int threads, int timeout, OpacCache cache,
+            OpacRateLimiter rateLimiter, OpacCircuitBreaker circuitBreaker) {
+        this(coc, searchField, prefs, threads, timeout, cache, 1, null, rateLimiter, circuitBreaker, null);
+    }
+
+    /**
+     * 
+     * @param coc the catalogue to query
+     * @param searchField the search field used for the identifier
+     * @param prefs the ruleset of the process
+     * @param threads the maximum number of parallel requests, 1 to run all requests on the calling thread
+     * @param timeout the maximum time in seconds to wait for a single request
+     * @param cache the cache for catalogue records, can be null
+     * @param batchSize the maximum number of identifiers in a single query, 1 to query each identifier on its own
+     * @param identifierMetadata the metadata of a catalogue record that contains its identifier, batch queries are only sent if it is set
+     * @param rateLimiter limits the requests to the catalogue
+     * @param circuitBreaker stops the requests to the catalogue after repeated failures
+     * @param spool the file for the received records, null to keep them in memory. It is closed with the lookup
+     */
+    public OpacLookup(ConfigOpacCatalogue coc, String searchField, Prefs prefs, int threads, int timeout, OpacCache cache, int batchSize,
+            String identifierMetadata, OpacRateLimiter rateLimiter, OpacCircuitBreaker circuitBreaker, SpoolFile spool) {
+        this.coc = coc;
+        this.opacName = coc.getTitle();
+        this.searchField = searchField;
+        this.prefs = prefs;
+        this.timeout = timeout;
+        this.cache = cache;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.spool = spool;
+        if (batchSize > 1 && StringUtils.isBlank(identifierMetadata)) {
+            log.info("No identifier metadata is configured for catalogue {}, each identifier is requested on its own", opacName);
+            batchSize = 1;
+        }
+        this.batchSize = batchSize;
+        this.identifierMetadata = identifierMetadata;
+        // batches are collected while the rows are imported and are sent in the background
+        executor = threads > 1 || this.batchSize > 1 ? Executors.newFixedThreadPool(Math.max(threads, 1)) : null;
+        int callThreads = Math.max(threads, 1);
+        callExecutor = new ThreadPoolExecutor(callThreads, callThreads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(callThreads), runnable -> {
+            Thread thread = new Thread(runnable, "catalogue-" + opacName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        opacPlugins = ThreadLocal.withInitial(coc::getOpacPlugin);
+    }
+
+    /**
+     * Create the client for the catalogue configured in the import configuration
+     * 
+     * @param config the import configuration
+     * @param prefs the ruleset used for the catalogue requests
+     * @return the client or null, if no catalogue is configured or the catalogue does not exist
+     */
+    public static OpacLookup create(ImportConfiguration config, Prefs prefs) {
+        if (StringUtils.isBlank(config.getOpacName())) {
+            return null;
+        }
+        // load configured opac catalogue
+        ConfigOpacCatalogue coc = null;
+        for (ConfigOpacCatalogue configOpacCatalogue : ConfigOpac.getInstance().getAllCatalogues("")) {
+            if (configOpacCatalogue.getTitle().equals(config.getOpacName())) {
+                coc = configOpacCatalogue;
+            }
+        }
+        if (coc == null || coc.getOpacPlugin() == null) {
+            return null;
+        }
+        OpacCache cache = null;
+        if (StringUtils.isNotBlank(config.getOpacCacheFolder())) {
+            cache = new OpacCache(Paths.get(config.getOpacCacheFolder()), config.getOpacCacheSize(), config.getOpacCacheMemorySize(),
+                    TimeUnit.HOURS.toMillis(config.getOpacCacheTtl()));
+        }
+        SpoolFile spool = null;
+        if (config.isSpillToDisk()) {
+            try {
+                spool = SpoolFile.create(Paths.get(ConfigurationHelper.getInstance().getTemporaryFolder()));
+            } catch (IOException e) {
+                log.error("Cannot create a temporary file for catalogue records, they are kept in memory", e);
+            }
+        }
+        // with more than one thread, the catalogue requests run in parallel and the results are added after all rows are read
+        return new OpacLookup(coc, config.getOpacSearchField(), prefs, config.getOpacThreads(), config.getOpacTimeout(), cache,
+                config.getOpacBatchSize(), config.getOpacIdentifierMetadata(), OpacRateLimiter.get(coc.getTitle(), config.getOpacRateLimit()),
+                OpacCircuitBreaker.get(coc.getTitle(), config.getOpacFailureThreshold(), TimeUnit.SECONDS.toMillis(config.getOpacRetryPause())),
+                spool);
+    }
+
+    /**
+     * 
+     * @return true, if requests are executed in parallel
+     */
+    public boolean isParallel() {
+        return executor != null;
+    }
+
+    /**
+     * Get the record for an identifier on the calling thread
+     * 
+     * @param identifier the identifier to search for
+     * @param metrics the metrics of the current import
+     * @return the record or null, if the request failed or nothing was found
+     */
+    public OpacRecord lookup(String identifier, ImportMetrics metrics) {
+        lookups.incrementAndGet();
+        Future<OpacRecord> request = requests.get(identifier);
+        if (request != null) {
+            return getResult(request, identifier, metrics);
+        }
+        OpacRecord rec = null;
+        try {
+            rec = fetch(identifier, metrics);
+        } catch (Exception e) {
+            logFailure(identifier, e);
+        }
+        requests.put(identifier, spooled(CompletableFuture.completedFuture(rec)));
+        return rec;
+    }
+
+    /**
+     * Schedule the catalogue request for an identifier
+     * 
+     * @param identifier the identifier to search for
+     * @param metrics the metrics of the current import
+     * @return the pending request
+     */
+    public Future<OpacRecord> submit(String identifier, ImportMetrics metrics) {
+        lookups.incrementAndGet();
+        if (batchSize <= 1) {
+            if (spool != null) {
+                return requests.computeIfAbsent(identifier, id -> new SpooledRequest(executor.submit(() -> write(fetch(id, metrics)))));
+            }
+            return requests.computeIfAbsent(identifier, id -> executor.submit(() -> fetch(id, metrics)));
+        }
+        synchronized (batch) {
+            Future<OpacRecord> request = requests.get(identifier);
+            if (request != null) {
+                return request;
+            }
+            CompletableFuture<OpacRecord> future = new CompletableFuture<>();
+            request = spooled(future);
+            requests.put(identifier, request);
+            OpacRecord rec = cache == null ? null : cache.get(OpacCache.createKey(opacName, searchField, identifier));
+            if (rec != null) {
+                future.complete(rec);
+                return request;
+            }
+            batch.put(identifier, future);
+            if (batch.size() >= batchSize) {
+                sendBatch(metrics);
+            }
+            return request;
+        }
+    }
+
+    /**
+     * Send the identifiers collected so far, without waiting for a full batch
+     * 
+     * @param metrics the metrics of the current import
+     */
+    public void flush(ImportMetrics metrics) {
+        if (batchSize > 1) {
+            synchronized (batch) {
+                if (!batch.isEmpty()) {
+                    sendBatch(metrics);
+                }
+            }
+        }
+    }
+
+    private void sendBatch(ImportMetrics metrics) {
+        Map<String, CompletableFuture<OpacRecord>> identifiers = new LinkedHashMap<>(batch);
+        batch.clear();
+        executor.execute(() -> fetchBatch(identifiers, metrics));
+    }
+
+    /**
+     * Query the catalogue for a batch of identifiers with a single OR query of quoted identifiers and complete the request of each identifier.
+     * The catalogue plugin returns the first hit and the number of hits. The record belongs to the identifier in its identifier metadata. Only
+     * if this was the only hit, the remaining identifiers have no record. A query without hits is not trusted, as a catalogue that does not
+     * support OR queries answers it the same way. Otherwise, or if the query failed, the remaining identifiers are requested on their own in
+     * parallel, so a batch with more than one record costs one request more than single requests.
+     */
+    private void fetchBatch(Map<String, CompletableFuture<OpacRecord>> identifiers, ImportMetrics metrics) {
+        List<String> terms = new ArrayList<>();
+        for (String identifier : identifiers.keySet()) {
+            terms.add(quote(identifier));
+        }
+        String query = String.join(" OR ", terms);
+        String matched = null;
+        OpacRecord rec = null;
+        boolean complete = false;
+        try {
+            BatchResponse response = callCatalogue(() -> {
+                IOpacPlugin opacPlugin = opacPlugins.get();
+                Fileformat opacResponse = opacPlugin.search(searchField, query, coc, prefs);
+                return new BatchResponse(opacResponse, opacPlugin.getHitcount());
+            }, metrics);
+            if (response.getOpacResponse() != null) {
+                rec = OpacRecord.fromFileformat(response.getOpacResponse());
+                matched = findIdentifier(rec, identifiers.keySet());
+            }
+            if (matched != null) {
+                complete = response.getHits() == 1;
+            } else {
+                // no hit for a single identifier is a valid answer
+                complete = response.getOpacResponse() == null && response.getHits() <= 0 && identifiers.size() == 1;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            unavailable.addAll(identifiers.keySet());
+            identifiers.values().forEach(request -> request.complete(null));
+            return;
+        } catch (Exception e) { //NOSONAR the opac plugin API throws Exception
+            log.error("Catalogue query for {} identifiers failed, they are requested on their own: {}", identifiers.size(), e.getMessage());
+        }
+        for (Map.Entry<String, CompletableFuture<OpacRecord>> entry : identifiers.entrySet()) {
+            String identifier = entry.getKey();
+            if (identifier.equals(matched)) {
+                if (cache != null) {
+                    cache.put(OpacCache.createKey(opacName, searchField, identifier), rec);
+                }
+                entry.getValue().complete(rec);
+            } else if (complete) {
+                entry.getValue().complete(null);
+            } else {
+                CompletableFuture<OpacRecord> request = entry.getValue();
+                executor.execute(() -> request.complete(fetchSingle(identifier, metrics)));
+            }
+        }
+    }
+
+    /**
+     * Quote an identifier for a query, so that spaces and query syntax in the identifier are searched literally
+     */
+    static String quote(String identifier) {
+        return "\"" + identifier.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * 
+     * @return the identifier in the identifier metadata of the record, if it is one of the searched identifiers, otherwise null
+     */
+    private String findIdentifier(OpacRecord rec, Set<String> identifiers) {
+        for (OpacRecord.Field field : rec.getMetadata()) {
+            if (identifierMetadata.equals(field.getType()) && identifiers.contains(field.getValue())) {
+                return field.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Request a single identifier of a batch
+     * 
+     * @return the record or null, if the request failed or nothing was found
+     */
+    private OpacRecord fetchSingle(String identifier, ImportMetrics metrics) {
+        try {
+            return fetch(identifier, metrics);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            unavailable.add(identifier);
+        } catch (Exception e) { //NOSONAR the opac plugin API throws Exception
+            logFailure(identifier, e);
+        }
+        return null;
+    }
+
+    /**
+     * The first record of a batch query and the number of hits, both must be read from the plugin instance that ran the query
+     */
+    @Getter
+    @RequiredArgsConstructor
+    private static class BatchResponse {
+        private final Fileformat opacResponse;
+        private final int hits;
+    }
+
+    /**
+     * Wait for the result of a request. Failed requests and requests that did not finish in time are logged and return null, like in the
+     * sequential import.
+     * 
+     * @param request the pending request
+     * @param identifier the identifier of the request, used for logging
+     * @param metrics the metrics of the current import
+     * @return the catalogue record or null
+     */
+    public OpacRecord getResult(Future<OpacRecord> request, String identifier, ImportMetrics metrics) {
+        // the request can still wait for its batch to be filled
+        flush(metrics);
+        try {
+            return request.get(timeout, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.cancel(true);
+        } catch (TimeoutException e) {
+            log.error("Catalogue request for {} did not finish within {} seconds", identifier, timeout);
+            metrics.addOpacFailure();
+            request.cancel(true);
+        } catch (ExecutionException e) {
+            logFailure(identifier, e.getCause());
+            return null;
+        }
+        unavailable.add(identifier);
+        return null;
+    }
+
+    private void logFailure(String identifier, Throwable e) {
+        if (e instanceof CatalogueUnavailableException) {
+            log.debug("No catalogue request for {}: {}", identifier, e.getMessage());
+        } else if (e instanceof TimeoutException) {
+            log.error("Catalogue request for {} did not finish within {} seconds", identifier, timeout);
+        } else {
+            log.error("Catalogue request for {} failed: {}", identifier, e.getMessage());
+        }
+        unavailable.add(identifier);
+    }
+
+    /**
+     * Write the record of a request to the spool, once it is received
+     * 
+     * @param request the request
+     * @return the request, or a request that reads the record from the spool
+     */
+    private Future<OpacRecord> spooled(CompletableFuture<OpacRecord> request) {
+        return spool == null ? request : new SpooledRequest(request.thenApply(this::write));
+    }
+
+    /**
+     * 
+     * @param rec the record, can be null
+     * @return the position of the record in the spool, -1 for null
+     * @throws UncheckedIOException if the record cannot be written
+     */
+    private long write(OpacRecord rec) {
+        if (rec == null) {
+            return -1;
+        }
+        try {
+            return spool.writeRecord(rec);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A request whose record was written to the spool. Only the position of the record is kept, the record is read when the result is
+     * collected.
+     */
+    @RequiredArgsConstructor
+    private class SpooledRequest implements Future<OpacRecord> {
+
+        private final Future<Long> offset;
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return offset.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return offset.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return offset.isDone();
+        }
+
+        @Override
+        public OpacRecord get() throws InterruptedException, ExecutionException {
+            return read(offset.get());
+        }
+
+        @Override
+        public OpacRecord get(long time, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return read(offset.get(time, unit));
+        }
+
+        private OpacRecord read(long position) throws ExecutionException {
+            if (position < 0) {
+                return null;
+            }
+            try {
+                return spool.readRecord(position);
+            } catch (IOException e) {
+                throw new ExecutionException(e);
+            }
+        }
+    }
+
+    private OpacRecord fetch(String identifier, ImportMetrics metrics) throws Exception { //NOSONAR the opac plugin API throws Exception
+        String key = OpacCache.createKey(opacName, searchField, identifier);
+        if (cache != null) {
+            OpacRecord rec = cache.get(key);
+            if (rec != null) {
+                return rec;
+            }
+        }
+        Fileformat opacResponse = callCatalogue(() -> opacPlugins.get().search(searchField, identifier, coc, prefs), metrics);
+        if (opacResponse == null) {
+            return null;
+        }
+        OpacRecord rec = OpacRecord.fromFileformat(opacResponse);
+        if (cache != null) {
+            cache.put(key, rec);
+        }
+        return rec;
+    }
+
+    /**
+     * Call the catalogue, if the circuit breaker and the rate limit allow it. The call is cancelled if it does not return within the timeout.
+     * Calls that time out or are rejected because all catalogue threads are busy count as failures of the catalogue.
+     * 
+     * @param search the catalogue call, it is run on a separate thread
+     * @param metrics the metrics of the current import
+     * @return the result of the call
+     * @throws CatalogueUnavailableException if the circuit is open, the rate limit did not allow a request within the timeout or all catalogue
+     *             threads are busy
+     * @throws TimeoutException if the call did not return in time
+     * @throws Exception the exception of the call
+     */
+    private <T> T callCatalogue(Callable<T> search, ImportMetrics metrics) throws Exception { //NOSONAR the opac plugin API throws Exception
+        if (!circuitBreaker.allowRequest()) {
+            throw new CatalogueUnavailableException("Catalogue " + opacName + " is not available after repeated failures");
+        }
+        boolean permitted = false;
+        try {
+            permitted = rateLimiter.acquire(TimeUnit.SECONDS.toNanos(timeout));
+        } finally {
+            if (!permitted) {
+                circuitBreaker.onCancelled();
+            }
+        }
+        if (!permitted) {
+            throw new CatalogueUnavailableException("Rate limit of catalogue " + opacName + " exceeded for more than " + timeout + " seconds");
+        }
+        long start = System.nanoTime();
+        Future<T> call;
+        try {
+            call = callExecutor.submit(search);
+        } catch (RejectedExecutionException e) {
+            log.error("Catalogue request rejected, all threads for catalogue {} are blocked by requests that do not return", opacName);
+            metrics.addOpacRequest(start, true);
+            circuitBreaker.onFailure();
+            rateLimiter.onFailure();
+            throw new CatalogueUnavailableException("All threads for catalogue " + opacName + " are blocked by requests that do not return");
+        }
+        try {
+            T result = call.get(timeout, TimeUnit.SECONDS);
+            metrics.addOpacRequest(start, false);
+            circuitBreaker.onSuccess();
+            rateLimiter.onSuccess();
+            return result;
+        } catch (TimeoutException | ExecutionException e) {
+            call.cancel(true);
+            // a call still waiting in the queue is removed, so that it does not take the place of the next call
+            callExecutor.purge();
+            metrics.addOpacRequest(start, true);
+            circuitBreaker.onFailure();
+            rateLimiter.onFailure();
+            if (e instanceof ExecutionException && e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            call.cancel(true);
+            circuitBreaker.onCancelled();
+            throw e;
+        }
+    }
+
+    /**
+     * 
+     * @param identifier an identifier of the import
+     * @return true if the catalogue did not deliver a result for the identifier, because the request failed, did not finish in time or was
+     *         not sent while the catalogue was not available. The rows with this identifier lack catalogue data and should be imported again.
+     */
+    public boolean isUnavailable(String identifier) {
+        return unavailable.contains(identifier);
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        callExecutor.shutdownNow();
+        if (!unavailable.isEmpty()) {
+            log.warn("No catalogue records for {} identifiers because catalogue {} was not available", unavailable.size(), opacName);
+        }
+        log.info("Requested {} catalogue records for {} different identifiers", lookups.get(), requests.size());
+        if (cache != null) {
+            cache.logStatistics();
+            cache.evict();
+        }
+        if (spool != null) {
+            log.debug("Wrote {} bytes of catalogue records to a temporary file", spool.getSize());
+            spool.close();
+        }
+    }
+
+}
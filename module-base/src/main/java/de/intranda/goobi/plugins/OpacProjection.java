@@ -0,0 +1,108 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.Getter;
+import ugh.dl.MetadataType;
+
+/**
+ * The catalogue fields copied into the structure elements, resolved once per import against the ruleset. Each configured catalogue field is
+ * copied into its metadata, person or corporate type, all other fields of a record are ignored. Without configured fields, every field is
+ * copied into the type of the same name. The metadata columns of the spreadsheet are resolved against the same types, so a conflict between a
+ * catalogue value and a cell is decided without searching the metadata of the element.
+ */
+public class OpacProjection {
+
+    @Getter
+    private final RulesetTypes types;
+    // target type by catalogue field, null to copy every field into the type of the same name
+    private final Map<String, MetadataType> targets;
+    // true if a non-empty cell replaces the catalogue values of its type, false if the catalogue values are kept
+    @Getter
+    private final boolean excelWins;
+    // metadata column by type name. With several columns of the same type, the last one sets the value
+    private final Map<String, Integer> columns = new HashMap<>();
+
+    @Getter
+    private final List<String> errors = new ArrayList<>();
+
+    /**
+     * Resolve the configured catalogue fields and the metadata columns
+     *
+     * @param config the import configuration
+     * @param types the types of the ruleset
+     * @param plan the metadata columns of the spreadsheet, can be null
+     */
+    public OpacProjection(ImportConfiguration config, RulesetTypes types, ColumnPlan plan) {
+        this.types = types;
+        excelWins = config.isExcelWins();
+        if (config.getOpacFields().isEmpty()) {
+            targets = null;
+        } else {
+            targets = new HashMap<>();
+            for (Map.Entry<String, String> field : config.getOpacFields().entrySet()) {
+                MetadataType type = types.getMetadataType(field.getValue());
+                if (type == null) {
+                    errors.add("Metadata type '" + field.getValue() + "' for catalogue field '" + field.getKey() + "' is not defined in the ruleset");
+                } else {
+                    targets.put(field.getKey(), type);
+                }
+            }
+        }
+        if (plan != null) {
+            for (int i = 0; i < plan.getNumberOfMetadataColumns(); i++) {
+                columns.put(plan.getMetadataType(i).getName(), i);
+            }
+        }
+    }
+
+    private OpacProjection(RulesetTypes types) {
+        this.types = types;
+        targets = null;
+        excelWins = true;
+    }
+
+    /**
+     * Copy every catalogue field, without metadata columns
+     *
+     * @param types the types of the ruleset
+     * @return the projection
+     */
+    public static OpacProjection copyAll(RulesetTypes types) {
+        return new OpacProjection(types);
+    }
+
+    /**
+     *
+     * @param field the type of a catalogue field
+     * @return the type the field is copied into, or null if the field is not copied
+     */
+    public MetadataType getTarget(String field) {
+        return targets == null ? types.getMetadataType(field) : targets.get(field);
+    }
+
+    /**
+     *
+     * @param type a metadata type
+     * @return the index of the metadata column that sets the type, or -1 if no column sets it
+     */
+    public int getColumn(MetadataType type) {
+        return columns.getOrDefault(type.getName(), -1);
+    }
+
+    /**
+     * Decide if a catalogue value is copied into a new element
+     *
+     * @param column the metadata column of the value's type, see {@link #getColumn(MetadataType)}
+     * @param columnValues the values of the metadata columns of the row
+     * @return false if the cell of the column replaces the catalogue value
+     */
+    public boolean isCopied(int column, List<String> columnValues) {
+        return column < 0 || !excelWins || StringUtils.isEmpty(columnValues.get(column));
+    }
+}
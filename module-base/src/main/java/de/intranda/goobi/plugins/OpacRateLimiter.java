@@ -0,0 +1,113 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting the requests to a catalogue. One bucket is shared by all imports of the JVM that use the same catalogue. The rate
+ * adapts to the catalogue: each failed or timed out request halves it, each successful request raises it again by a tenth of the configured
+ * rate, so a throttling catalogue is queried less often until it recovers.
+ */
+public final class OpacRateLimiter {
+
+    private static final Map<String, OpacRateLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    // configured requests per second, 0 or less for no limit
+    private final double maxRate;
+    private final double minRate;
+
+    private double rate;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     *
+     * @param maxRate the maximum number of requests per second, 0 or less for no limit
+     */
+    OpacRateLimiter(double maxRate) {
+        this.maxRate = maxRate;
+        minRate = maxRate / 16;
+        rate = maxRate;
+        tokens = getCapacity();
+        lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Get the limiter of a catalogue. A new limiter is created, if the configured rate was changed.
+     *
+     * @param opacName the name of the catalogue
+     * @param maxRate the maximum number of requests per second, 0 or less for no limit
+     * @return the limiter
+     */
+    public static OpacRateLimiter get(String opacName, double maxRate) {
+        return LIMITERS.compute(opacName, (name, limiter) -> limiter != null && limiter.maxRate == maxRate ? limiter : new OpacRateLimiter(maxRate));
+    }
+
+    /**
+     * Wait until a request may be sent
+     *
+     * @param timeout the maximum time to wait in nanoseconds
+     * @return false if no request can be sent within the time
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public boolean acquire(long timeout) throws InterruptedException {
+        if (maxRate <= 0) {
+            return true;
+        }
+        long deadline = System.nanoTime() + timeout;
+        while (true) {
+            long wait;
+            synchronized (this) {
+                refill();
+                if (tokens >= 1) {
+                    tokens--;
+                    return true;
+                }
+                wait = (long) ((1 - tokens) / rate * NANOS_PER_SECOND);
+            }
+            if (System.nanoTime() + wait - deadline > 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Raise the rate after a successful request, up to the configured rate
+     */
+    public synchronized void onSuccess() {
+        if (maxRate > 0 && rate < maxRate) {
+            refill();
+            rate = Math.min(maxRate, rate + maxRate / 10);
+        }
+    }
+
+    /**
+     * Halve the rate after a failed request
+     */
+    public synchronized void onFailure() {
+        if (maxRate > 0) {
+            refill();
+            rate = Math.max(minRate, rate / 2);
+            tokens = Math.min(tokens, getCapacity());
+        }
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    // a burst of up to one second of requests is allowed
+    private double getCapacity() {
+        return Math.max(1, rate);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(getCapacity(), tokens + (now - lastRefill) * rate / NANOS_PER_SECOND);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,239 @@
+package de.intranda.goobi.plugins;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.Corporate;
+import ugh.dl.DocStruct;
+import ugh.dl.Fileformat;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataType;
+import ugh.dl.Person;
+import ugh.exceptions.MetadataTypeNotAllowedException;
+import ugh.exceptions.PreferencesException;
+
+/**
+ * The metadata, persons and corporates of a catalogue record. The record only contains the values that are copied into the structure element,
+ * so it can be cached and the catalogue response can be discarded.
+ */
+@Log4j2
+public class OpacRecord implements Serializable {
+
+    private static final long serialVersionUID = 1983735286128427937L;
+
+    // limits for the values read from a file, a damaged or manipulated file cannot request more memory
+    private static final int MAX_FIELDS = 100000;
+    private static final int MAX_VALUE_LENGTH = 1024 * 1024;
+
+    @Getter
+    private final List<Field> metadata = new ArrayList<>();
+    @Getter
+    private final List<Field> persons = new ArrayList<>();
+    @Getter
+    private final List<Field> corporates = new ArrayList<>();
+
+    /**
+     * Create a record from the logical element of a catalogue response. If the response contains an anchor, the first child element is used.
+     * 
+     * @param opacResponse the catalogue response
+     * @return the record
+     * @throws PreferencesException
+     */
+    public static OpacRecord fromFileformat(Fileformat opacResponse) throws PreferencesException {
+        OpacRecord rec = new OpacRecord();
+        DocStruct opacLogical = opacResponse.getDigitalDocument().getLogicalDocStruct();
+        if (opacLogical.getType().isAnchor()) {
+            opacLogical = opacLogical.getAllChildren().get(0);
+        }
+        if (opacLogical.getAllMetadata() != null) {
+            for (Metadata md : opacLogical.getAllMetadata()) {
+                rec.metadata.add(new Field(md.getType().getName(), md.getValue(), null, md.getAuthorityID(), md.getAuthorityURI(),
+                        md.getAuthorityValue()));
+            }
+        }
+        if (opacLogical.getAllPersons() != null) {
+            for (Person p : opacLogical.getAllPersons()) {
+                rec.persons.add(new Field(p.getType().getName(), p.getLastname(), p.getFirstname(), p.getAuthorityID(), p.getAuthorityURI(),
+                        p.getAuthorityValue()));
+            }
+        }
+        if (opacLogical.getAllCorporates() != null) {
+            for (Corporate c : opacLogical.getAllCorporates()) {
+                rec.corporates.add(new Field(c.getType().getName(), c.getMainName(), null, c.getAuthorityID(), c.getAuthorityURI(),
+                        c.getAuthorityValue()));
+            }
+        }
+        return rec;
+    }
+
+    /**
+     * Add copies of all fields to the structure element. Fields that are not allowed in the element are skipped.
+     * 
+     * @param currentDocstruct the structure element
+     * @param types the types of the ruleset, used to resolve the fields and to find the types allowed in the element
+     */
+    public void applyTo(DocStruct currentDocstruct, RulesetTypes types) {
+        applyTo(currentDocstruct, OpacProjection.copyAll(types), Collections.emptyList());
+    }
+
+    /**
+     * Add copies of the projected fields to a new structure element. Fields that are not allowed in the element are skipped, as well as
+     * metadata replaced by a cell of the row.
+     * 
+     * @param currentDocstruct the new structure element
+     * @param projection the fields to copy and the types they are copied into
+     * @param columnValues the values of the metadata columns of the row
+     * @return for each metadata column, true if the element got catalogue values of its type and the cell must not be added
+     */
+    public boolean[] applyTo(DocStruct currentDocstruct, OpacProjection projection, List<String> columnValues) {
+        boolean[] opacColumns = new boolean[columnValues.size()];
+        RulesetTypes types = projection.getTypes();
+        Set<String> allowedMetadata = types.getAllowedMetadata(currentDocstruct.getType());
+        for (Field md : metadata) {
+            MetadataType type = projection.getTarget(md.getType());
+            if (type == null || !allowedMetadata.contains(type.getName())) {
+                continue;
+            }
+            int column = projection.getColumn(type);
+            if (!projection.isCopied(column, columnValues)) {
+                continue;
+            }
+            if (column >= 0) {
+                opacColumns[column] = true;
+            }
+            try {
+                Metadata copy = new Metadata(type);
+                copy.setValue(md.getValue());
+                copy.setAutorityFile(md.getAuthorityId(), md.getAuthorityUri(), md.getAuthorityValue());
+                currentDocstruct.addMetadata(copy);
+            } catch (MetadataTypeNotAllowedException e) {
+                // the type is allowed only once
+                log.debug(e);
+            }
+        }
+        Set<String> allowedPersons = types.getAllowedPersons(currentDocstruct.getType());
+        for (Field p : persons) {
+            MetadataType type = projection.getTarget(p.getType());
+            if (type == null || !allowedPersons.contains(type.getName())) {
+                continue;
+            }
+            try {
+                Person copy = new Person(type);
+                copy.setFirstname(p.getFirstname());
+                copy.setLastname(p.getValue());
+                copy.setAutorityFile(p.getAuthorityId(), p.getAuthorityUri(), p.getAuthorityValue());
+                currentDocstruct.addPerson(copy);
+            } catch (MetadataTypeNotAllowedException e) {
+                log.debug(e);
+            }
+        }
+        Set<String> allowedCorporates = types.getAllowedCorporates(currentDocstruct.getType());
+        for (Field c : corporates) {
+            MetadataType type = projection.getTarget(c.getType());
+            if (type == null || !allowedCorporates.contains(type.getName())) {
+                continue;
+            }
+            try {
+                Corporate copy = new Corporate(type);
+                copy.setMainName(c.getValue());
+                copy.setAutorityFile(c.getAuthorityId(), c.getAuthorityUri(), c.getAuthorityValue());
+                currentDocstruct.addCorporate(copy);
+            } catch (MetadataTypeNotAllowedException e) {
+                log.debug(e);
+            }
+        }
+        return opacColumns;
+    }
+
+    /**
+     * Write the record in a binary format without java serialization
+     * 
+     * @param out the output
+     * @throws IOException if the record cannot be written
+     */
+    public void write(DataOutput out) throws IOException {
+        for (List<Field> fields : List.of(metadata, persons, corporates)) {
+            out.writeInt(fields.size());
+            for (Field field : fields) {
+                writeString(out, field.getType());
+                writeString(out, field.getValue());
+                writeString(out, field.getFirstname());
+                writeString(out, field.getAuthorityId());
+                writeString(out, field.getAuthorityUri());
+                writeString(out, field.getAuthorityValue());
+            }
+        }
+    }
+
+    /**
+     * Read a record written by {@link #write(DataOutput)}
+     * 
+     * @param in the input
+     * @return the record
+     * @throws IOException if the record cannot be read or the data is not valid
+     */
+    public static OpacRecord read(DataInput in) throws IOException {
+        OpacRecord rec = new OpacRecord();
+        for (List<Field> fields : List.of(rec.getMetadata(), rec.getPersons(), rec.getCorporates())) {
+            int count = in.readInt();
+            if (count < 0 || count > MAX_FIELDS) {
+                throw new IOException("Invalid number of fields: " + count);
+            }
+            for (int i = 0; i < count; i++) {
+                fields.add(new Field(readString(in), readString(in), readString(in), readString(in), readString(in), readString(in)));
+            }
+        }
+        return rec;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > MAX_VALUE_LENGTH) {
+            throw new IOException("Invalid length of a value: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A single metadata, person or corporate. The value contains the metadata value, the last name of a person or the main name of a corporate.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class Field implements Serializable {
+
+        private static final long serialVersionUID = -3800446328236262146L;
+
+        private final String type;
+        private final String value;
+        private final String firstname;
+        private final String authorityId;
+        private final String authorityUri;
+        private final String authorityValue;
+    }
+
+}
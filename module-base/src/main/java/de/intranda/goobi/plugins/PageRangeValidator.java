@@ -0,0 +1,124 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * Checks the image ranges of the structure elements before the structure is created. Ranges outside of the existing pages are always errors.
+ * Ranges that are not contained in the range of the parent element and ranges that overlap with a sibling are errors in strict mode and
+ * warnings otherwise. Siblings may share their first and last page.
+ */
+public class PageRangeValidator {
+
+    private final int pageCount;
+    private final boolean strict;
+
+    @Getter
+    private final List<String> errors = new ArrayList<>();
+    @Getter
+    private final List<String> warnings = new ArrayList<>();
+
+    /**
+     * 
+     * @param pageCount number of pages of the process
+     * @param strict true to reject overlapping siblings and ranges outside of the parent range
+     */
+    public PageRangeValidator(int pageCount, boolean strict) {
+        this.pageCount = pageCount;
+        this.strict = strict;
+    }
+
+    /**
+     * Validate the ranges of all rows. Rows on level 0 are the publication itself and are not checked, the checks start with the elements on
+     * the first level.
+     * 
+     * @param rows the rows in spreadsheet order, including the rows on level 0
+     * @return true if no errors were found
+     */
+    public boolean validate(StructureRows rows) {
+        int size = rows.size();
+        // same rules as for the creation of the elements, -1 is the root element
+        int[] parents = rows.getParents();
+        // the elements on the first level are compared with the other elements after the same row on level 0
+        int[] siblingGroups = new int[size];
+        int rootRow = -1;
+        for (int i = 0; i < size; i++) {
+            int hierarchy = rows.getHierarchy(i);
+            if (hierarchy == 0) {
+                rootRow = i;
+                continue;
+            }
+            if (hierarchy < 0) {
+                errors.add("Row " + rows.getRowNumber(i) + ": hierarchy level " + hierarchy + " is not valid");
+                continue;
+            }
+            int startPage = rows.getStartPage(i);
+            int endPage = rows.getEndPage(i);
+            if (startPage < 1 || endPage > pageCount || startPage > endPage) {
+                errors.add("Row " + rows.getRowNumber(i) + ": image range " + startPage + "-" + endPage + " is not a valid range of the " + pageCount
+                        + " pages");
+            }
+
+            int parent = parents[i];
+            siblingGroups[i] = parent >= 0 ? parent : -2 - rootRow;
+            if (parent >= 0 && (startPage < rows.getStartPage(parent) || endPage > rows.getEndPage(parent))) {
+                report("Row " + rows.getRowNumber(i) + ": image range " + startPage + "-" + endPage + " is not contained in the range of row "
+                        + rows.getRowNumber(parent));
+            }
+        }
+        checkSiblings(rows, siblingGroups);
+        return errors.isEmpty();
+    }
+
+    /**
+     * Sort the children of each parent by their first page and compare each child with the end of the preceding siblings
+     * 
+     * @param siblingGroups the parent row of each row, or a negative number for the elements on the first level after the same row on
+     *            level 0
+     */
+    private void checkSiblings(StructureRows rows, int[] siblingGroups) {
+        Integer[] order = new Integer[rows.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int result = Integer.compare(siblingGroups[a], siblingGroups[b]);
+            if (result == 0) {
+                result = Integer.compare(rows.getStartPage(a), rows.getStartPage(b));
+            }
+            return result;
+        });
+
+        int currentGroup = Integer.MIN_VALUE;
+        int maxEnd = 0;
+        int maxEndRow = -1;
+        for (int i : order) {
+            if (rows.getHierarchy(i) <= 0) {
+                continue;
+            }
+            if (siblingGroups[i] != currentGroup) {
+                currentGroup = siblingGroups[i];
+                maxEnd = 0;
+            }
+            if (rows.getStartPage(i) < maxEnd) {
+                report("Row " + rows.getRowNumber(i) + ": image range " + rows.getStartPage(i) + "-" + rows.getEndPage(i)
+                        + " overlaps with the range of row " + rows.getRowNumber(maxEndRow));
+            }
+            if (rows.getEndPage(i) > maxEnd) {
+                maxEnd = rows.getEndPage(i);
+                maxEndRow = i;
+            }
+        }
+    }
+
+    private void report(String message) {
+        if (strict) {
+            errors.add(message);
+        } else {
+            warnings.add(message);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package de.intranda.goobi.plugins;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.ContentFile;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.DocStructType;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+import ugh.exceptions.UGHException;
+
+/**
+ * Creates the pages of a physical structure from a list of image names. Each page gets its physical page number, the logical page number
+ * 'uncounted', its image file and is assigned to the logical root element. A pagination that was limited to fewer images before is extended
+ * with the pages of the following images.
+ */
+@Log4j2
+public final class PaginationBuilder {
+
+    private PaginationBuilder() {
+    }
+
+    /**
+     * Create the pages of the images that have no page yet. Existing pages are kept, but only if they belong to the first images of the list,
+     * otherwise no page is added.
+     * 
+     * @param digDoc the document
+     * @param prefs the ruleset
+     * @param imageFolder the folder containing the images
+     * @param imageNames the sorted image names
+     * @param pageLimit maximum number of pages including the existing ones, 0 to create a page for each image
+     * @return the pages of the physical structure
+     * @throws UGHException
+     */
+    public static List<DocStruct> createPages(DigitalDocument digDoc, Prefs prefs, Path imageFolder, List<String> imageNames, int pageLimit)
+            throws UGHException {
+        long start = System.currentTimeMillis();
+        DocStruct physical = digDoc.getPhysicalDocStruct();
+        DocStruct logical = digDoc.getLogicalDocStruct();
+        DocStructType pageType = prefs.getDocStrctTypeByName("page");
+        MetadataType physicalPageNumberType = prefs.getMetadataTypeByName("physPageNumber");
+        MetadataType logicalPageNumberType = prefs.getMetadataTypeByName("logicalPageNumber");
+
+        MetadataType imagePathType = prefs.getMetadataTypeByName("pathimagefiles");
+        if (imagePathType != null && physical.getAllMetadataByType(imagePathType).isEmpty()) {
+            Metadata imagePath = new Metadata(imagePathType);
+            imagePath.setValue(imageFolder.toUri().toString());
+            physical.addMetadata(imagePath);
+        }
+
+        List<DocStruct> existingPages = physical.getAllChildren();
+        int first = existingPages == null ? 0 : existingPages.size();
+        int count = pageLimit > 0 ? Math.min(pageLimit, imageNames.size()) : imageNames.size();
+        if (first >= count) {
+            return existingPages;
+        }
+        if (first > 0 && !imageNames.get(first - 1).equals(existingPages.get(first - 1).getImageName())) {
+            log.warn("The existing pages do not belong to the first images in {}, no pages are added", imageFolder);
+            return existingPages;
+        }
+        for (int i = first; i < count; i++) {
+            String imageName = imageNames.get(i);
+            DocStruct page = digDoc.createDocStruct(pageType);
+            physical.addChild(page);
+
+            Metadata physicalPageNumber = new Metadata(physicalPageNumberType);
+            physicalPageNumber.setValue(String.valueOf(i + 1));
+            page.addMetadata(physicalPageNumber);
+            Metadata logicalPageNumber = new Metadata(logicalPageNumberType);
+            logicalPageNumber.setValue("uncounted");
+            page.addMetadata(logicalPageNumber);
+
+            ContentFile contentFile = new ContentFile();
+            contentFile.setLocation(imageFolder.resolve(imageName).toUri().toString());
+            contentFile.setMimetype(ImageManifest.getMimeType(imageName));
+            page.addContentFile(contentFile);
+            page.setImageName(imageName);
+
+            logical.addReferenceTo(page, "logical_physical");
+        }
+        log.info("Created {} of {} pages in {} ms", count - first, imageNames.size(), System.currentTimeMillis() - start);
+        return physical.getAllChildren();
+    }
+}
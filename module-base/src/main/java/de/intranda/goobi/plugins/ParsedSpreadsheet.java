@@ -0,0 +1,65 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * The parsed sheets of a spreadsheet file, together with the size and modification time of the file when it was parsed. The rows are not
+ * changed afterwards, so that the same instance can be shown in a preview and used for the import.
+ */
+@Getter
+public class ParsedSpreadsheet {
+
+    private final Path file;
+    private final long size;
+    private final long lastModified;
+    // parsed sheets in workbook order
+    private final List<SheetParser> sheets;
+
+    /**
+     *
+     * @param file the parsed file
+     * @param size the size of the file before it was parsed
+     * @param lastModified the modification time of the file in milliseconds, before it was parsed
+     * @param sheets the parsed sheets
+     */
+    public ParsedSpreadsheet(Path file, long size, long lastModified, List<SheetParser> sheets) {
+        this.file = file;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.sheets = sheets;
+        for (SheetParser sheet : sheets) {
+            sheet.getRows().compact();
+        }
+    }
+
+    /**
+     * Check if the rows can be used for an import of a file
+     *
+     * @param otherFile the file to import
+     * @return true if it is the parsed file and it was not changed since
+     */
+    public boolean isCurrent(Path otherFile) {
+        try {
+            return file.equals(otherFile) && Files.size(otherFile) == size && Files.getLastModifiedTime(otherFile).toMillis() == lastModified;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     *
+     * @return the total number of rows of all sheets
+     */
+    public int getRowCount() {
+        int count = 0;
+        for (SheetParser sheet : sheets) {
+            count += sheet.getRows().size();
+        }
+        return count;
+    }
+}
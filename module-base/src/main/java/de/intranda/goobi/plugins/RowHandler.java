@@ -0,0 +1,34 @@
+package de.intranda.goobi.plugins;
+
+import java.util.List;
+
+import ugh.exceptions.UGHException;
+
+/**
+ * Receives the rows of a spreadsheet one after another, in the order they appear in the file.
+ */
+@FunctionalInterface
+public interface RowHandler {
+
+    /**
+     * Handle a single row.
+     * 
+     * @param rowNumber the 1-based row number within the sheet
+     * @param values the cell values of the row, indexed by column. Missing cells are represented as empty strings.
+     * @return true, if the reader should continue with the next row, false to stop reading
+     * @throws UGHException if the row could not be added to the metadata
+     */
+    boolean handleRow(int rowNumber, List<String> values) throws UGHException;
+
+    /**
+     * Check if a row is the header row, before its cells are decoded. Excel readers keep the decimal places of numbers and the text of formulas
+     * in the header row.
+     * 
+     * @param rowNumber the 1-based row number within the sheet
+     * @return true for the header row
+     */
+    default boolean isHeaderRow(int rowNumber) {
+        return false;
+    }
+
+}
@@ -0,0 +1,116 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.RequiredArgsConstructor;
+import ugh.dl.DocStructType;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+
+/**
+ * The metadata types of a ruleset by name, and for each structure type the metadata, person and corporate types it allows. The types are
+ * resolved once for each version of a ruleset file and shared by all processes using it, so that catalogue data can be filtered before it is
+ * added to an element instead of catching an exception for each field that is not allowed. Types are compared by name, as each process reads
+ * its own instance of the ruleset.
+ */
+public final class RulesetTypes {
+
+    private static final Map<Path, CachedTypes> CACHE = new ConcurrentHashMap<>();
+
+    private final Map<String, MetadataType> metadataTypes = new HashMap<>();
+    // names of the allowed metadata, person and corporate types by name of the structure type
+    private final Map<String, Set<String>> allowedMetadata = new HashMap<>();
+    private final Map<String, Set<String>> allowedPersons = new HashMap<>();
+    private final Map<String, Set<String>> allowedCorporates = new HashMap<>();
+
+    /**
+     * Get the types of a ruleset file. They are resolved again if the file was changed since.
+     *
+     * @param rulesetFile the ruleset file
+     * @param prefs the ruleset read from the file, used if the types are not cached
+     * @return the types
+     */
+    public static RulesetTypes get(Path rulesetFile, Prefs prefs) {
+        long lastModified;
+        try {
+            lastModified = Files.getLastModifiedTime(rulesetFile).toMillis();
+        } catch (IOException e) {
+            // the prefs are read from somewhere else, don't cache them
+            return create(prefs);
+        }
+        CachedTypes cached = CACHE.get(rulesetFile);
+        if (cached == null || cached.lastModified != lastModified) {
+            cached = new CachedTypes(lastModified, create(prefs));
+            CACHE.put(rulesetFile, cached);
+        }
+        return cached.types;
+    }
+
+    /**
+     * Resolve the types of a ruleset without caching them
+     *
+     * @param prefs the ruleset
+     * @return the types
+     */
+    public static RulesetTypes create(Prefs prefs) {
+        RulesetTypes types = new RulesetTypes();
+        for (MetadataType type : prefs.getAllMetadataTypes()) {
+            types.metadataTypes.put(type.getName(), type);
+        }
+        for (DocStructType docStructType : prefs.getAllDocStructTypes()) {
+            Set<String> metadata = new HashSet<>();
+            Set<String> persons = new HashSet<>();
+            Set<String> corporates = new HashSet<>();
+            if (docStructType.getAllMetadataTypes() != null) {
+                for (MetadataType type : docStructType.getAllMetadataTypes()) {
+                    if (type.getIsPerson()) {
+                        persons.add(type.getName());
+                    } else if (type.isCorporate()) {
+                        corporates.add(type.getName());
+                    } else {
+                        metadata.add(type.getName());
+                    }
+                }
+            }
+            types.allowedMetadata.put(docStructType.getName(), metadata);
+            types.allowedPersons.put(docStructType.getName(), persons);
+            types.allowedCorporates.put(docStructType.getName(), corporates);
+        }
+        return types;
+    }
+
+    /**
+     *
+     * @param name the name of the type
+     * @return the metadata, person or corporate type or null, if the ruleset does not define it
+     */
+    public MetadataType getMetadataType(String name) {
+        return metadataTypes.get(name);
+    }
+
+    public Set<String> getAllowedMetadata(DocStructType docStructType) {
+        return allowedMetadata.getOrDefault(docStructType.getName(), Collections.emptySet());
+    }
+
+    public Set<String> getAllowedPersons(DocStructType docStructType) {
+        return allowedPersons.getOrDefault(docStructType.getName(), Collections.emptySet());
+    }
+
+    public Set<String> getAllowedCorporates(DocStructType docStructType) {
+        return allowedCorporates.getOrDefault(docStructType.getName(), Collections.emptySet());
+    }
+
+    @RequiredArgsConstructor
+    private static class CachedTypes {
+        private final long lastModified;
+        private final RulesetTypes types;
+    }
+}
@@ -0,0 +1,137 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Getter;
+import ugh.dl.DocStructType;
+import ugh.dl.Prefs;
+import ugh.exceptions.UGHException;
+
+/**
+ * Parses the rows of a single sheet into {@link StructureRows} without changing any structure element. Rows before the header row and between
+ * header and first data row are skipped. Invalid values are collected as errors, so that all problems of a sheet can be reported at once. A
+ * parser only depends on the configuration and the ruleset, the sheets of a workbook can be parsed in parallel.
+ */
+public class SheetParser implements RowHandler {
+
+    private final ImportConfiguration config;
+    private final Prefs prefs;
+
+    // name of the sheet, null if the file has a single sheet
+    @Getter
+    private final String sheetName;
+    @Getter
+    private final StructureRows rows;
+    @Getter
+    private final List<String> errors = new ArrayList<>();
+    // null until the header row was read
+    @Getter
+    private ColumnPlan plan;
+
+    // reused for each row, the values are copied into the rows
+    private final List<String> columnValues = new ArrayList<>();
+
+    /**
+     *
+     * @param config the import configuration
+     * @param prefs the ruleset
+     * @param sheetName the name of the sheet, null if the file has a single sheet
+     */
+    public SheetParser(ImportConfiguration config, Prefs prefs, String sheetName) {
+        this(config, prefs, sheetName, null);
+    }
+
+    /**
+     *
+     * @param config the import configuration
+     * @param prefs the ruleset
+     * @param sheetName the name of the sheet, null if the file has a single sheet
+     * @param spool the file for the values of the metadata columns, null to keep them in memory
+     */
+    public SheetParser(ImportConfiguration config, Prefs prefs, String sheetName, SpoolFile spool) {
+        this.config = config;
+        this.prefs = prefs;
+        this.sheetName = sheetName;
+        rows = new StructureRows(config.getColumns().size(), config.isParentIdMode(), spool);
+    }
+
+    @Override
+    public boolean isHeaderRow(int rowNumber) {
+        return rowNumber == config.getHeaderRowNumber();
+    }
+
+    @Override
+    public boolean handleRow(int rowNumber, List<String> row) throws UGHException {
+        // the row number is the number of the row in the sheet, rows without any cells are not passed to the parser
+        if (rowNumber < config.getHeaderRowNumber()) {
+            //  find the header row
+            return true;
+        }
+        if (rowNumber == config.getHeaderRowNumber()) {
+            //  read the header row, resolve all configured columns and types before the first data row
+            plan = new ColumnPlan(row, config, prefs);
+            return true;
+        }
+        if (plan == null) {
+            // the header row has no cells
+            errors.add("Header row " + config.getHeaderRowNumber() + " is empty");
+            return false;
+        }
+        if (rowNumber < config.getDataRowNumber()) {
+            // find the first data row
+            return true;
+        }
+
+        if (!row.isEmpty()) {
+            parseRow(rowNumber, row);
+        }
+        return rowNumber < config.getLastDataRow();
+    }
+
+    private void parseRow(int rowNumber, List<String> row) {
+        String docType = ColumnPlan.getValue(row, plan.getDoctypeColumn());
+        DocStructType docStructType = plan.getDocStructType(docType);
+        if (docStructType == null) {
+            String undefinedType = plan.getUndefinedDocStructType(docType);
+            if (undefinedType == null) {
+                errors.add("Structure type '" + docType + "' in row " + rowNumber + " is not configured");
+            } else {
+                errors.add("Structure type '" + undefinedType + "' of '" + docType + "' in row " + rowNumber + " is not defined in the ruleset");
+            }
+        }
+        // in parent id mode all rows are structure elements, their position is given by the parent id
+        int hierarchy = config.isParentIdMode() ? 1 : parseNumber(rowNumber, row, plan.getHierarchyColumn(), config.getHierarchyColumnName());
+        int startPageNo = parseNumber(rowNumber, row, plan.getImageStartColumn(), config.getImageStartColumnName());
+        int endPageNo = parseNumber(rowNumber, row, plan.getImageEndColumn(), config.getImageEndColumnName());
+
+        String identifier = ColumnPlan.getValue(row, plan.getIdentifierColumn());
+
+        columnValues.clear();
+        for (int i = 0; i < plan.getNumberOfMetadataColumns(); i++) {
+            columnValues.add(ColumnPlan.getValue(row, plan.getMetadataColumn(i)));
+        }
+        rows.add(rowNumber, docStructType, hierarchy, identifier, ColumnPlan.getValue(row, plan.getIdColumn()).trim(),
+                ColumnPlan.getValue(row, plan.getParentIdColumn()).trim(), startPageNo, endPageNo, columnValues);
+    }
+
+    private int parseNumber(int rowNumber, List<String> row, int columnIndex, String columnName) {
+        String value = ColumnPlan.getValue(row, columnIndex);
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            errors.add("Value '" + value + "' in row " + rowNumber + " and column '" + columnName + "' is not a number");
+            return 0;
+        }
+    }
+
+    /**
+     * Add the name of the sheet to a message, if the file has more than one sheet
+     *
+     * @param message the message
+     * @return the message, prefixed with the name of the sheet
+     */
+    public String withSheetName(String message) {
+        return sheetName == null ? message : "Sheet '" + sheetName + "': " + message;
+    }
+}
@@ -0,0 +1,172 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Temporary file that keeps intermediate data of an import out of the heap. Entries are appended one after another and read back by the
+ * offset returned when they were written, so data written once can be consumed in any order. The file is deleted when the spool is closed.
+ * Reading and writing is synchronized, the catalogue requests can write from several threads.
+ */
+@Log4j2
+public class SpoolFile implements Closeable {
+
+    private final Path file;
+    private final DataOutputStream out;
+    private final RandomAccessFile in;
+    // buffer for a single entry, so that its length can be written first
+    private final ByteArrayOutputStream entry = new ByteArrayOutputStream();
+    private final DataOutputStream entryOut = new DataOutputStream(entry);
+
+    private long size;
+    // the output buffer contains data that cannot be read yet
+    private boolean unflushed;
+
+    /**
+     * Create a new spool file
+     *
+     * @param folder the folder for the temporary file
+     * @return the spool
+     * @throws IOException if the file cannot be created
+     */
+    public static SpoolFile create(Path folder) throws IOException {
+        Files.createDirectories(folder);
+        return new SpoolFile(Files.createTempFile(folder, "structure_import", ".spool"));
+    }
+
+    private SpoolFile(Path file) throws IOException {
+        this.file = file;
+        OutputStream fileOut = Files.newOutputStream(file);
+        out = new DataOutputStream(new BufferedOutputStream(fileOut, 65536));
+        in = new RandomAccessFile(file.toFile(), "r");
+    }
+
+    /**
+     * Append a list of values
+     *
+     * @param values the values, may contain null
+     * @return the offset to read the values
+     * @throws IOException if the values cannot be written
+     */
+    public synchronized long writeStrings(List<String> values) throws IOException {
+        entryOut.writeInt(values.size());
+        for (String value : values) {
+            writeString(entryOut, value);
+        }
+        return writeEntry();
+    }
+
+    /**
+     * Read a list of values
+     *
+     * @param offset the offset returned by {@link #writeStrings(List)}
+     * @return the values
+     * @throws IOException if the values cannot be read
+     */
+    public synchronized List<String> readStrings(long offset) throws IOException {
+        DataInputStream data = readEntry(offset);
+        int count = data.readInt();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readString(data));
+        }
+        return values;
+    }
+
+    /**
+     * Append a catalogue record
+     *
+     * @param rec the record
+     * @return the offset to read the record
+     * @throws IOException if the record cannot be written
+     */
+    public synchronized long writeRecord(OpacRecord rec) throws IOException {
+        rec.write(entryOut);
+        return writeEntry();
+    }
+
+    /**
+     * Read a catalogue record
+     *
+     * @param offset the offset returned by {@link #writeRecord(OpacRecord)}
+     * @return the record
+     * @throws IOException if the record cannot be read
+     */
+    public synchronized OpacRecord readRecord(long offset) throws IOException {
+        return OpacRecord.read(readEntry(offset));
+    }
+
+    /**
+     *
+     * @return the number of bytes written
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    private long writeEntry() throws IOException {
+        long offset = size;
+        out.writeInt(entry.size());
+        entry.writeTo(out);
+        size += 4L + entry.size();
+        entry.reset();
+        unflushed = true;
+        return offset;
+    }
+
+    private DataInputStream readEntry(long offset) throws IOException {
+        if (unflushed) {
+            out.flush();
+            unflushed = false;
+        }
+        in.seek(offset);
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        if (value == null) {
+            data.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readString(DataInputStream data) throws IOException {
+        int length = data.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            out.close();
+            in.close();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.error("Cannot delete spool file {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import ugh.exceptions.UGHException;
+
+/**
+ * Reads the data rows of an input file and passes them to a {@link RowHandler}.
+ */
+public interface SpreadsheetReader {
+
+    /**
+     * Read the file and pass every row to the handler, until the file ends or the handler requests to stop.
+     * 
+     * @param file the file to read
+     * @param handler the handler that processes the rows
+     * @throws IOException if the file cannot be read
+     * @throws UGHException if the handler could not process a row
+     */
+    void read(Path file, RowHandler handler) throws IOException, UGHException;
+
+    /**
+     * Get the names of all sheets in the file
+     * 
+     * @param file the file to read
+     * @return the names in workbook order. Files without sheets have a single sheet with an empty name.
+     * @throws IOException if the file cannot be read
+     */
+    default List<String> getSheetNames(Path file) throws IOException {
+        return Collections.singletonList("");
+    }
+
+    /**
+     * Read a single sheet of the file. Different sheets of the same file can be read in parallel, but a reader that loads the complete file
+     * does so for every sheet.
+     * 
+     * @param file the file to read
+     * @param sheetIndex the index of the sheet in workbook order
+     * @param handler the handler that processes the rows
+     * @throws IOException if the file or the sheet cannot be read
+     * @throws UGHException if the handler could not process a row
+     */
+    default void read(Path file, int sheetIndex, RowHandler handler) throws IOException, UGHException {
+        if (sheetIndex != 0) {
+            throw new IOException("File " + file + " has only one sheet");
+        }
+        read(file, handler);
+    }
+
+}
@@ -0,0 +1,107 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.DocStruct;
+import ugh.dl.Reference;
+
+/**
+ * Removes logical structure elements together with all their page assignments. Instead of removing each reference on its own, which searches
+ * the reference lists of the element and the page every time, all references of the removed elements are dropped in a single pass over the
+ * affected pages.
+ */
+@Log4j2
+public final class StructureCleaner {
+
+    private StructureCleaner() {
+    }
+
+    /**
+     * Remove all elements below the root element, including their children on all levels
+     *
+     * @param logical the root element
+     * @return the number of removed elements
+     */
+    public static int removeChildren(DocStruct logical) {
+        if (logical.getAllChildren() == null || logical.getAllChildren().isEmpty()) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        List<DocStruct> elements = new ArrayList<>();
+        collectSubtree(logical, elements);
+        int references = removeElements(elements);
+        log.info("Removed {} structure elements and {} page assignments in {} ms", elements.size(), references,
+                System.currentTimeMillis() - start);
+        return elements.size();
+    }
+
+    private static void collectSubtree(DocStruct parent, List<DocStruct> elements) {
+        if (parent.getAllChildren() == null) {
+            return;
+        }
+        for (DocStruct child : parent.getAllChildren()) {
+            elements.add(child);
+            collectSubtree(child, elements);
+        }
+    }
+
+    /**
+     * Remove the page assignments of the elements and detach the elements from their parents. Children of the elements are not detached, but
+     * their page assignments are only removed if they are part of the collection.
+     *
+     * @param elements the elements to remove
+     * @return the number of removed page assignments
+     */
+    public static int removeElements(Collection<DocStruct> elements) {
+        Set<DocStruct> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        removed.addAll(elements);
+
+        // collect the pages once, a page is usually assigned to several nested elements
+        Set<DocStruct> pages = Collections.newSetFromMap(new IdentityHashMap<>());
+        int references = 0;
+        for (DocStruct element : elements) {
+            List<Reference> refs = element.getAllToReferences();
+            if (refs != null) {
+                for (Reference ref : refs) {
+                    pages.add(ref.getTarget());
+                }
+                references += refs.size();
+            }
+        }
+
+        // one pass over the back references of each page, then one clear per element
+        for (DocStruct page : pages) {
+            List<Reference> refs = page.getAllFromReferences();
+            if (refs != null) {
+                refs.removeIf(ref -> removed.contains(ref.getSource()));
+            }
+        }
+        for (DocStruct element : elements) {
+            List<Reference> refs = element.getAllToReferences();
+            if (refs != null) {
+                refs.clear();
+                refs = element.getAllToReferences();
+                if (refs != null && !refs.isEmpty()) {
+                    // the list was only a copy, remove the references one by one
+                    for (Reference ref : new ArrayList<>(refs)) {
+                        element.removeReferenceTo(ref.getTarget());
+                    }
+                }
+            }
+        }
+
+        for (DocStruct element : elements) {
+            DocStruct parent = element.getParent();
+            if (parent != null && !removed.contains(parent)) {
+                parent.removeChild(element);
+            }
+        }
+        return references;
+    }
+}
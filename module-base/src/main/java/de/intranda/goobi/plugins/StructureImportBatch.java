@@ -0,0 +1,179 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.goobi.beans.Process;
+import org.goobi.beans.Ruleset;
+import org.goobi.beans.Step;
+import org.goobi.production.enums.PluginReturnValue;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.Prefs;
+
+/**
+ * Imports the structure data of many processes in one run, e.g. all processes of a batch. The configuration is read once per project and the
+ * ruleset once per ruleset. Each process gets its own catalogue client, which is closed after its import, so the requests of a process are not
+ * kept for the rest of the batch. The catalogue cache, rate limit and circuit breaker are still shared. The processes are imported in parallel,
+ * a failed import does not affect the other processes. A cancelled batch stops before the next process.
+ */
+@Log4j2
+public class StructureImportBatch {
+
+    private static final String PLUGIN_TITLE = "intranda_step_MetadataStructureImport";
+
+    private final String stepTitle;
+    private final int workers;
+
+    // shared by all processes of the batch
+    private final Map<String, ImportConfiguration> configurations = new ConcurrentHashMap<>();
+    private final Map<Integer, Ruleset> rulesets = new ConcurrentHashMap<>();
+
+    /**
+     * 
+     * @param stepTitle the title of the step, used to find the configuration of each process
+     * @param workers the number of processes to import in parallel
+     */
+    public StructureImportBatch(String stepTitle, int workers) {
+        this.stepTitle = stepTitle;
+        this.workers = Math.max(workers, 1);
+    }
+
+    /**
+     * Import the structure data of all processes
+     * 
+     * @param processes the processes to import
+     * @return the titles of the imported processes and the error of each failed process
+     */
+    public BatchResult run(List<Process> processes) {
+        return run(processes, new ImportProgress());
+    }
+
+    /**
+     * Import the structure data of all processes, until the import is cancelled
+     * 
+     * @param processes the processes to import
+     * @param progress counts the imported processes. If it is cancelled, the processes that were not started yet are skipped
+     * @return the titles of the imported and skipped processes and the error of each failed process
+     */
+    public BatchResult run(List<Process> processes, ImportProgress progress) {
+        progress.startBatch(processes.size());
+        BatchResult result = new BatchResult();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            Map<Process, Future<PluginReturnValue>> imports = new LinkedHashMap<>();
+            for (Process process : processes) {
+                imports.put(process, executor.submit(() -> {
+                    if (progress.isCancelled()) {
+                        return null;
+                    }
+                    try {
+                        return importProcess(process, findStep(process));
+                    } finally {
+                        progress.addProcessedRow();
+                    }
+                }));
+            }
+            for (Map.Entry<Process, Future<PluginReturnValue>> entry : imports.entrySet()) {
+                String processTitle = entry.getKey().getTitel();
+                try {
+                    PluginReturnValue value = entry.getValue().get();
+                    if (value == null) {
+                        result.addCancelled(processTitle);
+                    } else if (value == PluginReturnValue.ERROR) {
+                        result.addError(processTitle, "Structure import failed, see log for details");
+                    } else {
+                        result.addFinished(processTitle);
+                    }
+                } catch (ExecutionException e) {
+                    log.error("Structure import of process {} failed", processTitle, e.getCause());
+                    result.addError(processTitle, String.valueOf(e.getCause().getMessage()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("Imported structure data of {} processes, {} failed, {} cancelled", result.getFinished().size(), result.getErrors().size(),
+                result.getCancelled().size());
+        return result;
+    }
+
+    private Step findStep(Process process) {
+        for (Step step : process.getSchritte()) {
+            if (stepTitle.equals(step.getTitel())) {
+                return step;
+            }
+        }
+        throw new IllegalArgumentException("Process " + process.getTitel() + " has no step " + stepTitle);
+    }
+
+    /**
+     * Import the structure data of a single process
+     * 
+     * @param process the process to import
+     * @param step the step of the process whose configuration is used
+     * @return the result of the import
+     */
+    PluginReturnValue importProcess(Process process, Step step) {
+        String configKey = process.getProjekt().getTitel() + "|" + stepTitle;
+        // the configuration stays the same for the whole batch, even if the file is changed in the meantime
+        ImportConfiguration config = configurations.computeIfAbsent(configKey, k -> ImportConfigurationCache.get(PLUGIN_TITLE, step));
+
+        // use one ruleset object per ruleset, so the ruleset file is parsed only once
+        Ruleset ruleset = rulesets.computeIfAbsent(process.getRegelsatz().getId(), id -> {
+            Ruleset r = process.getRegelsatz();
+            r.getPreferences();
+            return r;
+        });
+        Prefs prefs = ruleset.getPreferences();
+
+        OpacLookup opacLookup = OpacLookup.create(config, prefs);
+        // the process bean can be used by other code, so its own ruleset is restored after the import
+        Ruleset originalRuleset = process.getRegelsatz();
+        process.setRegelsatz(ruleset);
+        try {
+            return new StructureImporter(config, prefs, opacLookup).importStructure(process, step);
+        } finally {
+            if (opacLookup != null) {
+                opacLookup.close();
+            }
+            process.setRegelsatz(originalRuleset);
+        }
+    }
+
+    /**
+     * The outcome of a batch import
+     */
+    @Getter
+    public static class BatchResult {
+        private final List<String> finished = Collections.synchronizedList(new ArrayList<>());
+        // process title and error message of each failed import
+        private final Map<String, String> errors = Collections.synchronizedMap(new LinkedHashMap<>());
+        // processes that were not started, because the batch was cancelled
+        private final List<String> cancelled = Collections.synchronizedList(new ArrayList<>());
+
+        void addFinished(String processTitle) {
+            finished.add(processTitle);
+        }
+
+        void addError(String processTitle, String message) {
+            errors.put(processTitle, message);
+        }
+
+        void addCancelled(String processTitle) {
+            cancelled.add(processTitle);
+        }
+    }
+
+}
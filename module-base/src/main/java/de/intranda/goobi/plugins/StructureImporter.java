@@ -0,0 +1,900 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.StringUtils;
+import org.goobi.beans.Process;
+import org.goobi.beans.Step;
+import org.goobi.production.enums.LogType;
+import org.goobi.production.enums.PluginReturnValue;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.Helper;
+import de.sub.goobi.helper.StorageProvider;
+import de.sub.goobi.helper.VariableReplacer;
+import de.sub.goobi.helper.exceptions.DAOException;
+import de.sub.goobi.helper.exceptions.SwapException;
+import de.sub.goobi.metadaten.MetadatenImagesHelper;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.DocStructType;
+import ugh.dl.Fileformat;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+import ugh.exceptions.PreferencesException;
+import ugh.exceptions.UGHException;
+import ugh.exceptions.WriteException;
+
+/**
+ * Imports the structure data of a single process. An importer can be used for any number of processes that share the same configuration and
+ * ruleset, also in parallel.
+ */
+@Log4j2
+@RequiredArgsConstructor
+public class StructureImporter {
+
+    // maximum number of errors reported for an invalid spreadsheet
+    private static final int MAX_ERRORS = 50;
+
+    private final ImportConfiguration config;
+    private final Prefs prefs;
+    // catalogue client, null if no catalogue is configured
+    private final OpacLookup opacLookup;
+
+    /**
+     * Replace the logical structure of the process with the structure data from the excel file
+     * 
+     * @param process the process to import
+     * @param step the current step, used to resolve variables in the configured folder
+     * @return {@link PluginReturnValue#FINISH} or {@link PluginReturnValue#ERROR}, if the import failed
+     */
+    public PluginReturnValue importStructure(Process process, Step step) {
+        return importStructure(process, step, null, new ImportProgress());
+    }
+
+    /**
+     * Replace the logical structure of the process with the structure data from the excel file. The rows of a previous
+     * {@link #parse(Process, Step)} are used, if the file was not changed since.
+     * 
+     * @param process the process to import
+     * @param step the current step, used to resolve variables in the configured folder
+     * @param parsed the parsed rows of the file, null to read the file
+     * @param progress receives the progress of the import and can cancel it
+     * @return {@link PluginReturnValue#FINISH} or {@link PluginReturnValue#ERROR}, if the import failed or was cancelled
+     */
+    public PluginReturnValue importStructure(Process process, Step step, ParsedSpreadsheet parsed, ImportProgress progress) {
+        ImportMetrics metrics = new ImportMetrics();
+        PluginReturnValue result = importStructure(process, step, parsed, progress, metrics);
+        if (metrics.isSkipped()) {
+            ImportStatistics.getInstance().addSkipped();
+            return result;
+        }
+        boolean failed = result == PluginReturnValue.ERROR || metrics.isFailed();
+        ImportStatistics.getInstance().add(metrics, failed);
+        String summary = metrics.getSummary();
+        log.info("Process {}: {}", process.getId(), summary);
+        Helper.addMessageToProcessJournal(process.getId(), failed ? LogType.ERROR : LogType.DEBUG, summary);
+        if (!metrics.getOpacRetryRows().isEmpty()) {
+            Helper.addMessageToProcessJournal(process.getId(), LogType.WARN, metrics.getOpacRetrySummary());
+        }
+        return result;
+    }
+
+    private PluginReturnValue importStructure(Process process, Step step, ParsedSpreadsheet parsed, ImportProgress progress,
+            ImportMetrics metrics) {
+        if (progress.isCancelled()) {
+            // cancelled while waiting for a free thread
+            return PluginReturnValue.ERROR;
+        }
+        Path fingerprintExcelFile = null;
+        String fingerprint = null;
+        if (config.isSkipUnchangedImport()) {
+            // check the fingerprint before the metadata file is read. The folder is resolved without metadata, as it usually depends on the
+            // process only. If it uses metadata, the fingerprint does not match and the import runs as usual
+            try {
+                Path fingerprintFile = Paths.get(process.getProcessDataDirectory(), ImportFingerprint.FILE_NAME);
+                fingerprintExcelFile = findExcelFile(new VariableReplacer(null, prefs, process, step));
+                if (fingerprintExcelFile != null) {
+                    fingerprint = ImportFingerprint.create(fingerprintExcelFile, config, getRulesetFile(process));
+                    if (ImportFingerprint.matches(fingerprintFile, fingerprint)) {
+                        log.info("Excel file and configuration are unchanged since the last import, skip process {}", process.getId());
+                        metrics.markSkipped();
+                        return PluginReturnValue.FINISH;
+                    }
+                }
+            } catch (IOException | SwapException e) {
+                log.error(e);
+                fingerprint = null;
+            }
+        }
+
+        // open metadata file
+        Fileformat fileformat = null;
+        DigitalDocument digDoc = null;
+        long start = System.nanoTime();
+        try {
+            fileformat = process.readMetadataFile();
+            digDoc = fileformat.getDigitalDocument();
+        } catch (UGHException | IOException | SwapException e) {
+            log.error(e);
+            // cannot read metadata file, abort.
+            return PluginReturnValue.ERROR;
+
+        } finally {
+            metrics.addTime(ImportMetrics.Phase.READ_METADATA, start);
+        }
+        DocStruct logical = digDoc.getLogicalDocStruct();
+
+        VariableReplacer replacer = new VariableReplacer(digDoc, prefs, process, step);
+
+        // find excel file in configured folder
+        start = System.nanoTime();
+        Path excelFile = findExcelFile(replacer);
+        metrics.addTime(ImportMetrics.Phase.OPEN_FILE, start);
+        if (excelFile == null) {
+            // excel folder or excel file not found, abort
+            return PluginReturnValue.ERROR;
+        }
+
+        boolean imported = true;
+        // the values of the rows, if they are kept out of memory
+        SpoolFile spool = null;
+        // open excel file
+        try {
+            // the pagination is created after all rows are read, if it is missing
+            DigitalDocument document = digDoc;
+            StructureRowHandler handler = new StructureRowHandler(digDoc, logical, requiredPages -> getPages(process, document, requiredPages, metrics),
+                    RulesetTypes.get(getRulesetFile(process), prefs), metrics, progress);
+            start = System.nanoTime();
+            List<SheetParser> sheets;
+            if (parsed != null && parsed.isCurrent(excelFile)) {
+                log.debug("Use the parsed rows of {}", excelFile);
+                sheets = parsed.getSheets();
+            } else {
+                spool = createSpool();
+                sheets = readSheets(excelFile, spool);
+            }
+            for (SheetParser sheet : sheets) {
+                handler.addSheet(sheet);
+            }
+            metrics.addTime(ImportMetrics.Phase.PARSE, start);
+            handler.finish();
+        } catch (ImportCancelledException e) {
+            log.info("Process {}: {}", process.getId(), e.getMessage());
+            // don't save the partially imported structure
+            return PluginReturnValue.ERROR;
+        } catch (InvalidSpreadsheetException e) {
+            log.error(e.getMessage());
+            // don't save the partially imported structure
+            return PluginReturnValue.ERROR;
+        } catch (UncheckedIOException e) {
+            log.error("Cannot read the parsed rows from the temporary file", e);
+            // don't save the partially imported structure
+            return PluginReturnValue.ERROR;
+        } catch (IOException | UGHException | IllegalArgumentException e) {
+            log.error("Process {}: the structure cannot be imported", process.getId(), e);
+            // the structure may already be removed or partially built, keep the metadata file unchanged
+            return PluginReturnValue.ERROR;
+        } finally {
+            if (spool != null) {
+                spool.close();
+            }
+        }
+
+        start = System.nanoTime();
+        try {
+            process.writeMetadataFile(fileformat);
+        } catch (WriteException | PreferencesException | IOException | SwapException e) {
+            log.error(e);
+            imported = false;
+        }
+        metrics.addTime(ImportMetrics.Phase.WRITE_METADATA, start);
+        if (!imported) {
+            metrics.markFailed();
+        }
+
+        if (config.isSkipUnchangedImport()) {
+            // rows without catalogue data must not skip the next import
+            storeFingerprint(process, excelFile, imported && metrics.getOpacRetryRows().isEmpty(),
+                    excelFile.equals(fingerprintExcelFile) ? fingerprint : null);
+        }
+
+        return PluginReturnValue.FINISH;
+    }
+
+    /**
+     * Parse the rows of the excel file without changing the metadata file, e.g. for a preview. The folder is resolved without metadata.
+     * 
+     * @param process the process
+     * @param step the current step, used to resolve variables in the configured folder
+     * @return the parsed rows, including the errors of invalid rows
+     * @throws IOException if the file does not exist or cannot be read
+     * @throws InvalidSpreadsheetException if the header row or a configured sheet is missing
+     */
+    public ParsedSpreadsheet parse(Process process, Step step) throws IOException, UGHException {
+        Path excelFile = findExcelFile(new VariableReplacer(null, prefs, process, step));
+        if (excelFile == null) {
+            throw new IOException("No single " + config.getFileType() + " file found in " + config.getExcelFolder());
+        }
+        // read the file attributes first, a change while the file is parsed is detected on import
+        long size = Files.size(excelFile);
+        long lastModified = Files.getLastModifiedTime(excelFile).toMillis();
+        try {
+            return new ParsedSpreadsheet(excelFile, size, lastModified, readSheets(excelFile, null));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Create the temporary file for the values of the parsed rows, if the import should not keep them in memory
+     * 
+     * @return the file or null
+     */
+    private SpoolFile createSpool() {
+        if (!config.isSpillToDisk()) {
+            return null;
+        }
+        try {
+            return SpoolFile.create(Paths.get(ConfigurationHelper.getInstance().getTemporaryFolder()));
+        } catch (IOException e) {
+            log.error("Cannot create a temporary file for the parsed rows, they are kept in memory", e);
+            return null;
+        }
+    }
+
+    /**
+     * Parse the configured sheets of a file
+     * 
+     * @param excelFile the file to read
+     * @param spool the file for the values of the rows, null to keep them in memory
+     * @return the parsed sheets in workbook order
+     */
+    private List<SheetParser> readSheets(Path excelFile, SpoolFile spool) throws IOException, UGHException {
+        SpreadsheetReader reader = createReader();
+        if (config.isMultipleSheets()) {
+            return parseSheets(reader, excelFile, spool);
+        }
+        SheetParser parser = new SheetParser(config, prefs, null, spool);
+        reader.read(excelFile, parser);
+        return Collections.singletonList(parser);
+    }
+
+    /**
+     * Create the reader for the configured file type. Several sheets of an Excel file are always read with the {@link ExcelStreamingReader}.
+     *
+     * @return the reader
+     * @throws IllegalArgumentException if the separator or the encoding of a csv file are invalid
+     */
+    private SpreadsheetReader createReader() {
+        switch (config.getFileType()) {
+            case "csv":
+                return new DelimitedFileReader(config.getCsvSeparator(), Charset.forName(config.getCsvEncoding()));
+            case "tsv":
+                return new DelimitedFileReader('\t', Charset.forName(config.getCsvEncoding()));
+            default:
+                // the sheets are parsed in parallel, the workbook reader would load the complete workbook once per sheet
+                return config.isStreamingReader() || config.isMultipleSheets() ? new ExcelStreamingReader() : new ExcelWorkbookReader();
+        }
+    }
+
+    /**
+     * Parse the configured sheets in parallel. The structure is only created afterwards, in workbook order.
+     * 
+     * @param reader the reader for the file
+     * @param excelFile the file to read
+     * @param spool the file for the values of the rows, null to keep them in memory. It is shared by all sheets
+     * @return the parsed sheets in workbook order
+     * @throws InvalidSpreadsheetException if a configured sheet does not exist
+     */
+    private List<SheetParser> parseSheets(SpreadsheetReader reader, Path excelFile, SpoolFile spool) throws IOException, UGHException {
+        List<String> sheetNames = reader.getSheetNames(excelFile);
+        for (String sheetName : config.getSheetNames()) {
+            if (!sheetNames.contains(sheetName)) {
+                throw new InvalidSpreadsheetException("Sheet '" + sheetName + "' does not exist");
+            }
+        }
+        List<Integer> sheetIndexes = new ArrayList<>();
+        for (int i = 0; i < sheetNames.size(); i++) {
+            if (config.isReadAllSheets() || config.getSheetNames().contains(sheetNames.get(i))) {
+                sheetIndexes.add(i);
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        int threads = Math.max(1, Math.min(sheetIndexes.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<SheetParser>> parsedSheets = new ArrayList<>();
+            for (int sheetIndex : sheetIndexes) {
+                parsedSheets.add(executor.submit(() -> {
+                    SheetParser parser = new SheetParser(config, prefs, sheetNames.get(sheetIndex), spool);
+                    reader.read(excelFile, sheetIndex, parser);
+                    return parser;
+                }));
+            }
+            List<SheetParser> sheets = new ArrayList<>();
+            for (Future<SheetParser> parsedSheet : parsedSheets) {
+                sheets.add(parsedSheet.get());
+            }
+            log.debug("Parsed {} sheets with {} threads in {} ms", sheets.size(), threads, System.currentTimeMillis() - start);
+            return sheets;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof UGHException) {
+                throw (UGHException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Find the excel, csv or tsv file in the configured folder. The file is selected by the extension of the configured file type, lock files
+     * of an open Excel file are ignored. If the folder contains more than one matching file, none of them is used.
+     * 
+     * @param replacer resolves the variables of the configured folder
+     * @return the excel file or null, if the folder or the file does not exist or if there is more than one file
+     */
+    private Path findExcelFile(VariableReplacer replacer) {
+        Path path = Paths.get(replacer.replace(config.getExcelFolder()));
+        if (!StorageProvider.getInstance().isDirectory(path)) {
+            return null;
+        }
+
+        List<String> extensions;
+        switch (config.getFileType()) {
+            case "csv":
+                extensions = Arrays.asList(".csv");
+                break;
+            case "tsv":
+                extensions = Arrays.asList(".tsv", ".tab");
+                break;
+            default:
+                extensions = Arrays.asList(".xlsx");
+        }
+
+        List<Path> matchingFiles = new ArrayList<>();
+        for (Path p : StorageProvider.getInstance().listFiles(path.toString())) {
+            String fileName = p.getFileName().toString().toLowerCase();
+            if (!fileName.startsWith("~$") && extensions.stream().anyMatch(fileName::endsWith)) {
+                matchingFiles.add(p);
+            }
+        }
+        if (matchingFiles.size() > 1) {
+            log.error("Folder {} contains more than one {} file, the file to import is not unique: {}", path, config.getFileType(), matchingFiles);
+            return null;
+        }
+        return matchingFiles.isEmpty() ? null : matchingFiles.get(0);
+    }
+
+    /**
+     * Get the pages of the process. If the physical structure is empty, the pagination is created from the images. A pagination that was limited
+     * to the pages required by an earlier import is extended, if the spreadsheet now uses more images.
+     * 
+     * @param requiredPages the highest image number used in the spreadsheet, used to limit the number of created pages
+     * @return the pages
+     */
+    private List<DocStruct> getPages(Process process, DigitalDocument digDoc, int requiredPages, ImportMetrics metrics) {
+        DocStruct physical = digDoc.getPhysicalDocStruct();
+        List<DocStruct> existingPages = physical.getAllChildren();
+        boolean limitedPagination = config.isFastPagination() && config.isPaginateRequiredPagesOnly();
+        // create pagination, if missing or too short
+        if (existingPages == null || limitedPagination && existingPages.size() < requiredPages) {
+            long start = System.nanoTime();
+            try {
+                if (config.isFastPagination()) {
+                    Path imageFolder = Paths.get(process.getImagesTifDirectory(true));
+                    List<String> imageNames = ImageManifest.getImageNames(imageFolder);
+                    PaginationBuilder.createPages(digDoc, prefs, imageFolder, imageNames, limitedPagination ? requiredPages : 0);
+                } else {
+                    MetadatenImagesHelper imagehelper = new MetadatenImagesHelper(prefs, digDoc);
+                    imagehelper.createPagination(process, process.getImagesTifDirectory(true));
+                }
+            } catch (UGHException | IOException | SwapException | DAOException e) {
+                log.error(e);
+            }
+            metrics.addTime(ImportMetrics.Phase.PAGINATION, start);
+        }
+        return physical.getAllChildren() == null ? new ArrayList<>() : physical.getAllChildren();
+    }
+
+    private static Path getRulesetFile(Process process) {
+        return Paths.get(ConfigurationHelper.getInstance().getRulesetFolder(), process.getRegelsatz().getDatei());
+    }
+
+    /**
+     * Store the fingerprint after a successful import. After a failed import the old fingerprint is removed, as it no longer matches the
+     * metadata file.
+     * 
+     * @param imported true if the import was successful
+     * @param fingerprint the fingerprint calculated before the import, null if it has to be calculated
+     */
+    private void storeFingerprint(Process process, Path excelFile, boolean imported, String fingerprint) {
+        try {
+            Path fingerprintFile = Paths.get(process.getProcessDataDirectory(), ImportFingerprint.FILE_NAME);
+            if (!imported) {
+                ImportFingerprint.delete(fingerprintFile);
+                return;
+            }
+            if (fingerprint == null) {
+                fingerprint = ImportFingerprint.create(excelFile, config, getRulesetFile(process));
+            }
+            ImportFingerprint.write(fingerprintFile, fingerprint);
+        } catch (IOException | SwapException e) {
+            log.error(e);
+        }
+    }
+
+    /**
+     * Create the handler that replaces the structure of a document with the rows of a spreadsheet, without reading or writing the metadata
+     * file. In incremental mode, the rows are merged with the existing structure.
+     * 
+     * @param digDoc the document
+     * @param logical the logical root element, the new elements are added below
+     * @param pages the pages that are assigned to the new elements
+     * @return the handler
+     */
+    StructureRowHandler createRowHandler(DigitalDocument digDoc, DocStruct logical, List<DocStruct> pages) {
+        return new StructureRowHandler(digDoc, logical, requiredPages -> pages, RulesetTypes.create(prefs), new ImportMetrics(), new ImportProgress());
+    }
+
+    /**
+     * Provides the pages of the document, once all rows are read
+     */
+    @FunctionalInterface
+    interface PageProvider {
+
+        /**
+         * 
+         * @param requiredPages the highest image number used in the spreadsheet
+         * @return the pages
+         */
+        List<DocStruct> getPages(int requiredPages);
+    }
+
+    /**
+     * Creates a structure element for each data row. The rows of a single sheet are passed to {@link #handleRow(int, List)}, the sheets of a
+     * workbook with several sheets are parsed on their own and added with {@link #addSheet(SheetParser)}. All rows are validated first, the
+     * structure is only changed in {@link #finish()}, if all rows are valid.
+     */
+    class StructureRowHandler implements RowHandler {
+
+        private final DigitalDocument digDoc;
+        private final DocStruct logical;
+        private final PageProvider pageProvider;
+        // used to copy the catalogue data
+        private final RulesetTypes rulesetTypes;
+        private final ImportMetrics metrics;
+        private final ImportProgress progress;
+        private List<DocStruct> pages;
+
+        // parsed sheets in workbook order
+        private final List<SheetParser> sheets = new ArrayList<>();
+        // parser for the rows passed to handleRow
+        private SheetParser currentSheet;
+
+        // elements waiting for the result of their catalogue request, in row order
+        private final List<PendingElement> pendingElements = new ArrayList<>();
+
+        private ColumnPlan plan;
+        // the catalogue fields copied into new elements, only used with a catalogue
+        private OpacProjection projection;
+        // only used in incremental mode
+        private StructureMerger merger;
+
+        // the element created for each row of the current sheet, to find the parent element of a row by index
+        private DocStruct[] elements;
+
+        StructureRowHandler(DigitalDocument digDoc, DocStruct logical, PageProvider pageProvider, RulesetTypes rulesetTypes, ImportMetrics metrics,
+                ImportProgress progress) {
+            this.digDoc = digDoc;
+            this.logical = logical;
+            this.pageProvider = pageProvider;
+            this.rulesetTypes = rulesetTypes;
+            this.metrics = metrics;
+            this.progress = progress;
+        }
+
+        @Override
+        public boolean handleRow(int rowNumber, List<String> row) throws UGHException {
+            if (currentSheet == null) {
+                currentSheet = new SheetParser(config, prefs, null);
+                sheets.add(currentSheet);
+            }
+            return currentSheet.handleRow(rowNumber, row);
+        }
+
+        /**
+         * Add the rows of a parsed sheet, after the rows of the sheets added before
+         * 
+         * @param sheet the parsed sheet
+         */
+        void addSheet(SheetParser sheet) {
+            sheets.add(sheet);
+        }
+
+        /**
+         * Validate all rows, then replace or merge the structure
+         */
+        public void finish() throws UGHException {
+            List<String> errors = new ArrayList<>();
+
+            // in multi sheet mode, the rows of each sheet can be added to an element of their own
+            DocStructType sheetType = null;
+            MetadataType sheetTitleType = null;
+            if (config.isMultipleSheets() && StringUtils.isNotBlank(config.getSheetDocstruct())) {
+                sheetType = prefs.getDocStrctTypeByName(config.getSheetDocstruct());
+                if (sheetType == null) {
+                    errors.add("Structure type '" + config.getSheetDocstruct() + "' is not defined in the ruleset");
+                }
+                sheetTitleType = prefs.getMetadataTypeByName(config.getSheetTitleMetadata());
+            }
+
+            int requiredPages = 0;
+            int totalRows = 0;
+            for (SheetParser sheet : sheets) {
+                for (String error : sheet.getErrors()) {
+                    errors.add(sheet.withSheetName(error));
+                }
+                StructureRows rows = sheet.getRows();
+                rows.compact();
+                for (String error : rows.getTreeErrors()) {
+                    errors.add(sheet.withSheetName(error));
+                }
+                metrics.addRows(rows.size());
+                totalRows += rows.size();
+                for (int i = 0; i < rows.size(); i++) {
+                    // rows on level 0 describe the publication itself and get no pages
+                    if (rows.getHierarchy(i) > 0) {
+                        requiredPages = Math.max(requiredPages, rows.getEndPage(i));
+                    }
+                }
+                // all plans contain the same metadata types in configuration order
+                if (plan == null) {
+                    plan = sheet.getPlan();
+                }
+            }
+
+            // an element that is not allowed below its parent cannot be added, check this before the structure is changed
+            DocStructType topType = sheetType == null ? logical.getType() : sheetType;
+            if (sheetType != null && !isAllowedChild(logical.getType(), sheetType)) {
+                errors.add("Structure type '" + sheetType.getName() + "' is not allowed in '" + logical.getType().getName() + "'");
+            }
+            for (SheetParser sheet : sheets) {
+                StructureRows rows = sheet.getRows();
+                int[] parents = rows.getParents();
+                for (int i : rows.getOrder()) {
+                    DocStructType type = rows.getDocStructType(i);
+                    DocStructType parentType = parents[i] >= 0 ? rows.getDocStructType(parents[i]) : topType;
+                    if (rows.getHierarchy(i) > 0 && !isAllowedChild(parentType, type)) {
+                        errors.add(sheet.withSheetName("Structure type '" + type.getName() + "' in row " + rows.getRowNumber(i) + " is not allowed in '"
+                                + parentType.getName() + "'"));
+                    }
+                }
+            }
+
+            if (opacLookup != null) {
+                projection = new OpacProjection(config, rulesetTypes, plan);
+                errors.addAll(projection.getErrors());
+            }
+
+            if (errors.isEmpty()) {
+                pages = pageProvider.getPages(requiredPages);
+                // pages are accessed by index
+                if (!(pages instanceof RandomAccess)) {
+                    pages = new ArrayList<>(pages);
+                }
+
+                long start = System.nanoTime();
+                List<String> warnings = new ArrayList<>();
+                for (SheetParser sheet : sheets) {
+                    PageRangeValidator validator = new PageRangeValidator(pages.size(), config.isStrictPageRanges());
+                    validator.validate(sheet.getRows());
+                    for (String error : validator.getErrors()) {
+                        errors.add(sheet.withSheetName(error));
+                    }
+                    for (String warning : validator.getWarnings()) {
+                        warnings.add(sheet.withSheetName(warning));
+                    }
+                }
+                for (String warning : warnings.subList(0, Math.min(warnings.size(), MAX_ERRORS))) {
+                    log.warn(warning);
+                }
+                if (warnings.size() > MAX_ERRORS) {
+                    log.warn("{} more image ranges are not contained in their parent or overlap with a sibling", warnings.size() - MAX_ERRORS);
+                }
+                metrics.addTime(ImportMetrics.Phase.VALIDATE, start);
+            }
+            if (!errors.isEmpty()) {
+                List<String> messages = errors.size() > MAX_ERRORS ? errors.subList(0, MAX_ERRORS) : errors;
+                throw new InvalidSpreadsheetException("Invalid spreadsheet, " + errors.size() + " errors: " + String.join("; ", messages));
+            }
+
+            // the structure is only changed from here on, a cancelled import ends before the metadata file is written
+            progress.checkCancelled();
+            progress.start(totalRows, metrics);
+
+            long start = System.nanoTime();
+            if (config.isIncrementalImport()) {
+                merger = new StructureMerger(logical, plan == null ? null : plan.getIdentifierMetadataType());
+            } else {
+                // clear metadata file, remove existing structure elements
+                StructureCleaner.removeChildren(logical);
+            }
+            metrics.addTime(ImportMetrics.Phase.CLEANUP, start);
+
+            // for each line in excel file:
+
+            // generate structure element
+            // parent element is the last element with smaller hierarchy level (or the root element)
+            // add metadata from configured columns
+            // create page assignments based on excel data
+            // opac request if configured and identifier is known
+            // excel data has higher priority than opac data
+            start = System.nanoTime();
+            for (SheetParser sheet : sheets) {
+                DocStruct sheetElement = logical;
+                if (sheetType != null) {
+                    sheetElement = importSheetElement(sheet, sheetType, sheetTitleType);
+                }
+                StructureRows rows = sheet.getRows();
+                int[] parents = rows.getParents();
+                elements = new DocStruct[rows.size()];
+                // parents are created before their children
+                for (int i : rows.getOrder()) {
+                    progress.checkCancelled();
+                    importRow(rows, i, parents[i] >= 0 ? elements[parents[i]] : sheetElement);
+                    progress.addProcessedRow();
+                }
+            }
+            elements = null;
+            sheets.clear();
+            metrics.addTime(ImportMetrics.Phase.BUILD, start);
+
+            start = System.nanoTime();
+            for (PendingElement element : pendingElements) {
+                progress.checkCancelled();
+                // copy metadata from response to the new docstruct
+                OpacRecord opacRecord = opacLookup.getResult(element.getOpacRequest(), element.getIdentifier(), metrics);
+                boolean[] opacColumns = null;
+                if (opacRecord != null) {
+                    opacColumns = opacRecord.applyTo(element.getDocStruct(), projection, element.getColumnValues());
+                } else if (opacLookup.isUnavailable(element.getIdentifier())) {
+                    metrics.addOpacRetryRow(element.getRowNumber());
+                }
+                addNewColumnMetadata(element.getDocStruct(), element.getColumnValues(), opacColumns);
+            }
+            pendingElements.clear();
+            metrics.addTime(ImportMetrics.Phase.OPAC, start);
+
+            if (merger != null) {
+                start = System.nanoTime();
+                merger.removeUnmatchedElements();
+                metrics.addTime(ImportMetrics.Phase.CLEANUP, start);
+            }
+        }
+
+        /**
+         * Check the ruleset before an element of the type is added. Unknown types are already reported as errors of their row.
+         *
+         * @return true if the child type is allowed in the parent type or one of the types is unknown
+         */
+        private boolean isAllowedChild(DocStructType parentType, DocStructType childType) {
+            if (parentType == null || childType == null) {
+                return true;
+            }
+            List<String> allowedTypes = parentType.getAllAllowedDocStructTypes();
+            return allowedTypes != null && allowedTypes.contains(childType.getName());
+        }
+
+        /**
+         * Create the element for a sheet below the root element. It gets the pages from the first to the last image of the sheet and the name
+         * of the sheet as title. The rows of the sheet are added below this element.
+         * 
+         * @return the element of the sheet
+         */
+        private DocStruct importSheetElement(SheetParser sheet, DocStructType sheetType, MetadataType titleType) throws UGHException {
+            DocStruct element = merger == null ? null : merger.findElement(null, sheetType);
+            boolean existing = element != null;
+            if (!existing) {
+                element = digDoc.createDocStruct(sheetType);
+                metrics.addCreatedElement();
+            }
+
+            int startPage = Integer.MAX_VALUE;
+            int endPage = 0;
+            StructureRows rows = sheet.getRows();
+            for (int i = 0; i < rows.size(); i++) {
+                if (rows.getHierarchy(i) > 0) {
+                    startPage = Math.min(startPage, rows.getStartPage(i));
+                    endPage = Math.max(endPage, rows.getEndPage(i));
+                }
+            }
+            List<DocStruct> sheetPages = endPage == 0 ? Collections.emptyList() : pages.subList(startPage - 1, endPage);
+
+            if (merger != null) {
+                boolean changed = merger.placeElement(logical, element, existing);
+                if (merger.assignPages(element, sheetPages)) {
+                    metrics.addPageReferences(sheetPages.size());
+                    changed = true;
+                }
+                if (titleType != null) {
+                    changed = setMetadataValue(element, titleType, sheet.getSheetName()) | changed;
+                }
+                if (existing) {
+                    merger.countExisting(changed);
+                }
+            } else {
+                logical.addChild(element);
+                for (DocStruct page : sheetPages) {
+                    element.addReferenceTo(page, "logical_physical");
+                }
+                metrics.addPageReferences(sheetPages.size());
+                if (titleType != null) {
+                    setMetadataValue(element, titleType, sheet.getSheetName());
+                }
+            }
+
+            return element;
+        }
+
+        /**
+         * Create or update the element of a row
+         * 
+         * @param parent the element of the parent row, of the sheet or the root element
+         */
+        private void importRow(StructureRows rows, int row, DocStruct parent) throws UGHException {
+            int hierarchy = rows.getHierarchy(row);
+            String identifier = rows.getIdentifier(row);
+            DocStructType docStructType = rows.getDocStructType(row);
+            int startPage = rows.getStartPage(row);
+            int endPage = rows.getEndPage(row);
+
+            // skip first element as it is the publication type itself
+            if (hierarchy != 0) {
+                // in incremental mode, reuse the existing element of this row
+                DocStruct currentDocStruct = merger == null ? null : merger.findElement(identifier, docStructType);
+                boolean existing = currentDocStruct != null;
+                if (!existing) {
+                    currentDocStruct = digDoc.createDocStruct(docStructType);
+                    metrics.addCreatedElement();
+                }
+
+                elements[row] = currentDocStruct;
+
+                List<String> columnValues = rows.getColumnValues(row);
+
+                if (merger != null) {
+                    boolean changed = merger.placeElement(parent, currentDocStruct, existing);
+                    if (existing) {
+                        List<DocStruct> pagesToAssign = pages.subList(startPage - 1, endPage);
+                        // existing elements keep their catalogue data, only changed values are updated
+                        if (merger.assignPages(currentDocStruct, pagesToAssign)) {
+                            metrics.addPageReferences(pagesToAssign.size());
+                            changed = true;
+                        }
+                        changed = addColumnMetadata(currentDocStruct, columnValues) | changed;
+                        merger.countExisting(changed);
+                        return;
+                    }
+                } else {
+                    parent.addChild(currentDocStruct);
+                }
+
+                // assign pages, the range is already validated
+                for (int i = startPage - 1; i < endPage; i++) {
+                    currentDocStruct.addReferenceTo(pages.get(i), "logical_physical");
+                }
+                metrics.addPageReferences(endPage - startPage + 1L);
+
+                //  get opac record for identifier
+                boolean[] opacColumns = null;
+                if (StringUtils.isNotBlank(identifier) && opacLookup != null) {
+                    if (opacLookup.isParallel()) {
+                        // opac data must be added before the excel data, wait for the response
+                        pendingElements.add(new PendingElement(currentDocStruct, rows.getRowNumber(row), identifier, opacLookup.submit(identifier, metrics),
+                                columnValues));
+                        return;
+                    }
+                    // copy metadata from response to the new docstruct
+                    OpacRecord opacRecord = opacLookup.lookup(identifier, metrics);
+                    if (opacRecord != null) {
+                        opacColumns = opacRecord.applyTo(currentDocStruct, projection, columnValues);
+                    } else if (opacLookup.isUnavailable(identifier)) {
+                        metrics.addOpacRetryRow(rows.getRowNumber(row));
+                    }
+                }
+
+                // get additional metadata from excel document
+                addNewColumnMetadata(currentDocStruct, columnValues, opacColumns);
+            }
+        }
+
+        /**
+         * Add the values of the metadata columns to a new element. The element contains catalogue data only, so the values are added without
+         * searching its metadata.
+         * 
+         * @param opacColumns the columns whose type the element got from the catalogue, null if the element has no catalogue data
+         */
+        private void addNewColumnMetadata(DocStruct currentDocStruct, List<String> columnValues, boolean[] opacColumns) throws UGHException {
+            for (int i = 0; i < columnValues.size(); i++) {
+                if (plan.isOverwritten(i) || opacColumns != null && opacColumns[i]) {
+                    continue;
+                }
+                Metadata metadata = new Metadata(plan.getMetadataType(i));
+                metadata.setValue(columnValues.get(i));
+                currentDocStruct.addMetadata(metadata);
+            }
+        }
+
+        /**
+         * Add the values of the metadata columns to an existing element, only changed values are updated
+         * 
+         * @return true if a value was added or changed
+         */
+        private boolean addColumnMetadata(DocStruct currentDocStruct, List<String> columnValues) throws UGHException {
+            boolean changed = false;
+            for (int i = 0; i < columnValues.size(); i++) {
+                // overwrite/insert new metadata
+                changed = setMetadataValue(currentDocStruct, plan.getMetadataType(i), columnValues.get(i)) | changed;
+            }
+            return changed;
+        }
+
+        /**
+         * Overwrite the first metadata of the type or add a new one
+         * 
+         * @return true if the value was added or changed
+         */
+        private boolean setMetadataValue(DocStruct currentDocStruct, MetadataType metadataType, String value) throws UGHException {
+            List<? extends Metadata> metadataList = currentDocStruct.getAllMetadataByType(metadataType);
+            if (!metadataList.isEmpty()) {
+                Metadata metadata = metadataList.get(0);
+                if (value.equals(metadata.getValue())) {
+                    return false;
+                }
+                metadata.setValue(value);
+            } else {
+                Metadata metadata = new Metadata(metadataType);
+                metadata.setValue(value);
+                currentDocStruct.addMetadata(metadata);
+            }
+            return true;
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class PendingElement {
+        private final DocStruct docStruct;
+        private final int rowNumber;
+        private final String identifier;
+        private final Future<OpacRecord> opacRequest;
+        private final List<String> columnValues;
+    }
+
+}
@@ -0,0 +1,209 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.DocStruct;
+import ugh.dl.DocStructType;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataType;
+import ugh.dl.Reference;
+import ugh.exceptions.TypeNotAllowedAsChildException;
+
+/**
+ * Merges the rows of a spreadsheet into the existing logical structure instead of rebuilding it. Existing elements are matched by the value of
+ * the identifier column, elements without identifier by their position. Matched elements keep their metadata and are only moved or get new
+ * page assignments if the spreadsheet differs. Elements without a matching row are removed at the end.
+ */
+@Log4j2
+public class StructureMerger {
+
+    private static final String LOGICAL_PHYSICAL = "logical_physical";
+
+    // all existing elements below the root element, in document order
+    private final List<DocStruct> existingElements = new ArrayList<>();
+    private final Map<String, DocStruct> elementsByIdentifier = new HashMap<>();
+    private final Set<DocStruct> matchedElements = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // number of elements placed below each parent so far
+    private final Map<DocStruct, Integer> placedChildren = new IdentityHashMap<>();
+
+    private final MetadataType identifierType;
+    private int position = 0;
+
+    @Getter
+    private int added = 0;
+    @Getter
+    private int changed = 0;
+    @Getter
+    private int unchanged = 0;
+    @Getter
+    private int removed = 0;
+
+    /**
+     * Index the existing elements below the root element
+     *
+     * @param logical the root element
+     * @param identifierType the metadata type that contains the identifier, or null to match all elements by position
+     */
+    public StructureMerger(DocStruct logical, MetadataType identifierType) {
+        this.identifierType = identifierType;
+        collectElements(logical);
+    }
+
+    private void collectElements(DocStruct parent) {
+        if (parent.getAllChildren() == null) {
+            return;
+        }
+        for (DocStruct child : parent.getAllChildren()) {
+            existingElements.add(child);
+            String identifier = getIdentifier(child);
+            if (StringUtils.isNotBlank(identifier)) {
+                elementsByIdentifier.putIfAbsent(identifier, child);
+            }
+            collectElements(child);
+        }
+    }
+
+    private String getIdentifier(DocStruct element) {
+        if (identifierType == null) {
+            return null;
+        }
+        List<? extends Metadata> identifiers = element.getAllMetadataByType(identifierType);
+        if (identifiers == null || identifiers.isEmpty()) {
+            return null;
+        }
+        return identifiers.get(0).getValue();
+    }
+
+    /**
+     * Find the existing element for the next row. Rows with an identifier are matched by identifier, rows without identifier by their
+     * position, if the element at this position has no identifier either.
+     *
+     * @param identifier the identifier of the row, can be empty
+     * @param type the structure type of the row
+     * @return the existing element or null, if a new element must be created
+     */
+    public DocStruct findElement(String identifier, DocStructType type) {
+        int currentPosition = position++;
+        DocStruct element = null;
+        if (StringUtils.isNotBlank(identifier) && identifierType != null) {
+            element = elementsByIdentifier.get(identifier);
+        } else if (currentPosition < existingElements.size()) {
+            element = existingElements.get(currentPosition);
+            if (StringUtils.isNotBlank(getIdentifier(element))) {
+                element = null;
+            }
+        }
+        if (element == null || matchedElements.contains(element) || !element.getType().getName().equals(type.getName())) {
+            return null;
+        }
+        matchedElements.add(element);
+        return element;
+    }
+
+    /**
+     * Add the element as next child of the parent. Existing elements are only moved, if they are not already at this position.
+     *
+     * @param parent the new parent element
+     * @param element a new or an existing element
+     * @param existing true if the element was found by {@link #findElement(String, DocStructType)}
+     * @return true if the element was added or moved
+     * @throws TypeNotAllowedAsChildException
+     */
+    public boolean placeElement(DocStruct parent, DocStruct element, boolean existing) throws TypeNotAllowedAsChildException {
+        int index = placedChildren.merge(parent, 1, Integer::sum) - 1;
+        List<DocStruct> children = parent.getAllChildren();
+        if (existing && element.getParent() == parent && children != null && index < children.size() && children.get(index) == element) {
+            return false;
+        }
+        if (element.getParent() != null) {
+            element.getParent().removeChild(element);
+        }
+        children = parent.getAllChildren();
+        if (children == null || index >= children.size()) {
+            parent.addChild(element);
+        } else {
+            parent.addChild(index, element);
+        }
+        if (!existing) {
+            added++;
+        }
+        return true;
+    }
+
+    /**
+     * Replace the page assignments of an existing element, if they differ from the given pages
+     *
+     * @param element the existing element
+     * @param pagesToAssign the pages of the row
+     * @return true if the assignments were replaced
+     */
+    public boolean assignPages(DocStruct element, List<DocStruct> pagesToAssign) {
+        List<Reference> refs = element.getAllToReferences(LOGICAL_PHYSICAL);
+        if (refs == null) {
+            refs = Collections.emptyList();
+        }
+        if (refs.size() == pagesToAssign.size()) {
+            boolean samePages = true;
+            for (int i = 0; i < refs.size() && samePages; i++) {
+                samePages = refs.get(i).getTarget() == pagesToAssign.get(i);
+            }
+            if (samePages) {
+                return false;
+            }
+        }
+        removeReferences(element);
+        for (DocStruct page : pagesToAssign) {
+            element.addReferenceTo(page, LOGICAL_PHYSICAL);
+        }
+        return true;
+    }
+
+    /**
+     * Count an existing element as changed or unchanged
+     *
+     * @param elementChanged true if the position, the pages or the metadata of the element were changed
+     */
+    public void countExisting(boolean elementChanged) {
+        if (elementChanged) {
+            changed++;
+        } else {
+            unchanged++;
+        }
+    }
+
+    /**
+     * Remove all existing elements that were not matched by any row, together with their page assignments
+     */
+    public void removeUnmatchedElements() {
+        List<DocStruct> unmatched = new ArrayList<>();
+        for (DocStruct element : existingElements) {
+            if (!matchedElements.contains(element)) {
+                unmatched.add(element);
+            }
+        }
+        StructureCleaner.removeElements(unmatched);
+        removed = unmatched.size();
+        log.info("Structure merged: {} added, {} changed, {} unchanged, {} removed", added, changed, unchanged, removed);
+    }
+
+    private static void removeReferences(DocStruct element) {
+        if (element.getAllToReferences() == null) {
+            return;
+        }
+        List<Reference> refs = new ArrayList<>(element.getAllToReferences());
+        for (Reference ref : refs) {
+            element.removeReferenceTo(ref.getTarget());
+        }
+    }
+}
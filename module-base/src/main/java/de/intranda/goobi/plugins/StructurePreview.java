@@ -0,0 +1,405 @@
+package de.intranda.goobi.plugins;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.Getter;
+import ugh.dl.DocStructType;
+
+/**
+ * Preview of the structure elements a spreadsheet creates. The parsed rows are kept in a small cache shared by all sessions, the preview itself
+ * only stores the expanded elements and the current page. Elements are only created for the rows of the current page, so that a spreadsheet
+ * with many thousand rows can be browsed without loading the whole tree.
+ */
+public class StructurePreview implements Serializable {
+
+    private static final long serialVersionUID = 4393137735209612517L;
+
+    // number of visible elements on a page
+    public static final int PAGE_SIZE = 50;
+    // number of parsed spreadsheets kept in the cache, the least recently used one is removed first
+    private static final int CACHE_SIZE = 10;
+    // maximum number of errors shown
+    private static final int MAX_ERRORS = 50;
+
+    private static final Map<Integer, ParsedSpreadsheet> CACHE = new LinkedHashMap<Integer, ParsedSpreadsheet>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = -1925683146284413064L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, ParsedSpreadsheet> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private final int processId;
+    // names of the configured metadata columns
+    private final List<String> columnNames;
+    // label of the elements created for each sheet, null if the rows of all sheets are added below the root element
+    private final String sheetLabel;
+
+    // ids of the expanded elements
+    private final BitSet expanded = new BitSet();
+    // current page, starting with 0
+    private int page = 0;
+
+    // created from the cached rows when needed, not stored in the session
+    private transient Tree tree;
+    // ids and levels of the elements that are not hidden by a collapsed parent, in tree order
+    private transient int[] visible;
+    private transient int[] levels;
+    private transient int visibleCount;
+
+    /**
+     * Store the parsed rows of a process in the cache and create a preview for them
+     *
+     * @param processId the id of the process
+     * @param parsed the parsed rows
+     * @param config the configuration used to parse the rows
+     * @return the preview
+     */
+    public static StructurePreview create(int processId, ParsedSpreadsheet parsed, ImportConfiguration config) {
+        cache(processId, parsed);
+        List<String> columnNames = new ArrayList<>();
+        for (Column column : config.getColumns()) {
+            columnNames.add(column.getColumnName());
+        }
+        // same rule as for the import, an element is created for each sheet if a structure type is configured for it
+        String sheetLabel = config.isMultipleSheets() && StringUtils.isNotBlank(config.getSheetDocstruct()) ? config.getSheetDocstruct() : null;
+        return new StructurePreview(processId, columnNames, sheetLabel);
+    }
+
+    StructurePreview(int processId, List<String> columnNames, String sheetLabel) {
+        this.processId = processId;
+        this.columnNames = columnNames;
+        this.sheetLabel = sheetLabel;
+    }
+
+    static synchronized void cache(int processId, ParsedSpreadsheet parsed) {
+        CACHE.put(processId, parsed);
+    }
+
+    /**
+     *
+     * @param processId the id of the process
+     * @return the cached rows of the process, null if they were not parsed or are no longer cached
+     */
+    public static synchronized ParsedSpreadsheet getCached(int processId) {
+        return CACHE.get(processId);
+    }
+
+    /**
+     * Remove the rows of a process from the cache, e.g. once they are imported
+     *
+     * @param processId the id of the process
+     * @return the cached rows of the process, null if they were not parsed or are no longer cached
+     */
+    public static synchronized ParsedSpreadsheet removeCached(int processId) {
+        return CACHE.remove(processId);
+    }
+
+    /**
+     *
+     * @return false if the parsed rows were removed from the cache and the spreadsheet has to be parsed again
+     */
+    public boolean isAvailable() {
+        return getTree() != null;
+    }
+
+    private Tree getTree() {
+        if (tree == null) {
+            ParsedSpreadsheet parsed = getCached(processId);
+            if (parsed != null) {
+                tree = new Tree(parsed, sheetLabel != null);
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Collect the visible elements with a depth first walk. Children of collapsed elements are skipped without being visited.
+     */
+    private void updateVisible() {
+        Tree t = getTree();
+        if (t == null) {
+            visibleCount = 0;
+            return;
+        }
+        if (visible == null) {
+            visible = new int[Math.max(16, Math.min(t.root, 1024))];
+            levels = new int[visible.length];
+        }
+        visibleCount = 0;
+        int[] stack = new int[16];
+        int stackSize = 0;
+        int node = t.firstChild[t.root];
+        int level = 0;
+        while (node >= 0) {
+            if (visibleCount == visible.length) {
+                visible = Arrays.copyOf(visible, visibleCount * 2);
+                levels = Arrays.copyOf(levels, visibleCount * 2);
+            }
+            visible[visibleCount] = node;
+            levels[visibleCount] = level;
+            visibleCount++;
+            if (expanded.get(node) && t.firstChild[node] >= 0) {
+                if (stackSize == stack.length) {
+                    stack = Arrays.copyOf(stack, stackSize * 2);
+                }
+                stack[stackSize++] = node;
+                node = t.firstChild[node];
+                level++;
+            } else {
+                node = t.nextSibling[node];
+                // continue with the next sibling of the closest ancestor
+                while (node < 0 && stackSize > 0) {
+                    node = t.nextSibling[stack[--stackSize]];
+                    level--;
+                }
+            }
+        }
+        page = Math.max(0, Math.min(page, getPageCount() - 1));
+    }
+
+    private int getVisibleCount() {
+        if (visible == null) {
+            updateVisible();
+        }
+        return visibleCount;
+    }
+
+    /**
+     *
+     * @return the elements on the current page
+     */
+    public List<PreviewNode> getNodes() {
+        List<PreviewNode> nodes = new ArrayList<>();
+        int count = getVisibleCount();
+        for (int i = page * PAGE_SIZE; i < Math.min(count, (page + 1) * PAGE_SIZE); i++) {
+            nodes.add(createNode(visible[i], levels[i]));
+        }
+        return nodes;
+    }
+
+    private PreviewNode createNode(int id, int level) {
+        Tree t = getTree();
+        PreviewNode node = new PreviewNode(id, level, t.firstChild[id] >= 0, expanded.get(id));
+        if (id >= t.rowCount) {
+            // element for a sheet
+            node.type = sheetLabel;
+            node.title = t.getSheet(id - t.rowCount).getSheetName();
+            return node;
+        }
+        int sheetIndex = t.getSheetIndex(id);
+        StructureRows rows = t.getSheet(sheetIndex).getRows();
+        int row = id - t.sheetOffsets[sheetIndex];
+        DocStructType type = rows.getDocStructType(row);
+        node.rowNumber = rows.getRowNumber(row);
+        node.type = type == null ? "" : type.getName();
+        node.identifier = rows.getIdentifier(row);
+        node.pages = rows.getStartPage(row) == rows.getEndPage(row) ? String.valueOf(rows.getStartPage(row))
+                : rows.getStartPage(row) + "-" + rows.getEndPage(row);
+        List<String> values = rows.getColumnValues(row);
+        for (int i = 0; i < values.size(); i++) {
+            if (StringUtils.isNotBlank(values.get(i))) {
+                node.metadata.add(columnNames.get(i) + ": " + values.get(i));
+                if (node.title == null) {
+                    node.title = values.get(i);
+                }
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Expand or collapse an element
+     *
+     * @param id the id of the element
+     */
+    public void toggle(int id) {
+        expanded.flip(id);
+        updateVisible();
+    }
+
+    /**
+     * Expand all elements with children
+     */
+    public void expandAll() {
+        Tree t = getTree();
+        if (t != null) {
+            for (int id = 0; id < t.root; id++) {
+                if (t.firstChild[id] >= 0) {
+                    expanded.set(id);
+                }
+            }
+        }
+        updateVisible();
+    }
+
+    public void collapseAll() {
+        expanded.clear();
+        updateVisible();
+    }
+
+    public void firstPage() {
+        page = 0;
+    }
+
+    public void previousPage() {
+        page = Math.max(0, page - 1);
+    }
+
+    public void nextPage() {
+        page = Math.min(getPageCount() - 1, page + 1);
+    }
+
+    public void lastPage() {
+        page = getPageCount() - 1;
+    }
+
+    /**
+     *
+     * @return the current page, starting with 1
+     */
+    public int getPageNumber() {
+        return page + 1;
+    }
+
+    public int getPageCount() {
+        return Math.max(1, (getVisibleCount() + PAGE_SIZE - 1) / PAGE_SIZE);
+    }
+
+    /**
+     *
+     * @return the number of structure elements, without the elements for the sheets
+     */
+    public int getElementCount() {
+        Tree t = getTree();
+        return t == null ? 0 : t.elementCount;
+    }
+
+    /**
+     *
+     * @return the errors of all sheets, the rows can only be imported if there are no errors
+     */
+    public List<String> getErrors() {
+        List<String> errors = new ArrayList<>();
+        Tree t = getTree();
+        if (t != null) {
+            for (SheetParser sheet : t.parsed.getSheets()) {
+                List<String> sheetErrors = new ArrayList<>(sheet.getErrors());
+                sheetErrors.addAll(sheet.getRows().getTreeErrors());
+                for (String error : sheetErrors) {
+                    if (errors.size() == MAX_ERRORS) {
+                        return errors;
+                    }
+                    errors.add(sheet.withSheetName(error));
+                }
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * The structure of the parsed rows as arrays of element ids. The rows of all sheets are numbered consecutively, followed by one element for
+     * each sheet, if elements are created for the sheets, and the root element. Rows on level 0 or below are not part of the tree.
+     */
+    private static class Tree {
+
+        private final ParsedSpreadsheet parsed;
+        // index of the first row of each sheet
+        private final int[] sheetOffsets;
+        private final int rowCount;
+        private final int root;
+        private int elementCount;
+        private final int[] firstChild;
+        private final int[] nextSibling;
+
+        Tree(ParsedSpreadsheet parsed, boolean withSheetElements) {
+            this.parsed = parsed;
+            List<SheetParser> sheets = parsed.getSheets();
+            sheetOffsets = new int[sheets.size()];
+            int count = 0;
+            for (int i = 0; i < sheets.size(); i++) {
+                sheetOffsets[i] = count;
+                count += sheets.get(i).getRows().size();
+            }
+            rowCount = count;
+            int sheetElements = withSheetElements ? sheets.size() : 0;
+            root = rowCount + sheetElements;
+            firstChild = new int[root + 1];
+            nextSibling = new int[root + 1];
+            Arrays.fill(firstChild, -1);
+            Arrays.fill(nextSibling, -1);
+
+            // add the children in reverse order at the beginning, so that they end up in row order
+            for (int sheetIndex = sheets.size() - 1; sheetIndex >= 0; sheetIndex--) {
+                StructureRows rows = sheets.get(sheetIndex).getRows();
+                int[] parents = rows.getParents();
+                int sheetParent = sheetElements > 0 ? rowCount + sheetIndex : root;
+                for (int row = rows.size() - 1; row >= 0; row--) {
+                    if (rows.getHierarchy(row) > 0) {
+                        int parent = parents[row] >= 0 ? sheetOffsets[sheetIndex] + parents[row] : sheetParent;
+                        addFirstChild(parent, sheetOffsets[sheetIndex] + row);
+                        elementCount++;
+                    }
+                }
+                if (sheetElements > 0) {
+                    addFirstChild(root, sheetParent);
+                }
+            }
+        }
+
+        private void addFirstChild(int parent, int child) {
+            nextSibling[child] = firstChild[parent];
+            firstChild[parent] = child;
+        }
+
+        private int getSheetIndex(int row) {
+            // the last sheet starting before the row, empty sheets share the offset of the next sheet
+            int index = sheetOffsets.length - 1;
+            while (sheetOffsets[index] > row) {
+                index--;
+            }
+            return index;
+        }
+
+        private SheetParser getSheet(int sheetIndex) {
+            return parsed.getSheets().get(sheetIndex);
+        }
+    }
+
+    /**
+     * A structure element on the current page
+     */
+    @Getter
+    public static class PreviewNode {
+
+        private final int id;
+        // level in the tree, starting with 0
+        private final int level;
+        private final boolean hasChildren;
+        private final boolean expanded;
+        // row number in the spreadsheet, 0 for the element of a sheet
+        private int rowNumber;
+        private String type;
+        private String title;
+        private String identifier;
+        private String pages;
+        private final List<String> metadata = new ArrayList<>();
+
+        PreviewNode(int id, int level, boolean hasChildren, boolean expanded) {
+            this.id = id;
+            this.level = level;
+            this.hasChildren = hasChildren;
+            this.expanded = expanded;
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ugh.dl.DocStructType;
+
+/**
+ * The parsed data rows of a sheet, stored by column. Numbers are kept in primitive arrays and values that occur in more than one row are
+ * stored only once, so that even a large sheet needs only a few objects between parsing and import. Rows are parsed and validated completely
+ * before the first structure element is changed.
+ * <p>
+ * The tree of the rows is given either by the hierarchy level of each row, in which case the rows must be in tree order, or by an id and the
+ * id of the parent row, in which case the rows can be in any order.
+ * <p>
+ * For very large sheets the values of the metadata columns can be written to a {@link SpoolFile} instead, only their position in the file is
+ * kept in memory. The values of a row are read again when its element is created.
+ */
+public class StructureRows {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final int numberOfColumns;
+    private int size = 0;
+
+    // row number in the spreadsheet, used in error messages
+    private int[] rowNumbers = new int[INITIAL_CAPACITY];
+    private DocStructType[] docStructTypes = new DocStructType[INITIAL_CAPACITY];
+    private int[] hierarchies = new int[INITIAL_CAPACITY];
+    private String[] identifiers = new String[INITIAL_CAPACITY];
+    private int[] startPages = new int[INITIAL_CAPACITY];
+    private int[] endPages = new int[INITIAL_CAPACITY];
+    // id and parent id of each row, null if the tree is given by the hierarchy levels
+    private String[] ids;
+    private String[] parentIds;
+    // values of the configured metadata columns, by column and row. Null if the values are written to the spool
+    private final String[][] columnValues;
+    // position of the values of each row in the spool, null if the values are kept in memory
+    private final SpoolFile spool;
+    private long[] valueOffsets;
+
+    // canonical instance of each value, only needed while rows are added
+    private Map<String, String> values = new HashMap<>();
+
+    // the tree of the rows, built on first access after the last row was added
+    private int[] parents;
+    private int[] order;
+    private List<String> treeErrors;
+
+    /**
+     *
+     * @param numberOfColumns the number of configured metadata columns
+     */
+    public StructureRows(int numberOfColumns) {
+        this(numberOfColumns, false);
+    }
+
+    /**
+     *
+     * @param numberOfColumns the number of configured metadata columns
+     * @param parentIdMode true if the tree is given by the id and parent id of each row instead of the hierarchy level
+     */
+    public StructureRows(int numberOfColumns, boolean parentIdMode) {
+        this(numberOfColumns, parentIdMode, null);
+    }
+
+    /**
+     *
+     * @param numberOfColumns the number of configured metadata columns
+     * @param parentIdMode true if the tree is given by the id and parent id of each row instead of the hierarchy level
+     * @param spool the file for the values of the metadata columns, null to keep them in memory. The spool must stay open as long as the rows
+     *            are used
+     */
+    public StructureRows(int numberOfColumns, boolean parentIdMode, SpoolFile spool) {
+        this.numberOfColumns = numberOfColumns;
+        this.spool = spool;
+        if (spool == null) {
+            columnValues = new String[numberOfColumns][INITIAL_CAPACITY];
+        } else {
+            columnValues = null;
+            valueOffsets = new long[INITIAL_CAPACITY];
+        }
+        if (parentIdMode) {
+            ids = new String[INITIAL_CAPACITY];
+            parentIds = new String[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * Add a row
+     *
+     * @param rowNumber the row number in the spreadsheet
+     * @param docStructType the structure type, null if the type is not configured
+     * @param hierarchy the hierarchy level
+     * @param identifier the identifier, can be empty
+     * @param startPage the first image
+     * @param endPage the last image
+     * @param rowValues the values of the configured metadata columns, in configuration order
+     */
+    public void add(int rowNumber, DocStructType docStructType, int hierarchy, String identifier, int startPage, int endPage,
+            List<String> rowValues) {
+        add(rowNumber, docStructType, hierarchy, identifier, null, null, startPage, endPage, rowValues);
+    }
+
+    /**
+     * Add a row
+     *
+     * @param rowNumber the row number in the spreadsheet
+     * @param docStructType the structure type, null if the type is not configured
+     * @param hierarchy the hierarchy level
+     * @param identifier the identifier, can be empty
+     * @param id the id of the row, only used in parent id mode
+     * @param parentId the id of the parent row, empty for rows directly below the root element. Only used in parent id mode
+     * @param startPage the first image
+     * @param endPage the last image
+     * @param rowValues the values of the configured metadata columns, in configuration order
+     * @throws UncheckedIOException if the values cannot be written to the spool
+     */
+    public void add(int rowNumber, DocStructType docStructType, int hierarchy, String identifier, String id, String parentId, int startPage,
+            int endPage, List<String> rowValues) {
+        if (size == rowNumbers.length) {
+            resize(size * 2);
+        }
+        if (parentIds != null) {
+            ids[size] = id == null ? "" : id;
+            parentIds[size] = parentId == null ? "" : parentId;
+        }
+        rowNumbers[size] = rowNumber;
+        docStructTypes[size] = docStructType;
+        hierarchies[size] = hierarchy;
+        identifiers[size] = canonical(identifier);
+        startPages[size] = startPage;
+        endPages[size] = endPage;
+        if (spool == null) {
+            for (int column = 0; column < numberOfColumns; column++) {
+                columnValues[column][size] = canonical(column < rowValues.size() ? rowValues.get(column) : "");
+            }
+        } else {
+            List<String> spooled = new ArrayList<>(numberOfColumns);
+            for (int column = 0; column < numberOfColumns; column++) {
+                spooled.add(column < rowValues.size() ? rowValues.get(column) : "");
+            }
+            try {
+                valueOffsets[size] = spool.writeStrings(spooled);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        size++;
+        parents = null;
+    }
+
+    private String canonical(String value) {
+        if (values == null) {
+            return value;
+        }
+        String existing = values.putIfAbsent(value, value);
+        return existing == null ? value : existing;
+    }
+
+    private void resize(int capacity) {
+        rowNumbers = Arrays.copyOf(rowNumbers, capacity);
+        docStructTypes = Arrays.copyOf(docStructTypes, capacity);
+        hierarchies = Arrays.copyOf(hierarchies, capacity);
+        identifiers = Arrays.copyOf(identifiers, capacity);
+        startPages = Arrays.copyOf(startPages, capacity);
+        endPages = Arrays.copyOf(endPages, capacity);
+        if (parentIds != null) {
+            ids = Arrays.copyOf(ids, capacity);
+            parentIds = Arrays.copyOf(parentIds, capacity);
+        }
+        if (spool == null) {
+            for (int column = 0; column < numberOfColumns; column++) {
+                columnValues[column] = Arrays.copyOf(columnValues[column], capacity);
+            }
+        } else {
+            valueOffsets = Arrays.copyOf(valueOffsets, capacity);
+        }
+    }
+
+    /**
+     * Release the unused capacity and the lookup of repeated values, once all rows are added
+     */
+    public void compact() {
+        if (size < rowNumbers.length) {
+            resize(size);
+        }
+        values = null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getRowNumber(int row) {
+        return rowNumbers[row];
+    }
+
+    public DocStructType getDocStructType(int row) {
+        return docStructTypes[row];
+    }
+
+    public int getHierarchy(int row) {
+        return hierarchies[row];
+    }
+
+    public String getIdentifier(int row) {
+        return identifiers[row];
+    }
+
+    public int getStartPage(int row) {
+        return startPages[row];
+    }
+
+    public int getEndPage(int row) {
+        return endPages[row];
+    }
+
+    public boolean isParentIdMode() {
+        return parentIds != null;
+    }
+
+    /**
+     * Find the parent of each row. With hierarchy levels, the parent is the closest preceding row with a lower level, so levels may be skipped.
+     * A row on level 0 is the publication itself, the following rows start again directly below the root element. In parent id mode, the
+     * parent is the row with the parent id.
+     *
+     * @return the index of the parent row of each row, -1 for rows directly below the root element, for rows on level 0 or below and for rows
+     *         whose parent is invalid. The array is shared and must not be changed
+     */
+    public int[] getParents() {
+        buildTree();
+        return parents;
+    }
+
+    /**
+     * 
+     * @return the indexes of all rows in the order their elements are created: each parent before its children, children in row order. The
+     *         array is shared and must not be changed
+     */
+    public int[] getOrder() {
+        buildTree();
+        return order;
+    }
+
+    /**
+     * 
+     * @return the rows whose parent is invalid: unknown parent ids, duplicate ids and cycles. Always empty with hierarchy levels
+     */
+    public List<String> getTreeErrors() {
+        buildTree();
+        return treeErrors;
+    }
+
+    private void buildTree() {
+        if (parents != null) {
+            return;
+        }
+        treeErrors = new ArrayList<>();
+        if (parentIds == null) {
+            buildTreeFromLevels();
+        } else {
+            buildTreeFromParentIds();
+        }
+    }
+
+    /**
+     * The ancestors of the current row are kept on a stack, so the parent of each row is found without walking up the tree one level at a time
+     */
+    private void buildTreeFromLevels() {
+        parents = new int[size];
+        order = new int[size];
+        // rows from the root element down to the previous row, with increasing levels
+        int[] ancestors = new int[INITIAL_CAPACITY];
+        int depth = 0;
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+            int hierarchy = hierarchies[i];
+            if (hierarchy <= 0) {
+                // the publication itself or an invalid level
+                parents[i] = -1;
+                if (hierarchy == 0) {
+                    depth = 0;
+                }
+                continue;
+            }
+            while (depth > 0 && hierarchies[ancestors[depth - 1]] >= hierarchy) {
+                depth--;
+            }
+            parents[i] = depth > 0 ? ancestors[depth - 1] : -1;
+            if (depth == ancestors.length) {
+                ancestors = Arrays.copyOf(ancestors, depth * 2);
+            }
+            ancestors[depth++] = i;
+        }
+    }
+
+    /**
+     * Resolve the parent ids with an index of all ids in a single pass, then order the rows by a depth first traversal from the root element
+     */
+    private void buildTreeFromParentIds() {
+        parents = new int[size];
+        Map<String, Integer> index = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            if (ids[i].isEmpty()) {
+                treeErrors.add("Row " + rowNumbers[i] + " has no id");
+            } else if (index.putIfAbsent(ids[i], i) != null) {
+                treeErrors.add("Id '" + ids[i] + "' in row " + rowNumbers[i] + " is already used in row " + rowNumbers[index.get(ids[i])]);
+            }
+        }
+
+        // children as linked lists, added in reverse order so that they end up in row order
+        int[] firstChild = new int[size + 1];
+        int[] nextSibling = new int[size];
+        Arrays.fill(firstChild, -1);
+        for (int i = size - 1; i >= 0; i--) {
+            parents[i] = -1;
+            if (!parentIds[i].isEmpty()) {
+                Integer parent = index.get(parentIds[i]);
+                if (parent == null) {
+                    treeErrors.add("Parent id '" + parentIds[i] + "' in row " + rowNumbers[i] + " does not exist");
+                } else {
+                    parents[i] = parent;
+                }
+            }
+            int parentSlot = parents[i] >= 0 ? parents[i] : size;
+            nextSibling[i] = firstChild[parentSlot];
+            firstChild[parentSlot] = i;
+        }
+
+        order = new int[size];
+        int count = 0;
+        int[] stack = new int[size];
+        int depth = 0;
+        for (int child = firstChild[size]; child >= 0; child = nextSibling[child]) {
+            stack[depth++] = child;
+            // traverse each top level row in pre-order
+            while (depth > 0) {
+                int row = stack[--depth];
+                order[count++] = row;
+                int children = 0;
+                for (int c = firstChild[row]; c >= 0; c = nextSibling[c]) {
+                    children++;
+                }
+                // push the children in reverse order, so that the first child is visited next
+                int position = depth + children;
+                for (int c = firstChild[row]; c >= 0; c = nextSibling[c]) {
+                    stack[--position] = c;
+                }
+                depth += children;
+            }
+        }
+        if (count < size) {
+            // the remaining rows are their own ancestors
+            boolean[] visited = new boolean[size];
+            for (int i = 0; i < count; i++) {
+                visited[order[i]] = true;
+            }
+            for (int i = 0; i < size; i++) {
+                if (!visited[i]) {
+                    treeErrors.add("Row " + rowNumbers[i] + " is not below the root element, its parent ids form a cycle");
+                    parents[i] = -1;
+                    order[count++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     *
+     * @param row the index of the row
+     * @return the values of the configured metadata columns, in configuration order
+     * @throws UncheckedIOException if the values cannot be read from the spool
+     */
+    public List<String> getColumnValues(int row) {
+        if (spool != null) {
+            try {
+                return spool.readStrings(valueOffsets[row]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return new AbstractList<String>() {
+
+            @Override
+            public String get(int column) {
+                return columnValues[column][row];
+            }
+
+            @Override
+            public int size() {
+                return numberOfColumns;
+            }
+        };
+    }
+}
@@ -0,0 +1,85 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DelimitedFileReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSimpleRows() throws Exception {
+        List<List<String>> rows = read("a,b,c\n1,,3\n", ',', StandardCharsets.UTF_8);
+        assertEquals(2, rows.size());
+        assertEquals(Arrays.asList("a", "b", "c"), rows.get(0));
+        assertEquals(Arrays.asList("1", "", "3"), rows.get(1));
+    }
+
+    @Test
+    public void testQuotedCells() throws Exception {
+        List<List<String>> rows = read("\"a,b\";\"say \"\"hello\"\"\";\"line\r\nbreak\"\r\nlast;\"\"\r\n", ';', StandardCharsets.UTF_8);
+        assertEquals(2, rows.size());
+        assertEquals(Arrays.asList("a,b", "say \"hello\"", "line\r\nbreak"), rows.get(0));
+        assertEquals(Arrays.asList("last", ""), rows.get(1));
+    }
+
+    @Test
+    public void testEmptyLinesAndMissingLineBreak() throws Exception {
+        List<List<String>> rows = read("a\tb\n\n\nc\td", '\t', StandardCharsets.UTF_8);
+        assertEquals(4, rows.size());
+        assertEquals(Arrays.asList("a", "b"), rows.get(0));
+        assertEquals(0, rows.get(1).size());
+        assertEquals(0, rows.get(2).size());
+        assertEquals(Arrays.asList("c", "d"), rows.get(3));
+    }
+
+    @Test
+    public void testEncoding() throws Exception {
+        List<List<String>> rows = read("\uFEFFÄbtissin,Straße\n", ',', StandardCharsets.UTF_8);
+        assertEquals(Arrays.asList("Äbtissin", "Straße"), rows.get(0));
+
+        rows = read("Äbtissin,Straße\n", ',', StandardCharsets.ISO_8859_1);
+        assertEquals(Arrays.asList("Äbtissin", "Straße"), rows.get(0));
+    }
+
+    @Test
+    public void testStopReading() throws Exception {
+        Path file = write("1\n2\n3\n4\n", StandardCharsets.UTF_8);
+        List<Integer> rowNumbers = new ArrayList<>();
+        new DelimitedFileReader(',', StandardCharsets.UTF_8).read(file, (rowNumber, values) -> {
+            rowNumbers.add(rowNumber);
+            return rowNumber < 2;
+        });
+        assertEquals(Arrays.asList(1, 2), rowNumbers);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSeparator() {
+        new DelimitedFileReader('"', StandardCharsets.UTF_8);
+    }
+
+    private List<List<String>> read(String content, char separator, Charset charset) throws Exception {
+        Path file = write(content, charset);
+        List<List<String>> rows = new ArrayList<>();
+        new DelimitedFileReader(separator, charset).read(file, (rowNumber, values) -> rows.add(new ArrayList<>(values)));
+        return rows;
+    }
+
+    private Path write(String content, Charset charset) throws Exception {
+        Path file = folder.newFile().toPath();
+        Files.write(file, content.getBytes(charset));
+        return file;
+    }
+}
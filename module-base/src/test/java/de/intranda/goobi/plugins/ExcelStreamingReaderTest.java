@@ -0,0 +1,133 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExcelStreamingReaderTest {
+
+    private static String resourcesFolder;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+    }
+
+    @Test
+    public void testSameRowsAsWorkbookReader() throws Exception {
+        Path excelFile = Paths.get(resourcesFolder, "20231002_ImportStrukturdatenBsp.xlsx");
+        List<String> expected = new ArrayList<>();
+        new ExcelWorkbookReader().read(excelFile, (rowNumber, values) -> expected.add(rowNumber + ":" + new ArrayList<>(values)));
+
+        List<String> actual = new ArrayList<>();
+        new ExcelStreamingReader().read(excelFile, (rowNumber, values) -> actual.add(rowNumber + ":" + new ArrayList<>(values)));
+
+        assertEquals(133, actual.size());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testStopReading() throws Exception {
+        Path excelFile = Paths.get(resourcesFolder, "20231002_ImportStrukturdatenBsp.xlsx");
+        List<Integer> rows = new ArrayList<>();
+        new ExcelStreamingReader().read(excelFile, (rowNumber, values) -> {
+            rows.add(rowNumber);
+            return rowNumber < 5;
+        });
+        assertEquals(5, rows.size());
+        assertEquals("Ebene", getFirstRow(excelFile).get(4));
+    }
+
+    @Test
+    public void testSheetSelection() throws Exception {
+        Path excelFile = folder.newFile("sheets.xlsx").toPath();
+        try (XSSFWorkbook wb = new XSSFWorkbook(); OutputStream out = Files.newOutputStream(excelFile)) {
+            for (String name : Arrays.asList("Volume 1", "Volume 2", "Volume 3")) {
+                Sheet sheet = wb.createSheet(name);
+                sheet.createRow(0).createCell(0).setCellValue("header");
+                sheet.createRow(1).createCell(0).setCellValue(name);
+            }
+            wb.write(out);
+        }
+
+        for (SpreadsheetReader reader : Arrays.asList(new ExcelStreamingReader(), new ExcelWorkbookReader())) {
+            assertEquals(Arrays.asList("Volume 1", "Volume 2", "Volume 3"), reader.getSheetNames(excelFile));
+            List<String> values = new ArrayList<>();
+            reader.read(excelFile, 1, (rowNumber, row) -> values.add(rowNumber + ":" + row.get(0)));
+            assertEquals(Arrays.asList("1:header", "2:Volume 2"), values);
+        }
+    }
+
+    @Test
+    public void testSameCellValuesInBothReaders() throws Exception {
+        Path excelFile = folder.newFile("cells.xlsx").toPath();
+        try (XSSFWorkbook wb = new XSSFWorkbook(); OutputStream out = Files.newOutputStream(excelFile)) {
+            Sheet sheet = wb.createSheet("cells");
+            // header in row 2, followed by an empty row
+            Row header = sheet.createRow(1);
+            header.createCell(0).setCellValue("title");
+            header.createCell(1).setCellValue(1);
+            header.createCell(2).setCellFormula("1+1");
+            header.createCell(3).setCellValue(true);
+            Row row = sheet.createRow(3);
+            row.createCell(0).setCellValue("a");
+            row.createCell(1).setCellValue(12);
+            row.createCell(2).setCellFormula("A4&\"x\"");
+            row.createCell(3).setCellValue(false);
+            row = sheet.createRow(4);
+            row.createCell(1).setCellFormula("B4*2");
+            row.createCell(2).setCellValue(2.7);
+            row.createCell(4).setCellFormula("1>0");
+            wb.getCreationHelper().createFormulaEvaluator().evaluateAll();
+            wb.write(out);
+        }
+
+        List<String> expected = Arrays.asList("2:[title, 1.0, 1+1, true]", "4:[a, 12, ax, false]", "5:[, 24, 2, , true]");
+        for (SpreadsheetReader reader : Arrays.asList(new ExcelStreamingReader(), new ExcelWorkbookReader())) {
+            List<String> values = new ArrayList<>();
+            reader.read(excelFile, new RowHandler() {
+                @Override
+                public boolean handleRow(int rowNumber, List<String> row) {
+                    values.add(rowNumber + ":" + new ArrayList<>(row));
+                    return true;
+                }
+
+                @Override
+                public boolean isHeaderRow(int rowNumber) {
+                    return rowNumber == 2;
+                }
+            });
+            assertEquals(expected, values);
+        }
+    }
+
+    private List<String> getFirstRow(Path excelFile) throws Exception {
+        List<String> header = new ArrayList<>();
+        new ExcelStreamingReader().read(excelFile, (rowNumber, values) -> {
+            header.addAll(values);
+            return false;
+        });
+        return header;
+    }
+}
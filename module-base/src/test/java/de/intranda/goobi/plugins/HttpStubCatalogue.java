@@ -0,0 +1,149 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import de.unigoettingen.sub.search.opac.ConfigOpacCatalogue;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Fileformat;
+import ugh.dl.Metadata;
+import ugh.dl.Prefs;
+import ugh.exceptions.UGHException;
+import ugh.fileformats.mets.MetsMods;
+
+/**
+ * Catalogue for the scaling tests, served over HTTP on a local port. Each query for one or more identifiers combined with OR is answered after
+ * the configured latency with one record per identifier, so the import pays for connections, latency and parsing like with a real catalogue.
+ * Like a catalogue plugin, a search returns the first record and remembers the number of hits. The records contain the identifier in
+ * CatalogIDDigital, a subtitle and a shelfmark.
+ */
+public class HttpStubCatalogue implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final long latency;
+    private final AtomicInteger queries = new AtomicInteger();
+    // number of hits of the last search on each thread
+    private final ThreadLocal<Integer> hits = ThreadLocal.withInitial(() -> 0);
+
+    /**
+     * Start the catalogue on a free port of the loopback interface
+     *
+     * @param latency the time in milliseconds before each query is answered
+     * @throws IOException if the server cannot be started
+     */
+    public HttpStubCatalogue(long latency) throws IOException {
+        this.latency = latency;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/search", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        queries.incrementAndGet();
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        String query = exchange.getRequestURI().getRawQuery();
+        String identifiers = query == null ? "" : URLDecoder.decode(query.substring(query.indexOf('=') + 1), StandardCharsets.UTF_8);
+        StringBuilder body = new StringBuilder();
+        for (String identifier : identifiers.split(",")) {
+            if (!identifier.isEmpty()) {
+                body.append(identifier).append('\t').append("an ").append(identifier).append('\t').append("Cod. Ms. ").append(identifier).append('\n');
+            }
+        }
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     *
+     * @return the number of queries received so far
+     */
+    public int getQueries() {
+        return queries.get();
+    }
+
+    /**
+     *
+     * @return the number of hits of the last search on the calling thread
+     */
+    public int getHitcount() {
+        return hits.get();
+    }
+
+    /**
+     * Query the catalogue for one identifier or several identifiers combined with OR
+     *
+     * @return the first record or null
+     */
+    public Fileformat search(String searchField, String query, ConfigOpacCatalogue coc, Prefs prefs) throws Exception {
+        List<String> terms = new ArrayList<>();
+        for (String term : query.split(" OR ")) {
+            // batch queries contain quoted identifiers
+            terms.add(term.startsWith("\"") && term.endsWith("\"") && term.length() > 1 ? term.substring(1, term.length() - 1) : term);
+        }
+        String identifiers = String.join(",", terms);
+        URL url = URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/search?"
+                + URLEncoder.encode(searchField, StandardCharsets.UTF_8) + "=" + URLEncoder.encode(identifiers, StandardCharsets.UTF_8)).toURL();
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lines.add(line);
+            }
+        }
+        hits.set(lines.size());
+        return lines.isEmpty() ? null : createRecord(prefs, lines.get(0).split("\t"));
+    }
+
+    private static Fileformat createRecord(Prefs prefs, String[] fields) throws UGHException {
+        Fileformat fileformat = new MetsMods(prefs);
+        DigitalDocument digDoc = new DigitalDocument();
+        fileformat.setDigitalDocument(digDoc);
+        DocStruct logical = digDoc.createDocStruct(prefs.getDocStrctTypeByName("Monograph"));
+        digDoc.setLogicalDocStruct(logical);
+        addMetadata(prefs, logical, "CatalogIDDigital", fields[0]);
+        addMetadata(prefs, logical, "TitleDocSub", fields[1]);
+        addMetadata(prefs, logical, "shelfmarksource", fields[2]);
+        return fileformat;
+    }
+
+    private static void addMetadata(Prefs prefs, DocStruct ds, String type, String value) throws UGHException {
+        Metadata md = new Metadata(prefs.getMetadataTypeByName(type));
+        md.setValue(value);
+        ds.addMetadata(md);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
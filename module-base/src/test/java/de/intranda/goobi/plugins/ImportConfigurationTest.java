@@ -0,0 +1,85 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ImportConfigurationTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ImportConfiguration config;
+
+    @Before
+    public void setUp() throws Exception {
+        String resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+        config = new ImportConfiguration(ImportConfigurationCache.readConfiguration(
+                Paths.get(resourcesFolder, "plugin_intranda_step_MetadataStructureImport.xml"), "Manuscripts", "Structure import"));
+    }
+
+    @Test
+    public void testConfiguration() {
+        assertEquals(',', config.getCsvSeparator());
+        assertEquals("Haupttitel", config.getColumns().get(0).getColumnName());
+        assertEquals("TitleDocMain", config.getColumns().get(0).getMetadataName());
+        assertEquals(4, config.getBatchWorkers());
+    }
+
+    @Test
+    public void testOpacFields() throws Exception {
+        assertTrue(config.getOpacFields().isEmpty());
+        assertTrue(config.isExcelWins());
+
+        XMLConfiguration xmlConfig = new XMLConfiguration();
+        xmlConfig.setExpressionEngine(new XPathExpressionEngine());
+        xmlConfig.load(new StringReader("<config><opacField name=\"TitleDocMain\" /><opacField name=\"shelfmarksource\" metadata=\"Shelfmark\" />"
+                + "<excelWins>false</excelWins></config>"));
+        ImportConfiguration opacConfig = new ImportConfiguration(xmlConfig.configurationAt("/"));
+        assertEquals("{TitleDocMain=TitleDocMain, shelfmarksource=Shelfmark}", opacConfig.getOpacFields().toString());
+        assertFalse(opacConfig.isExcelWins());
+    }
+
+    @Test
+    public void testValuesWithComma() throws Exception {
+        Path configFile = folder.newFile("plugin_intranda_step_MetadataStructureImport.xml").toPath();
+        Files.write(configFile, ("<config_plugin><config><project>*</project><step>*</step><csvSeparator>;</csvSeparator></config>"
+                + "<config><project>Manuscripts</project><step>*</step><csvSeparator>,</csvSeparator>"
+                + "<sheet>Volume 1, part 1</sheet><sheet>Volume 1, part 2</sheet></config></config_plugin>").getBytes(StandardCharsets.UTF_8));
+
+        ImportConfiguration commaConfig = new ImportConfiguration(ImportConfigurationCache.readConfiguration(configFile, "Manuscripts", "Import"));
+        assertEquals(',', commaConfig.getCsvSeparator());
+        assertEquals(Arrays.asList("Volume 1, part 1", "Volume 1, part 2"), commaConfig.getSheetNames());
+
+        ImportConfiguration defaultConfig = new ImportConfiguration(ImportConfigurationCache.readConfiguration(configFile, "Prints", "Import"));
+        assertEquals(';', defaultConfig.getCsvSeparator());
+        assertTrue(defaultConfig.getSheetNames().isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testColumnsAreImmutable() {
+        config.getColumns().clear();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testDocstructsAreImmutable() {
+        config.getDocstructs().clear();
+    }
+}
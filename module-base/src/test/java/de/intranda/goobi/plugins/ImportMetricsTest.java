@@ -0,0 +1,60 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class ImportMetricsTest {
+
+    @Test
+    public void testSummary() {
+        ImportMetrics metrics = new ImportMetrics();
+        metrics.addTime(ImportMetrics.Phase.PARSE, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(25));
+        metrics.addRows(120);
+        metrics.addCreatedElement();
+        metrics.addPageReferences(512);
+        metrics.addOpacRequest(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(300), false);
+        metrics.addOpacRequest(System.nanoTime(), true);
+
+        String summary = metrics.getSummary();
+        assertTrue(summary, summary.startsWith("Structure import: 120 rows, 1 new elements, 512 page assignments, 2 catalogue requests (1 failed"));
+        assertTrue(summary, summary.contains("Phases: parsing the rows 25 ms"));
+        assertTrue(summary, summary.contains(" ms, peak heap "));
+        assertTrue(metrics.getPeakHeapBytes() > 0);
+        assertEquals(1, metrics.getOpacLatencies(ImportMetrics.getLatencyBucket(300)));
+        assertEquals(1, metrics.getOpacLatencies(0));
+    }
+
+    @Test
+    public void testLatencyBuckets() {
+        assertEquals(0, ImportMetrics.getLatencyBucket(0));
+        assertEquals(0, ImportMetrics.getLatencyBucket(10));
+        assertEquals(1, ImportMetrics.getLatencyBucket(11));
+        assertEquals(ImportMetrics.LATENCY_BUCKETS.length, ImportMetrics.getLatencyBucket(60000));
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        ImportStatistics statistics = ImportStatistics.getInstance();
+        statistics.reset();
+        ImportMetrics metrics = new ImportMetrics();
+        metrics.addRows(10);
+        metrics.addOpacRequest(System.nanoTime(), false);
+        statistics.add(metrics, false);
+        statistics.add(metrics, true);
+        statistics.addSkipped();
+
+        ObjectName name = new ObjectName(ImportStatistics.OBJECT_NAME);
+        assertEquals(2L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Imports"));
+        assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "FailedImports"));
+        assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "SkippedImports"));
+        assertEquals(20L, statistics.getRows());
+        assertEquals(Long.valueOf(2), statistics.getOpacLatencies().get("<= 10 ms"));
+    }
+}
@@ -0,0 +1,109 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ImportProgressTest {
+
+    @Test
+    public void testProgress() throws Exception {
+        ImportProgress progress = new ImportProgress();
+        assertEquals(-1, progress.getRemainingSeconds());
+        assertEquals("progressReading[]", progress.getSummary(ImportProgressTest::translate));
+
+        ImportMetrics metrics = new ImportMetrics();
+        progress.start(200, metrics);
+        for (int i = 0; i < 50; i++) {
+            progress.addProcessedRow();
+        }
+        metrics.addOpacRequest(System.nanoTime(), false);
+
+        assertEquals(25, progress.getPercent());
+        assertTrue(progress.getRemainingSeconds() >= 0);
+        String summary = progress.getSummary(ImportProgressTest::translate);
+        assertTrue(summary, summary.startsWith("progressRows[50, 200, 1], progressRemaining["));
+        progress.checkCancelled();
+
+        progress.cancel();
+        try {
+            progress.checkCancelled();
+            fail();
+        } catch (ImportCancelledException e) {
+            assertEquals("The import was cancelled after 50 of 200 rows", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testBatchProgress() {
+        ImportProgress progress = new ImportProgress();
+        progress.startBatch(4);
+        progress.addProcessedRow();
+        progress.finish();
+        assertEquals("progressProcesses[1, 4], progressFinished[]", progress.getSummary(ImportProgressTest::translate));
+    }
+
+    @Test
+    public void testOneImportPerProcess() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ImportProgress progress = new ImportProgress();
+        assertTrue(BackgroundImport.start(42, progress, () -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        assertFalse(BackgroundImport.start(42, new ImportProgress(), () -> fail()));
+        assertSame(progress, BackgroundImport.getProgress(42));
+
+        release.countDown();
+        for (int i = 0; i < 100 && BackgroundImport.getProgress(42) != null; i++) {
+            Thread.sleep(10);
+        }
+        assertNull(BackgroundImport.getProgress(42));
+        assertTrue(progress.isFinished());
+    }
+
+    @Test
+    public void testBatchRegisteredForAllProcesses() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ImportProgress progress = new ImportProgress();
+        assertTrue(BackgroundImport.start(Arrays.asList(43, 44), progress, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertSame(progress, BackgroundImport.getProgress(44));
+        assertFalse(BackgroundImport.start(44, new ImportProgress(), () -> fail()));
+        // a batch with a process that is already imported is not started at all
+        assertFalse(BackgroundImport.start(Arrays.asList(45, 43), new ImportProgress(), () -> fail()));
+        assertNull(BackgroundImport.getProgress(45));
+
+        release.countDown();
+        for (int i = 0; i < 100 && BackgroundImport.getProgress(43) != null; i++) {
+            Thread.sleep(10);
+        }
+        assertNull(BackgroundImport.getProgress(43));
+        assertNull(BackgroundImport.getProgress(44));
+    }
+
+    private static String translate(String key, String[] parameters) {
+        return key.replace("plugin_intranda_step_MetadataStructureImport_", "") + Arrays.toString(parameters);
+    }
+}
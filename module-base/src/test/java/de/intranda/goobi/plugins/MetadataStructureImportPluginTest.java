@@ -2,9 +2,11 @@ package de.intranda.goobi.plugins;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -22,6 +24,7 @@ import org.goobi.beans.Project;
 import org.goobi.beans.Ruleset;
 import org.goobi.beans.Step;
 import org.goobi.beans.User;
+import org.goobi.production.enums.LogType;
 import org.goobi.production.enums.PluginReturnValue;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -35,11 +38,13 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.Helper;
 import de.sub.goobi.helper.VariableReplacer;
 import de.sub.goobi.helper.enums.StepStatus;
 import de.sub.goobi.metadaten.MetadatenHelper;
 import de.sub.goobi.persistence.managers.MetadataManager;
 import de.sub.goobi.persistence.managers.ProcessManager;
+import de.sub.goobi.persistence.managers.StepManager;
 import de.unigoettingen.sub.search.opac.ConfigOpac;
 import ugh.dl.Fileformat;
 import ugh.dl.Prefs;
@@ -47,7 +52,7 @@ import ugh.fileformats.mets.MetsMods;
 
 @RunWith(PowerMockRunner.class)
 @PrepareForTest({ MetadatenHelper.class, VariableReplacer.class, ConfigurationHelper.class, ProcessManager.class,
-        MetadataManager.class, ConfigOpac.class })
+        MetadataManager.class, ConfigOpac.class, Helper.class, StepManager.class })
 @PowerMockIgnore({ "javax.management.*", "javax.xml.*", "org.xml.*", "org.w3c.*", "javax.net.ssl.*", "jdk.internal.reflect.*" })
 public class MetadataStructureImportPluginTest {
 
@@ -58,6 +63,7 @@ public class MetadataStructureImportPluginTest {
 
     private File processDirectory;
     private File metadataDirectory;
+    private File configurationDirectory;
     private Process process;
     private Step step;
     private Prefs prefs;
@@ -98,9 +104,50 @@ public class MetadataStructureImportPluginTest {
 
     }
 
+    @Test
+    public void testFailedBackgroundImport() throws Exception {
+        PowerMock.mockStaticPartial(Helper.class, "addMessageToProcessJournal", "getTranslation");
+        // messages are not translated in the test, the key is returned instead
+        EasyMock.expect(Helper.getTranslation(EasyMock.anyString())).andAnswer(() -> (String) EasyMock.getCurrentArguments()[0]).anyTimes();
+        List<String> journal = Collections.synchronizedList(new ArrayList<>());
+        Helper.addMessageToProcessJournal(EasyMock.<Integer> anyObject(), EasyMock.<LogType> anyObject(), EasyMock.anyString());
+        EasyMock.expectLastCall().andAnswer(() -> {
+            journal.add((String) EasyMock.getCurrentArguments()[2]);
+            return null;
+        }).anyTimes();
+        PowerMock.replay(Helper.class);
+        PowerMock.mockStatic(StepManager.class);
+        StepManager.saveStep(step);
+        EasyMock.expectLastCall().anyTimes();
+        PowerMock.replay(StepManager.class);
+
+        // run the import in the background, the excel folder does not exist
+        Path configFile = Paths.get(configurationDirectory.getAbsolutePath(), "plugin_intranda_step_MetadataStructureImport.xml");
+        String configuration = new String(Files.readAllBytes(configFile), StandardCharsets.UTF_8);
+        configuration = configuration.replace("<runInBackground>false</runInBackground>", "<runInBackground>true</runInBackground>")
+                .replace("<excelFolder>{processpath}</excelFolder>", "<excelFolder>{processpath}/missing</excelFolder>");
+        Files.write(configFile, configuration.getBytes(StandardCharsets.UTF_8));
+        MetadataStructureImportStepPlugin plugin = new MetadataStructureImportStepPlugin();
+        plugin.initialize(step, "something");
+        assertEquals(PluginReturnValue.WAIT, plugin.run());
+
+        ImportProgress progress = plugin.getProgress();
+        for (int i = 0; i < 100 && !progress.isFinished(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(progress.isFinished());
+        assertEquals(StepStatus.ERROR, step.getBearbeitungsstatusEnum());
+        // the summary of the import is followed by the error of the step
+        assertEquals("plugin_intranda_step_MetadataStructureImport_importFailed", journal.get(journal.size() - 1));
+    }
+
     @Before
     public void setUp() throws Exception {
         metadataDirectory = folder.newFolder("metadata");
+        configurationDirectory = folder.newFolder("config");
+        Files.copy(Paths.get(resourcesFolder, "plugin_intranda_step_MetadataStructureImport.xml"),
+                Paths.get(configurationDirectory.getAbsolutePath(), "plugin_intranda_step_MetadataStructureImport.xml"));
+        ImportConfigurationCache.clear();
         processDirectory = new File(metadataDirectory + File.separator + "1");
         processDirectory.mkdirs();
         String metadataDirectoryName = metadataDirectory.getAbsolutePath() + File.separator;
@@ -131,7 +178,7 @@ public class MetadataStructureImportPluginTest {
         EasyMock.expect(configurationHelper.getRulesetFolder()).andReturn(resourcesFolder).anyTimes();
         EasyMock.expect(configurationHelper.getProcessImagesMainDirectoryName()).andReturn("00469418X_media").anyTimes();
         EasyMock.expect(configurationHelper.isUseMasterDirectory()).andReturn(true).anyTimes();
-        EasyMock.expect(configurationHelper.getConfigurationFolder()).andReturn(resourcesFolder).anyTimes();
+        EasyMock.expect(configurationHelper.getConfigurationFolder()).andReturn(configurationDirectory.getAbsolutePath() + File.separator).anyTimes();
         EasyMock.expect(configurationHelper.getNumberOfMetaBackups()).andReturn(0).anyTimes();
         EasyMock.expect(configurationHelper.getGoobiFolder()).andReturn(metadataDirectory.toString()).anyTimes();
         EasyMock.expect(configurationHelper.getScriptsFolder()).andReturn(metadataDirectory.toString()).anyTimes();
@@ -0,0 +1,456 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.easymock.EasyMock;
+import org.goobi.beans.Process;
+import org.goobi.beans.Project;
+import org.goobi.beans.Ruleset;
+import org.goobi.beans.Step;
+import org.goobi.beans.User;
+import org.goobi.production.enums.LogType;
+import org.goobi.production.enums.PluginReturnValue;
+import org.goobi.production.plugin.interfaces.IOpacPlugin;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.powermock.api.easymock.PowerMock;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import com.sun.management.ThreadMXBean;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.Helper;
+import de.sub.goobi.helper.VariableReplacer;
+import de.sub.goobi.helper.enums.StepStatus;
+import de.sub.goobi.metadaten.MetadatenHelper;
+import de.sub.goobi.persistence.managers.MetadataManager;
+import de.sub.goobi.persistence.managers.ProcessManager;
+import de.unigoettingen.sub.search.opac.ConfigOpac;
+import de.unigoettingen.sub.search.opac.ConfigOpacCatalogue;
+import ugh.dl.DocStruct;
+import ugh.dl.Fileformat;
+import ugh.dl.Prefs;
+import ugh.fileformats.mets.MetsMods;
+
+/**
+ * Runs the complete import for generated processes of increasing size against a catalogue served over HTTP, see {@link HttpStubCatalogue}.
+ * For each size the wall-clock time, the memory allocated by the importing thread and the peak heap are compared with the baselines in
+ * scaling-baselines.properties, the test fails if a value exceeds its baseline by more than the tolerance. The measured values are written to
+ * target/scaling-results.properties and can be copied into the baselines after a deliberate change.
+ * <p>
+ * Run with {@code mvn -P scaling verify}. The sizes, the catalogue latency and the tolerance can be changed with the system properties
+ * scaling.rows (default 1000,10000,50000), scaling.latency in milliseconds (default 20) and scaling.tolerance (default 0.3), scaling.spillToDisk
+ * runs the imports with {@code <spillToDisk>}.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ MetadatenHelper.class, VariableReplacer.class, ConfigurationHelper.class, ProcessManager.class, MetadataManager.class,
+        ConfigOpac.class, Helper.class })
+@PowerMockIgnore({ "javax.management.*", "javax.xml.*", "org.xml.*", "org.w3c.*", "javax.net.ssl.*", "jdk.internal.reflect.*", "com.sun.*",
+        "sun.*" })
+public class MetadataStructureImportScalingIT {
+
+    private static final String TITLE = "intranda_step_MetadataStructureImport";
+
+    private static final String CONFIGURATION = "<config_plugin><config>" //
+            + "<project>*</project><step>*</step>" //
+            + "<excelFolder>{processpath}</excelFolder><fileType>xlsx</fileType>" //
+            + "<opacName>scaling</opacName><searchField>12</searchField>" //
+            + "<opacThreads>8</opacThreads><opacTimeout>30</opacTimeout>" //
+            + "<opacField name=\"TitleDocSub\" /><opacField name=\"shelfmarksource\" />" //
+            + "<rowHeader>1</rowHeader><rowDataStart>2</rowDataStart><rowDataEnd>1000000</rowDataEnd>" //
+            + "<streamingReader>true</streamingReader><fastPagination>true</fastPagination><spillToDisk>%s</spillToDisk>" //
+            + "<identifierColumnName>Kalliope-ID</identifierColumnName>" //
+            + "<doctypeColumnName>Strukturelement_Typ</doctypeColumnName>" //
+            + "<hierarchyColumnName>Ebene</hierarchyColumnName>" //
+            + "<imageStartColumnName>Bild_von</imageStartColumnName>" //
+            + "<imageEndColumnName>Bild_bis</imageEndColumnName>" //
+            + "<column columnName=\"Haupttitel\" type=\"metadata\" metadata=\"TitleDocMain\" />" //
+            + "<column columnName=\"Kalliope-ID\" type=\"metadata\" metadata=\"CatalogIDKalliope\" />" //
+            + "<docstruct label=\"Abschnitt (Kalliope)\" value=\"Section_Kalliope\"/>" //
+            + "</config></config_plugin>";
+
+    private static final String[] HEADER = { "Strukturelement_Typ", "Ebene", "Bild_von", "Bild_bis", "Haupttitel", "Kalliope-ID" };
+    // deepest hierarchy level of the generated rows
+    private static final int DEPTH = 3;
+
+    private static String resourcesFolder;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File metadataDirectory;
+    private Prefs prefs;
+    private HttpStubCatalogue catalogue;
+    // messages written to the process journals
+    private final List<String> journal = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn verify from cli or in jenkins
+        }
+
+        String log4jFile = resourcesFolder + "log4j2.xml"; // for junit tests in eclipse
+
+        System.setProperty("log4j.configurationFile", log4jFile);
+    }
+
+    @Test
+    public void testScaling() throws Exception {
+        Path baselinesFile = Paths.get(resourcesFolder, "scaling-baselines.properties");
+        Properties baselines = new Properties();
+        try (InputStream in = Files.newInputStream(baselinesFile)) {
+            baselines.load(in);
+        }
+        double tolerance = Double.parseDouble(System.getProperty("scaling.tolerance", "0.3"));
+        boolean recordBaselines = Boolean.getBoolean("scaling.recordBaselines");
+        Properties results = new Properties();
+        List<String> regressions = new ArrayList<>();
+
+        // load the classes and compile the hot paths before the first measurement
+        runImport(1, 200);
+
+        int processId = 2;
+        for (String tier : System.getProperty("scaling.rows", "1000,10000,50000").split(",")) {
+            int rows = Integer.parseInt(tier.trim());
+            Measurement measurement = runImport(processId++, rows);
+            check(baselines, results, regressions, tolerance, rows + ".millis", measurement.millis);
+            check(baselines, results, regressions, tolerance, rows + ".allocatedMB", measurement.allocatedBytes / (1024 * 1024));
+            check(baselines, results, regressions, tolerance, rows + ".peakHeapMB", measurement.peakHeapBytes / (1024 * 1024));
+        }
+
+        Path resultsFile = Paths.get("target", "scaling-results.properties");
+        Files.createDirectories(resultsFile.getParent());
+        try (OutputStream out = Files.newOutputStream(resultsFile)) {
+            results.store(out, "Structure import scaling, catalogue latency " + System.getProperty("scaling.latency", "20") + " ms");
+        }
+        if (recordBaselines) {
+            recordBaselines(Paths.get("src", "test", "resources", "scaling-baselines.properties"), results);
+            return;
+        }
+        assertTrue(String.join("\n", regressions), regressions.isEmpty());
+    }
+
+    /**
+     * Record a measured value and compare it with its baseline. A value without a baseline is a failure as well, so that the check cannot be
+     * skipped silently.
+     */
+    private static void check(Properties baselines, Properties results, List<String> regressions, double tolerance, String key, long measured) {
+        results.setProperty(key, String.valueOf(measured));
+        String baseline = baselines.getProperty(key);
+        if (baseline == null) {
+            regressions.add(key + ": measured " + measured + ", no baseline. Record the baselines with -Dscaling.recordBaselines=true");
+        } else if (measured > Math.round(Long.parseLong(baseline.trim()) * (1 + tolerance))) {
+            regressions.add(key + ": measured " + measured + ", baseline " + baseline.trim());
+        }
+    }
+
+    /**
+     * Replace the values in the baselines file by the measured values, the comments at the top of the file are kept
+     */
+    private static void recordBaselines(Path baselinesFile, Properties results) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(baselinesFile, StandardCharsets.UTF_8)) {
+            if (line.startsWith("#")) {
+                lines.add(line);
+            }
+        }
+        Properties baselines = new Properties();
+        try (InputStream in = Files.newInputStream(baselinesFile)) {
+            baselines.load(in);
+        }
+        baselines.putAll(results);
+        List<String> keys = new ArrayList<>(baselines.stringPropertyNames());
+        Collections.sort(keys);
+        for (String key : keys) {
+            lines.add(key + "=" + baselines.getProperty(key));
+        }
+        Files.write(baselinesFile, lines, StandardCharsets.UTF_8);
+    }
+
+    private static class Measurement {
+        private long millis;
+        private long allocatedBytes;
+        private long peakHeapBytes;
+    }
+
+    /**
+     * Generate a process with the given number of rows and images, run the import and check the created structure
+     */
+    private Measurement runImport(int processId, int rows) throws Exception {
+        Process process = createProcess(processId, "scaling_" + rows, rows);
+        Step step = process.getSchritte().get(0);
+        MetadataStructureImportStepPlugin plugin = new MetadataStructureImportStepPlugin();
+        plugin.initialize(step, "");
+        int queries = catalogue.getQueries();
+        journal.clear();
+
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+            }
+        }
+        System.gc();
+        for (MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+        }
+        long threadId = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+
+        assertEquals(PluginReturnValue.FINISH, plugin.run());
+
+        Measurement measurement = new Measurement();
+        measurement.millis = (System.nanoTime() - start) / 1000000;
+        measurement.allocatedBytes = threads.getThreadAllocatedBytes(threadId) - allocated;
+        for (MemoryPoolMXBean pool : heapPools) {
+            measurement.peakHeapBytes += pool.getPeakUsage().getUsed();
+        }
+
+        // each row is a new element with catalogue data, each identifier was queried once
+        String summary = "";
+        for (String message : journal) {
+            if (message.startsWith("Structure import: ")) {
+                summary = message;
+            }
+        }
+        assertTrue(summary, summary.startsWith("Structure import: " + rows + " rows, " + rows + " new elements"));
+        assertEquals(rows, catalogue.getQueries() - queries);
+        Fileformat imported = new MetsMods(prefs);
+        imported.read(Paths.get(process.getProcessDataDirectory(), "meta.xml").toString());
+        DocStruct logical = imported.getDigitalDocument().getLogicalDocStruct();
+        assertEquals(rows, countDescendants(logical));
+        DocStruct first = logical.getAllChildren().get(0);
+        assertEquals("an DE-611-HS-3000001", first.getAllMetadataByType(prefs.getMetadataTypeByName("TitleDocSub")).get(0).getValue());
+        return measurement;
+    }
+
+    private static int countDescendants(DocStruct ds) {
+        int count = 0;
+        if (ds.getAllChildren() != null) {
+            for (DocStruct child : ds.getAllChildren()) {
+                count += 1 + countDescendants(child);
+            }
+        }
+        return count;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        metadataDirectory = folder.newFolder("metadata");
+        File configurationDirectory = folder.newFolder("config");
+        File temporaryDirectory = folder.newFolder("tmp");
+        String metadataDirectoryName = metadataDirectory.getAbsolutePath() + File.separator;
+        Files.write(Paths.get(configurationDirectory.getAbsolutePath(), "plugin_" + TITLE + ".xml"),
+                String.format(CONFIGURATION, System.getProperty("scaling.spillToDisk", "false")).getBytes(StandardCharsets.UTF_8));
+        ImportConfigurationCache.clear();
+
+        catalogue = new HttpStubCatalogue(Long.parseLong(System.getProperty("scaling.latency", "20")));
+        IOpacPlugin opacPlugin = EasyMock.createNiceMock(IOpacPlugin.class);
+        EasyMock.expect(opacPlugin.search(EasyMock.anyString(), EasyMock.anyString(), EasyMock.anyObject(), EasyMock.anyObject()))
+                .andAnswer(() -> catalogue.search((String) EasyMock.getCurrentArguments()[0], (String) EasyMock.getCurrentArguments()[1],
+                        null, (Prefs) EasyMock.getCurrentArguments()[3]))
+                .anyTimes();
+        EasyMock.expect(opacPlugin.getHitcount()).andAnswer(catalogue::getHitcount).anyTimes();
+        ConfigOpacCatalogue coc = EasyMock.createNiceMock(ConfigOpacCatalogue.class);
+        EasyMock.expect(coc.getTitle()).andReturn("scaling").anyTimes();
+        EasyMock.expect(coc.getOpacPlugin()).andReturn(opacPlugin).anyTimes();
+        EasyMock.replay(opacPlugin, coc);
+
+        PowerMock.mockStatic(ConfigOpac.class);
+        ConfigOpac configOpac = EasyMock.createMock(ConfigOpac.class);
+        EasyMock.expect(ConfigOpac.getInstance()).andReturn(configOpac).anyTimes();
+        EasyMock.expect(configOpac.getAllCatalogues(EasyMock.anyString())).andReturn(Collections.singletonList(coc)).anyTimes();
+        EasyMock.replay(configOpac);
+
+        PowerMock.mockStatic(ConfigurationHelper.class);
+        ConfigurationHelper configurationHelper = EasyMock.createMock(ConfigurationHelper.class);
+        EasyMock.expect(ConfigurationHelper.getInstance()).andReturn(configurationHelper).anyTimes();
+        EasyMock.expect(configurationHelper.getMetsEditorLockingTime()).andReturn(1800000l).anyTimes();
+        EasyMock.expect(configurationHelper.isAllowWhitespacesInFolder()).andReturn(false).anyTimes();
+        EasyMock.expect(configurationHelper.useS3()).andReturn(false).anyTimes();
+        EasyMock.expect(configurationHelper.isUseProxy()).andReturn(false).anyTimes();
+        EasyMock.expect(configurationHelper.getGoobiContentServerTimeOut()).andReturn(60000).anyTimes();
+        EasyMock.expect(configurationHelper.getMetadataFolder()).andReturn(metadataDirectoryName).anyTimes();
+        EasyMock.expect(configurationHelper.getRulesetFolder()).andReturn(resourcesFolder).anyTimes();
+        EasyMock.expect(configurationHelper.getProcessImagesMainDirectoryName()).andReturn("{processtitle}_media").anyTimes();
+        EasyMock.expect(configurationHelper.isUseMasterDirectory()).andReturn(true).anyTimes();
+        EasyMock.expect(configurationHelper.getConfigurationFolder()).andReturn(configurationDirectory.getAbsolutePath() + File.separator).anyTimes();
+        EasyMock.expect(configurationHelper.getTemporaryFolder()).andReturn(temporaryDirectory.getAbsolutePath() + File.separator).anyTimes();
+        EasyMock.expect(configurationHelper.getNumberOfMetaBackups()).andReturn(0).anyTimes();
+        EasyMock.expect(configurationHelper.getGoobiFolder()).andReturn(metadataDirectory.toString()).anyTimes();
+        EasyMock.expect(configurationHelper.getScriptsFolder()).andReturn(metadataDirectory.toString()).anyTimes();
+        EasyMock.replay(configurationHelper);
+
+        PowerMock.mockStatic(VariableReplacer.class);
+        EasyMock.expect(VariableReplacer.simpleReplace(EasyMock.anyString(), EasyMock.anyObject())).andAnswer(() -> {
+            String searchString = (String) EasyMock.getCurrentArguments()[0];
+            Process process = (Process) EasyMock.getCurrentArguments()[1];
+            return searchString.replace("{processtitle}", process.getTitel());
+        }).anyTimes();
+        EasyMock.expect(VariableReplacer.findRegexMatches(EasyMock.anyString(), EasyMock.anyString())).andAnswer(() -> {
+            List<MatchResult> results = new ArrayList<>();
+            String pattern = (String) EasyMock.getCurrentArguments()[0];
+            String value = (String) EasyMock.getCurrentArguments()[1];
+            for (Matcher m = Pattern.compile(pattern).matcher(value); m.find();) {
+                results.add(m.toMatchResult());
+            }
+            return results;
+        }).anyTimes();
+        PowerMock.replay(VariableReplacer.class);
+
+        prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "ruleset.xml");
+
+        PowerMock.mockStatic(MetadatenHelper.class);
+        EasyMock.expect(MetadatenHelper.getMetaFileType(EasyMock.anyString())).andReturn("mets").anyTimes();
+        EasyMock.expect(MetadatenHelper.getFileformatByName(EasyMock.anyString(), EasyMock.anyObject())).andAnswer(() -> new MetsMods(prefs)).anyTimes();
+        EasyMock.expect(MetadatenHelper.getMetadataOfFileformat(EasyMock.anyObject())).andReturn(Collections.emptyMap()).anyTimes();
+        PowerMock.replay(MetadatenHelper.class);
+
+        PowerMock.mockStatic(MetadataManager.class);
+        MetadataManager.updateMetadata(EasyMock.anyInt(), EasyMock.anyObject());
+        EasyMock.expectLastCall().anyTimes();
+        PowerMock.replay(MetadataManager.class);
+
+        PowerMock.mockStaticPartial(Helper.class, "addMessageToProcessJournal");
+        Helper.addMessageToProcessJournal(EasyMock.<Integer> anyObject(), EasyMock.<LogType> anyObject(), EasyMock.anyString());
+        EasyMock.expectLastCall().andAnswer(() -> {
+            journal.add((String) EasyMock.getCurrentArguments()[2]);
+            return null;
+        }).anyTimes();
+        PowerMock.replay(Helper.class);
+
+        PowerMock.replay(ConfigurationHelper.class);
+        PowerMock.replay(ConfigOpac.class);
+    }
+
+    @After
+    public void tearDown() {
+        catalogue.close();
+    }
+
+    /**
+     * Create a process with a workbook, a metadata file without pagination and an image folder with one image per row
+     */
+    private Process createProcess(int id, String title, int rows) throws IOException {
+        Project project = new Project();
+        project.setTitel("SampleProject");
+
+        Process process = new Process();
+        process.setTitel(title);
+        process.setProjekt(project);
+        process.setId(id);
+        List<Step> steps = new ArrayList<>();
+        Step step = new Step();
+        step.setReihenfolge(1);
+        step.setProzess(process);
+        step.setTitel("test step");
+        step.setBearbeitungsstatusEnum(StepStatus.OPEN);
+        User user = new User();
+        user.setVorname("Firstname");
+        user.setNachname("Lastname");
+        step.setBearbeitungsbenutzer(user);
+        steps.add(step);
+        process.setSchritte(steps);
+
+        Ruleset ruleset = PowerMock.createMock(Ruleset.class);
+        ruleset.setTitel("ruleset");
+        ruleset.setDatei("ruleset.xml");
+        EasyMock.expect(ruleset.getDatei()).andReturn("ruleset.xml").anyTimes();
+        EasyMock.expect(ruleset.getPreferences()).andReturn(prefs).anyTimes();
+        PowerMock.replay(ruleset);
+        process.setRegelsatz(ruleset);
+
+        Path processDirectory = Paths.get(metadataDirectory.getAbsolutePath(), String.valueOf(id));
+        Path mediaDirectory = processDirectory.resolve("images").resolve(title + "_media");
+        Files.createDirectories(mediaDirectory);
+        Files.createDirectories(processDirectory.resolve("images").resolve(title + "_master"));
+        for (int i = 1; i <= rows; i++) {
+            Files.createFile(mediaDirectory.resolve(String.format("%08d.tif", i)));
+        }
+        writeMetadataFile(processDirectory.resolve("meta.xml"));
+        writeWorkbook(processDirectory.resolve(title + ".xlsx"), rows);
+        return process;
+    }
+
+    /**
+     * Write a workbook with the given number of rows. The rows repeat the levels 1 to {@link #DEPTH}, each row has its own image and the range
+     * of a row is extended to the images of its children.
+     */
+    private static void writeWorkbook(Path file, int rows) throws IOException {
+        // keep only a small window of rows in memory, the large workbooks would not fit otherwise
+        try (SXSSFWorkbook wb = new SXSSFWorkbook(100); OutputStream out = Files.newOutputStream(file)) {
+            Sheet sheet = wb.createSheet();
+            Row header = sheet.createRow(0);
+            for (int i = 0; i < HEADER.length; i++) {
+                header.createCell(i).setCellValue(HEADER[i]);
+            }
+            for (int i = 0; i < rows; i++) {
+                int level = i % DEPTH + 1;
+                int lastChild = Math.min(i + DEPTH - level, rows - 1);
+                Row row = sheet.createRow(i + 1);
+                row.createCell(0).setCellValue("Abschnitt (Kalliope)");
+                row.createCell(1).setCellValue(level);
+                row.createCell(2).setCellValue(i + 1);
+                row.createCell(3).setCellValue(lastChild + 1);
+                row.createCell(4).setCellValue("Brief " + (i + 1));
+                row.createCell(5).setCellValue("DE-611-HS-" + (3000001 + i));
+            }
+            wb.write(out);
+            wb.dispose();
+        }
+    }
+
+    /**
+     * Write a metadata file with an empty logical element and an empty physical element, the pagination is created by the import
+     */
+    private static void writeMetadataFile(Path file) throws IOException {
+        try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            w.write("<mets:mets xmlns:mets=\"http://www.loc.gov/METS/\" xmlns:mods=\"http://www.loc.gov/mods/v3\""
+                    + " xmlns:goobi=\"http://meta.goobi.org/v1.5.1/\" xmlns:xlink=\"http://www.w3.org/1999/xlink\">\n");
+            w.write("<mets:dmdSec ID=\"DMDLOG_0000\"><mets:mdWrap MDTYPE=\"MODS\"><mets:xmlData><mods:mods><mods:extension><goobi:goobi>"
+                    + "<goobi:metadata name=\"TitleDocMain\">Synthetic record</goobi:metadata>"
+                    + "</goobi:goobi></mods:extension></mods:mods></mets:xmlData></mets:mdWrap></mets:dmdSec>\n");
+            w.write("<mets:structMap TYPE=\"LOGICAL\"><mets:div DMDID=\"DMDLOG_0000\" ID=\"LOG_0000\" TYPE=\"Monograph\"/></mets:structMap>\n");
+            w.write("<mets:structMap TYPE=\"PHYSICAL\"><mets:div ID=\"PHYS_0000\" TYPE=\"BoundBook\"/></mets:structMap>\n");
+            w.write("</mets:mets>\n");
+        }
+    }
+}
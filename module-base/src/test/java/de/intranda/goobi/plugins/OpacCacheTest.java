@@ -0,0 +1,146 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OpacCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReadFromDisk() throws Exception {
+        Path cacheFolder = folder.newFolder("cache").toPath();
+        String key = OpacCache.createKey("Kalliope", "12", "DE-611-HS-3020128");
+
+        // no memory tier, every hit must come from disk
+        OpacCache cache = new OpacCache(cacheFolder, 10, 0, TimeUnit.HOURS.toMillis(1));
+        assertNull(cache.get(key));
+        cache.put(key, createRecord("Brief"));
+
+        OpacCache otherCache = new OpacCache(cacheFolder, 10, 0, TimeUnit.HOURS.toMillis(1));
+        OpacRecord rec = otherCache.get(key);
+        assertNotNull(rec);
+        assertEquals("Brief", rec.getMetadata().get(0).getValue());
+        assertEquals("TitleDocMain", rec.getMetadata().get(0).getType());
+        assertEquals(1, otherCache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testExpiredRecord() throws Exception {
+        Path cacheFolder = folder.newFolder("cache").toPath();
+        String key = OpacCache.createKey("Kalliope", "12", "DE-611-HS-3020129");
+        OpacCache cache = new OpacCache(cacheFolder, 10, 0, -1);
+        cache.put(key, createRecord("Brief"));
+        assertNull(cache.get(key));
+        assertEquals(0, countFiles(cacheFolder));
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        Path cacheFolder = folder.newFolder("cache").toPath();
+        OpacCache cache = new OpacCache(cacheFolder, 2, 0, TimeUnit.HOURS.toMillis(1));
+        for (int i = 0; i < 4; i++) {
+            cache.put(OpacCache.createKey("Kalliope", "12", "id" + i), createRecord("title " + i));
+        }
+        // mark the first record as recently used
+        try (Stream<Path> files = Files.list(cacheFolder)) {
+            files.forEach(f -> f.toFile().setLastModified(0));
+        }
+        assertNotNull(cache.get(OpacCache.createKey("Kalliope", "12", "id0")));
+
+        cache.evict();
+        assertEquals(2, countFiles(cacheFolder));
+        assertNotNull(cache.get(OpacCache.createKey("Kalliope", "12", "id0")));
+    }
+
+    @Test
+    public void testMemoryHitsPreventEviction() throws Exception {
+        Path cacheFolder = folder.newFolder("cache").toPath();
+        OpacCache cache = new OpacCache(cacheFolder, 1, 10, TimeUnit.HOURS.toMillis(1));
+        for (int i = 0; i < 3; i++) {
+            cache.put(OpacCache.createKey("Kalliope", "12", "id" + i), createRecord("title " + i));
+        }
+        try (Stream<Path> files = Files.list(cacheFolder)) {
+            files.forEach(f -> f.toFile().setLastModified(0));
+        }
+        // found in memory, the file is not read
+        assertNotNull(cache.get(OpacCache.createKey("Kalliope", "12", "id1")));
+        assertEquals(1, cache.getHits());
+
+        cache.evict();
+        // only the file of the record found in memory is kept
+        try (Stream<Path> files = Files.list(cacheFolder)) {
+            assertEquals(Arrays.asList(true), files.map(f -> f.toFile().lastModified() > 0).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testMemorySizePerFolder() throws Exception {
+        Path cacheFolder = folder.newFolder("cache").toPath();
+        OpacCache cache = new OpacCache(cacheFolder, 10, 10, TimeUnit.HOURS.toMillis(1));
+        cache.put(OpacCache.createKey("Kalliope", "12", "id0"), createRecord("title 0"));
+        // caches with a smaller memory tier for another folder or for the same folder do not change the size of the first one
+        new OpacCache(folder.newFolder("other").toPath(), 10, 1, TimeUnit.HOURS.toMillis(1));
+        OpacCache smallCache = new OpacCache(cacheFolder, 10, 1, TimeUnit.HOURS.toMillis(1));
+        for (int i = 1; i < 4; i++) {
+            cache.put(OpacCache.createKey("Kalliope", "12", "id" + i), createRecord("title " + i));
+            smallCache.put(OpacCache.createKey("Kalliope", "12", "other" + i), createRecord("other " + i));
+        }
+        try (Stream<Path> files = Files.list(cacheFolder)) {
+            files.forEach(f -> f.toFile().delete());
+        }
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(cache.get(OpacCache.createKey("Kalliope", "12", "id" + i)));
+        }
+        assertEquals(4, cache.getHits());
+    }
+
+    @Test
+    public void testIgnoreFilesInOtherFormat() throws Exception {
+        Path cacheFolder = folder.newFolder("cache").toPath();
+        String key = OpacCache.createKey("Kalliope", "12", "DE-611-HS-3020130");
+        OpacCache cache = new OpacCache(cacheFolder, 10, 0, TimeUnit.HOURS.toMillis(1));
+        cache.put(key, createRecord("Brief"));
+        Path file;
+        try (Stream<Path> files = Files.list(cacheFolder)) {
+            file = files.findFirst().get();
+        }
+        // e.g. a serialized java object of an older version or a manipulated file
+        Files.write(file, new byte[] { (byte) 0xac, (byte) 0xed, 0, 5, 0x73, 0x72 });
+        assertNull(cache.get(key));
+        assertEquals(0, countFiles(cacheFolder));
+
+        // a damaged file with the right format is not trusted either
+        cache.put(key, createRecord("Brief"));
+        byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, content.length - 3));
+        assertNull(cache.get(key));
+        assertEquals(2, cache.getMisses());
+    }
+
+    private long countFiles(Path cacheFolder) throws Exception {
+        try (Stream<Path> files = Files.list(cacheFolder)) {
+            return files.count();
+        }
+    }
+
+    private OpacRecord createRecord(String title) {
+        OpacRecord rec = new OpacRecord();
+        rec.getMetadata().add(new OpacRecord.Field("TitleDocMain", title, null, null, null, null));
+        return rec;
+    }
+}
@@ -0,0 +1,269 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.easymock.EasyMock;
+import org.goobi.production.plugin.interfaces.IOpacPlugin;
+import org.junit.Test;
+
+import de.unigoettingen.sub.search.opac.ConfigOpacCatalogue;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.DocStructType;
+import ugh.dl.Fileformat;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+
+public class OpacLookupTest {
+
+    private enum Behaviour {
+        NOT_FOUND,
+        FAIL,
+        HANG,
+        // ignores the interrupt when the request is cancelled
+        STUCK,
+        // finds nothing for queries with more than one identifier
+        NO_OR_QUERIES
+    }
+
+    /**
+     * Local stand-in for a catalogue, it answers each search according to the current behaviour
+     */
+    private static class StubCatalogue {
+        private volatile Behaviour behaviour = Behaviour.NOT_FOUND;
+        private final AtomicInteger searches = new AtomicInteger();
+        private final CountDownLatch release = new CountDownLatch(1);
+        // identifiers with a record, a search for several identifiers returns the first of them
+        private final List<String> records = new ArrayList<>();
+        private volatile int hits;
+
+        private ConfigOpacCatalogue create(String opacName) throws Exception {
+            IOpacPlugin plugin = EasyMock.createNiceMock(IOpacPlugin.class);
+            EasyMock.expect(plugin.search(EasyMock.anyString(), EasyMock.anyString(), EasyMock.anyObject(), EasyMock.anyObject()))
+                    .andAnswer(() -> search((String) EasyMock.getCurrentArguments()[1]))
+                    .anyTimes();
+            EasyMock.expect(plugin.getHitcount()).andAnswer(() -> hits).anyTimes();
+            ConfigOpacCatalogue coc = EasyMock.createNiceMock(ConfigOpacCatalogue.class);
+            EasyMock.expect(coc.getTitle()).andReturn(opacName).anyTimes();
+            EasyMock.expect(coc.getOpacPlugin()).andReturn(plugin).anyTimes();
+            EasyMock.replay(plugin, coc);
+            return coc;
+        }
+
+        private Fileformat search(String query) throws Exception {
+            searches.incrementAndGet();
+            hits = 0;
+            switch (behaviour) {
+                case FAIL:
+                    throw new IOException("503 Service Unavailable");
+                case HANG:
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                    return null;
+                case STUCK:
+                    while (release.getCount() > 0) {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            // keep waiting
+                        }
+                    }
+                    return null;
+                default:
+                    List<String> found = new ArrayList<>();
+                    for (String term : query.split(" OR ")) {
+                        found.add(unquote(term));
+                    }
+                    if (behaviour == Behaviour.NO_OR_QUERIES && found.size() > 1) {
+                        return null;
+                    }
+                    found.retainAll(records);
+                    hits = found.size();
+                    return found.isEmpty() ? null : createRecord(found.get(0));
+            }
+        }
+
+        private static String unquote(String term) {
+            if (term.length() < 2 || !term.startsWith("\"") || !term.endsWith("\"")) {
+                return term;
+            }
+            return term.substring(1, term.length() - 1).replace("\\\"", "\"").replace("\\\\", "\\");
+        }
+
+        private static Fileformat createRecord(String identifier) throws Exception {
+            MetadataType type = EasyMock.createNiceMock(MetadataType.class);
+            EasyMock.expect(type.getName()).andReturn("CatalogIDDigital").anyTimes();
+            Metadata metadata = EasyMock.createNiceMock(Metadata.class);
+            EasyMock.expect(metadata.getType()).andReturn(type).anyTimes();
+            EasyMock.expect(metadata.getValue()).andReturn(identifier).anyTimes();
+            DocStructType docStructType = EasyMock.createNiceMock(DocStructType.class);
+            DocStruct logical = EasyMock.createNiceMock(DocStruct.class);
+            EasyMock.expect(logical.getType()).andReturn(docStructType).anyTimes();
+            EasyMock.expect(logical.getAllMetadata()).andReturn(Collections.singletonList(metadata)).anyTimes();
+            DigitalDocument digDoc = EasyMock.createNiceMock(DigitalDocument.class);
+            EasyMock.expect(digDoc.getLogicalDocStruct()).andReturn(logical).anyTimes();
+            Fileformat fileformat = EasyMock.createNiceMock(Fileformat.class);
+            EasyMock.expect(fileformat.getDigitalDocument()).andReturn(digDoc).anyTimes();
+            EasyMock.replay(type, metadata, docStructType, logical, digDoc, fileformat);
+            return fileformat;
+        }
+    }
+
+    private OpacLookup createLookup(StubCatalogue catalogue, String opacName, int timeout, int failureThreshold, long retryPause)
+            throws Exception {
+        return new OpacLookup(catalogue.create(opacName), "12", new Prefs(), 1, timeout, null, new OpacRateLimiter(0),
+                new OpacCircuitBreaker(opacName, failureThreshold, retryPause));
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        StubCatalogue catalogue = new StubCatalogue();
+        catalogue.records.addAll(Arrays.asList("id1", "id3", "id5"));
+        ImportMetrics metrics = new ImportMetrics();
+        try (OpacLookup lookup = new OpacLookup(catalogue.create("batch"), "12", new Prefs(), 1, 5, null, 4, "CatalogIDDigital",
+                new OpacRateLimiter(0), new OpacCircuitBreaker("batch", 3, 1000), null)) {
+            List<Future<OpacRecord>> requests = new ArrayList<>();
+            for (int i = 0; i < 7; i++) {
+                requests.add(lookup.submit("id" + i, metrics));
+            }
+            for (int i = 0; i < 7; i++) {
+                OpacRecord rec = lookup.getResult(requests.get(i), "id" + i, metrics);
+                if (catalogue.records.contains("id" + i)) {
+                    assertEquals("id" + i, rec.getMetadata().get(0).getValue());
+                } else {
+                    assertNull(rec);
+                }
+                assertFalse(lookup.isUnavailable("id" + i));
+            }
+        }
+        // the first batch has two hits, the identifiers without the returned record are requested on their own.
+        // The second batch has a single hit, so the other identifiers have no record
+        assertEquals(5, catalogue.searches.get());
+    }
+
+    @Test
+    public void testBatchWithoutOrQueries() throws Exception {
+        StubCatalogue catalogue = new StubCatalogue();
+        catalogue.behaviour = Behaviour.NO_OR_QUERIES;
+        catalogue.records.addAll(Arrays.asList("id 1", "id\"2"));
+        ImportMetrics metrics = new ImportMetrics();
+        List<String> identifiers = Arrays.asList("id0", "id 1", "id\"2");
+        try (OpacLookup lookup = new OpacLookup(catalogue.create("noOrQueries"), "12", new Prefs(), 1, 5, null, 3, "CatalogIDDigital",
+                new OpacRateLimiter(0), new OpacCircuitBreaker("noOrQueries", 3, 1000), null)) {
+            List<Future<OpacRecord>> requests = new ArrayList<>();
+            for (String identifier : identifiers) {
+                requests.add(lookup.submit(identifier, metrics));
+            }
+            assertNull(lookup.getResult(requests.get(0), "id0", metrics));
+            assertEquals("id 1", lookup.getResult(requests.get(1), "id 1", metrics).getMetadata().get(0).getValue());
+            assertEquals("id\"2", lookup.getResult(requests.get(2), "id\"2", metrics).getMetadata().get(0).getValue());
+        }
+        // the batch query without hits is not trusted, each identifier is requested on its own
+        assertEquals(4, catalogue.searches.get());
+    }
+
+    @Test
+    public void testFailedBatch() throws Exception {
+        StubCatalogue catalogue = new StubCatalogue();
+        catalogue.behaviour = Behaviour.FAIL;
+        ImportMetrics metrics = new ImportMetrics();
+        try (OpacLookup lookup = new OpacLookup(catalogue.create("failedBatch"), "12", new Prefs(), 1, 5, null, 3, "CatalogIDDigital",
+                new OpacRateLimiter(0), new OpacCircuitBreaker("failedBatch", 10, 1000), null)) {
+            List<Future<OpacRecord>> requests = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                requests.add(lookup.submit("id" + i, metrics));
+            }
+            for (int i = 0; i < 3; i++) {
+                assertNull(lookup.getResult(requests.get(i), "id" + i, metrics));
+                assertTrue(lookup.isUnavailable("id" + i));
+            }
+        }
+        // each identifier of the failed batch is requested again on its own
+        assertEquals(4, catalogue.searches.get());
+    }
+
+    @Test
+    public void testNotFound() throws Exception {
+        StubCatalogue catalogue = new StubCatalogue();
+        ImportMetrics metrics = new ImportMetrics();
+        try (OpacLookup lookup = createLookup(catalogue, "notFound", 5, 3, 1000)) {
+            assertNull(lookup.lookup("id1", metrics));
+            assertNull(lookup.lookup("id1", metrics));
+            // nothing found is a valid answer, the row does not need to be imported again
+            assertFalse(lookup.isUnavailable("id1"));
+        }
+        assertEquals(1, catalogue.searches.get());
+        assertEquals(1, metrics.getOpacRequests());
+        assertEquals(0, metrics.getOpacFailures());
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        StubCatalogue catalogue = new StubCatalogue();
+        catalogue.behaviour = Behaviour.HANG;
+        ImportMetrics metrics = new ImportMetrics();
+        try (OpacLookup lookup = createLookup(catalogue, "deadline", 1, 3, 1000)) {
+            long start = System.currentTimeMillis();
+            assertNull(lookup.lookup("id1", metrics));
+            assertTrue(System.currentTimeMillis() - start < TimeUnit.SECONDS.toMillis(10));
+            assertTrue(lookup.isUnavailable("id1"));
+        }
+        assertEquals(1, metrics.getOpacFailures());
+    }
+
+    @Test
+    public void testStuckRequests() throws Exception {
+        StubCatalogue catalogue = new StubCatalogue();
+        catalogue.behaviour = Behaviour.STUCK;
+        ImportMetrics metrics = new ImportMetrics();
+        try (OpacLookup lookup = createLookup(catalogue, "stuck", 1, 2, 60000)) {
+            for (int i = 0; i < 4; i++) {
+                assertNull(lookup.lookup("id" + i, metrics));
+                assertTrue(lookup.isUnavailable("id" + i));
+            }
+            // the only catalogue thread is blocked, no further thread is started for the next request
+            assertEquals(1, catalogue.searches.get());
+        } finally {
+            catalogue.release.countDown();
+        }
+        // the circuit breaker opens after the second request timed out
+        assertEquals(2, metrics.getOpacFailures());
+    }
+
+    @Test
+    public void testCircuitBreaker() throws Exception {
+        StubCatalogue catalogue = new StubCatalogue();
+        catalogue.behaviour = Behaviour.FAIL;
+        ImportMetrics metrics = new ImportMetrics();
+        try (OpacLookup lookup = createLookup(catalogue, "circuitBreaker", 5, 3, 200)) {
+            for (int i = 0; i < 10; i++) {
+                assertNull(lookup.lookup("id" + i, metrics));
+                assertTrue(lookup.isUnavailable("id" + i));
+            }
+            // the catalogue is not asked again after the third failure
+            assertEquals(3, catalogue.searches.get());
+
+            // after the pause a single request checks the catalogue again
+            Thread.sleep(300);
+            catalogue.behaviour = Behaviour.NOT_FOUND;
+            assertNull(lookup.lookup("id10", metrics));
+            assertFalse(lookup.isUnavailable("id10"));
+            assertNull(lookup.lookup("id11", metrics));
+            assertEquals(5, catalogue.searches.get());
+        }
+        assertEquals(3, metrics.getOpacFailures());
+    }
+}
@@ -0,0 +1,108 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+import org.junit.Before;
+import org.junit.Test;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Metadata;
+import ugh.dl.Prefs;
+
+public class OpacProjectionTest {
+
+    private static final List<String> HEADER = Arrays.asList("Kalliope-ID", "Strukturelement_Typ", "Ebene", "Bild_von", "Bild_bis", "Haupttitel");
+
+    private Prefs prefs;
+    private RulesetTypes types;
+    private OpacRecord rec;
+
+    @Before
+    public void setUp() throws Exception {
+        String resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+        prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "ruleset.xml");
+        types = RulesetTypes.create(prefs);
+
+        rec = new OpacRecord();
+        rec.getMetadata().add(new OpacRecord.Field("TitleDocMain", "Brief", null, null, null, null));
+        rec.getMetadata().add(new OpacRecord.Field("TitleDocSub", "an Oluf Gerhard Tychsen", null, null, null, null));
+        rec.getMetadata().add(new OpacRecord.Field("shelfmarksource", "Cod. Ms. Tychsen 12", null, null, null, null));
+        rec.getPersons().add(new OpacRecord.Field("Author", "Tychsen", "Oluf Gerhard", null, null, null));
+    }
+
+    private OpacProjection createProjection(String opacConfiguration) throws Exception {
+        XMLConfiguration xmlConfig = new XMLConfiguration();
+        xmlConfig.setExpressionEngine(new XPathExpressionEngine());
+        xmlConfig.load(new StringReader("<config><identifierColumnName>Kalliope-ID</identifierColumnName>"
+                + "<doctypeColumnName>Strukturelement_Typ</doctypeColumnName><hierarchyColumnName>Ebene</hierarchyColumnName>"
+                + "<imageStartColumnName>Bild_von</imageStartColumnName><imageEndColumnName>Bild_bis</imageEndColumnName>"
+                + "<column columnName=\"Haupttitel\" metadata=\"TitleDocMain\" /><column columnName=\"Kalliope-ID\" metadata=\"CatalogIDKalliope\" />"
+                + opacConfiguration + "</config>"));
+        ImportConfiguration config = new ImportConfiguration(xmlConfig.configurationAt("/"));
+        return new OpacProjection(config, types, new ColumnPlan(HEADER, config, prefs));
+    }
+
+    private DocStruct createElement() throws Exception {
+        return new DigitalDocument().createDocStruct(prefs.getDocStrctTypeByName("Section_Kalliope"));
+    }
+
+    private String getValue(DocStruct ds, String type) {
+        List<? extends Metadata> values = ds.getAllMetadataByType(prefs.getMetadataTypeByName(type));
+        return values.isEmpty() ? null : values.get(0).getValue();
+    }
+
+    @Test
+    public void testOnlyConfiguredFieldsAreCopied() throws Exception {
+        OpacProjection projection = createProjection("<opacField name=\"TitleDocMain\" /><opacField name=\"shelfmarksource\" metadata=\"Note\" />");
+        assertTrue(projection.getErrors().isEmpty());
+
+        DocStruct ds = createElement();
+        boolean[] opacColumns = rec.applyTo(ds, projection, Arrays.asList("", "DE-611-HS-1"));
+
+        assertEquals("Brief", getValue(ds, "TitleDocMain"));
+        assertEquals("Cod. Ms. Tychsen 12", getValue(ds, "Note"));
+        assertNull(getValue(ds, "TitleDocSub"));
+        assertNull(getValue(ds, "shelfmarksource"));
+        assertNull(ds.getAllPersons());
+        // the empty cell does not replace the catalogue title
+        assertTrue(opacColumns[0]);
+        assertFalse(opacColumns[1]);
+    }
+
+    @Test
+    public void testUnknownTargetType() throws Exception {
+        OpacProjection projection = createProjection("<opacField name=\"TitleDocMain\" metadata=\"NoSuchType\" />");
+        assertEquals(1, projection.getErrors().size());
+    }
+
+    @Test
+    public void testExcelWins() throws Exception {
+        DocStruct ds = createElement();
+        boolean[] opacColumns = rec.applyTo(ds, createProjection("<excelWins>true</excelWins>"), Arrays.asList("Excel title", "DE-611-HS-1"));
+        assertNull(getValue(ds, "TitleDocMain"));
+        assertEquals("an Oluf Gerhard Tychsen", getValue(ds, "TitleDocSub"));
+        assertEquals(1, ds.getAllPersons().size());
+        assertFalse(opacColumns[0]);
+
+        ds = createElement();
+        opacColumns = rec.applyTo(ds, createProjection("<excelWins>false</excelWins>"), Arrays.asList("Excel title", "DE-611-HS-1"));
+        assertEquals("Brief", getValue(ds, "TitleDocMain"));
+        assertTrue(opacColumns[0]);
+    }
+}
@@ -0,0 +1,57 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class OpacRateLimiterTest {
+
+    @Test
+    public void testBurstAndWait() throws Exception {
+        OpacRateLimiter limiter = new OpacRateLimiter(20);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(limiter.acquire(0));
+        }
+        // the bucket is empty, the next request needs about 50 ms
+        assertFalse(limiter.acquire(0));
+        long start = System.nanoTime();
+        assertTrue(limiter.acquire(TimeUnit.SECONDS.toNanos(1)));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void testAdaptiveRate() {
+        OpacRateLimiter limiter = new OpacRateLimiter(20);
+        limiter.onFailure();
+        assertEquals(10, limiter.getRate(), 0.001);
+        for (int i = 0; i < 10; i++) {
+            limiter.onFailure();
+        }
+        assertEquals(1.25, limiter.getRate(), 0.001);
+        limiter.onSuccess();
+        assertEquals(3.25, limiter.getRate(), 0.001);
+        for (int i = 0; i < 10; i++) {
+            limiter.onSuccess();
+        }
+        assertEquals(20, limiter.getRate(), 0.001);
+    }
+
+    @Test
+    public void testSharedPerCatalogue() throws Exception {
+        OpacRateLimiter limiter = OpacRateLimiter.get("rateLimiterTest", 5);
+        assertSame(limiter, OpacRateLimiter.get("rateLimiterTest", 5));
+        assertNotSame(limiter, OpacRateLimiter.get("otherCatalogue", 5));
+        assertNotSame(limiter, OpacRateLimiter.get("rateLimiterTest", 10));
+        // without limit every request is allowed
+        OpacRateLimiter unlimited = new OpacRateLimiter(0);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(unlimited.acquire(0));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class PageRangeValidatorTest {
+
+    @Test
+    public void testValidRanges() {
+        // siblings may share a page, nested elements are within their parent
+        StructureRows rows = rows(0, 1, 20, 1, 1, 6, 1, 6, 10, 2, 7, 8, 2, 8, 10, 1, 11, 20);
+        PageRangeValidator validator = new PageRangeValidator(20, true);
+        assertTrue(validator.validate(rows));
+        assertTrue(validator.getWarnings().isEmpty());
+    }
+
+    @Test
+    public void testInvalidRanges() {
+        StructureRows rows = rows(0, 1, 20, 1, 0, 5, 1, 8, 6, 1, 18, 21);
+        PageRangeValidator validator = new PageRangeValidator(20, false);
+        assertFalse(validator.validate(rows));
+        assertEquals(3, validator.getErrors().size());
+        assertTrue(validator.getErrors().get(0).startsWith("Row 2:"));
+    }
+
+    @Test
+    public void testOverlapAndContainment() {
+        // row 3 overlaps with row 2, row 5 is not contained in row 4
+        StructureRows rows = rows(0, 1, 20, 1, 1, 10, 1, 5, 12, 1, 13, 14, 2, 14, 16);
+
+        PageRangeValidator validator = new PageRangeValidator(20, false);
+        assertTrue(validator.validate(rows));
+        assertEquals(2, validator.getWarnings().size());
+
+        validator = new PageRangeValidator(20, true);
+        assertFalse(validator.validate(rows));
+        assertEquals(Arrays.asList("Row 5: image range 14-16 is not contained in the range of row 4",
+                "Row 3: image range 5-12 overlaps with the range of row 2"), validator.getErrors());
+    }
+
+    /**
+     * Create rows from triples of hierarchy, first and last page
+     */
+    @Test
+    public void testSeveralRowsOnLevelZero() {
+        // the rows on level 0 have no image range, the elements after the second one start again with the first image
+        StructureRows rows = rows(0, 0, 0, 1, 1, 10, 1, 11, 20, 0, 0, 0, 1, 1, 10, 1, 11, 20);
+
+        PageRangeValidator validator = new PageRangeValidator(20, true);
+        assertTrue(validator.validate(rows));
+        assertTrue(validator.getErrors().isEmpty());
+
+        // elements after the same row on level 0 are still compared
+        rows = rows(0, 0, 0, 1, 1, 10, 0, 0, 0, 1, 1, 10, 1, 5, 20);
+        validator = new PageRangeValidator(20, true);
+        assertFalse(validator.validate(rows));
+        assertEquals(Arrays.asList("Row 5: image range 5-20 overlaps with the range of row 4"), validator.getErrors());
+    }
+
+    private static StructureRows rows(int... values) {
+        StructureRows rows = new StructureRows(0);
+        for (int i = 0; i < values.length; i += 3) {
+            rows.add(rows.size() + 1, null, values[i], "", values[i + 1], values[i + 2], Collections.emptyList());
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,71 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Prefs;
+
+public class PaginationBuilderTest {
+
+    private static final Path IMAGE_FOLDER = Paths.get("/opt/digiverso/goobi/metadata/1/images/test_media");
+
+    private Prefs prefs;
+    private DigitalDocument digDoc;
+    private List<String> imageNames;
+
+    @Before
+    public void setUp() throws Exception {
+        String resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+        prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "ruleset.xml");
+
+        digDoc = new DigitalDocument();
+        digDoc.setLogicalDocStruct(digDoc.createDocStruct(prefs.getDocStrctTypeByName("Monograph")));
+        digDoc.setPhysicalDocStruct(digDoc.createDocStruct(prefs.getDocStrctTypeByName("BoundBook")));
+
+        imageNames = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            imageNames.add(String.format("%08d.tif", i));
+        }
+    }
+
+    @Test
+    public void testExtendLimitedPagination() throws Exception {
+        List<DocStruct> pages = PaginationBuilder.createPages(digDoc, prefs, IMAGE_FOLDER, imageNames, 3);
+        assertEquals(3, pages.size());
+
+        // a later import uses more images, the existing pages are kept
+        DocStruct firstPage = pages.get(0);
+        pages = PaginationBuilder.createPages(digDoc, prefs, IMAGE_FOLDER, imageNames, 7);
+        assertEquals(7, pages.size());
+        assertEquals(firstPage, pages.get(0));
+        assertEquals("00000007.tif", pages.get(6).getImageName());
+        assertEquals("7", pages.get(6).getAllMetadataByType(prefs.getMetadataTypeByName("physPageNumber")).get(0).getValue());
+        assertEquals(7, digDoc.getLogicalDocStruct().getAllToReferences("logical_physical").size());
+
+        // fewer required images don't remove pages
+        assertEquals(7, PaginationBuilder.createPages(digDoc, prefs, IMAGE_FOLDER, imageNames, 2).size());
+        assertEquals(10, PaginationBuilder.createPages(digDoc, prefs, IMAGE_FOLDER, imageNames, 0).size());
+    }
+
+    @Test
+    public void testForeignPaginationIsNotExtended() throws Exception {
+        PaginationBuilder.createPages(digDoc, prefs, IMAGE_FOLDER, imageNames.subList(5, 10), 2);
+
+        // the existing pages belong to other images than the first ones
+        assertEquals(2, PaginationBuilder.createPages(digDoc, prefs, IMAGE_FOLDER, imageNames, 5).size());
+    }
+}
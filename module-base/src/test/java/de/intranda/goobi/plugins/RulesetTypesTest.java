@@ -0,0 +1,72 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.DocStructType;
+import ugh.dl.Prefs;
+
+public class RulesetTypesTest {
+
+    private Path rulesetFile;
+    private Prefs prefs;
+
+    @Before
+    public void setUp() throws Exception {
+        String resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+        rulesetFile = Paths.get(resourcesFolder, "ruleset.xml");
+        prefs = new Prefs();
+        prefs.loadPrefs(rulesetFile.toString());
+    }
+
+    @Test
+    public void testAllowedTypes() {
+        RulesetTypes types = RulesetTypes.create(prefs);
+        DocStructType section = prefs.getDocStrctTypeByName("Section_Kalliope");
+
+        assertTrue(types.getAllowedMetadata(section).contains("TitleDocMain"));
+        assertFalse(types.getAllowedMetadata(section).contains("DBName"));
+        assertTrue(types.getAllowedPersons(section).contains("Author"));
+        assertFalse(types.getAllowedMetadata(section).contains("Author"));
+        assertEquals("Author", types.getMetadataType("Author").getName());
+    }
+
+    @Test
+    public void testTypesAreSharedByRulesetFile() {
+        RulesetTypes types = RulesetTypes.get(rulesetFile, prefs);
+        Prefs otherPrefs = new Prefs();
+        otherPrefs.loadPrefs(rulesetFile.toString());
+        assertSame(types, RulesetTypes.get(rulesetFile, otherPrefs));
+    }
+
+    @Test
+    public void testOpacRecordIsFiltered() throws Exception {
+        OpacRecord rec = new OpacRecord();
+        rec.getMetadata().add(new OpacRecord.Field("TitleDocMain", "Brief", null, null, null, null));
+        rec.getMetadata().add(new OpacRecord.Field("DBName", "not allowed", null, null, null, null));
+        rec.getMetadata().add(new OpacRecord.Field("Unknown", "not defined", null, null, null, null));
+        rec.getPersons().add(new OpacRecord.Field("Author", "Tychsen", "Oluf Gerhard", null, null, null));
+
+        DocStruct ds = new DigitalDocument().createDocStruct(prefs.getDocStrctTypeByName("Section_Kalliope"));
+        rec.applyTo(ds, RulesetTypes.create(prefs));
+
+        assertEquals(1, ds.getAllMetadata().size());
+        assertEquals("Brief", ds.getAllMetadata().get(0).getValue());
+        assertEquals(1, ds.getAllPersons().size());
+        assertEquals("Tychsen", ds.getAllPersons().get(0).getLastname());
+    }
+}
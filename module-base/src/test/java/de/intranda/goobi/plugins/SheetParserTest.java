@@ -0,0 +1,61 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+import org.junit.Before;
+import org.junit.Test;
+
+import ugh.dl.Prefs;
+
+public class SheetParserTest {
+
+    private static final List<String> HEADER = Arrays.asList("Kalliope-ID", "Strukturelement_Typ", "Ebene", "Bild_von", "Bild_bis", "Haupttitel");
+
+    private Prefs prefs;
+    private ImportConfiguration config;
+
+    @Before
+    public void setUp() throws Exception {
+        String resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+        prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "ruleset.xml");
+
+        XMLConfiguration xmlConfig = new XMLConfiguration();
+        xmlConfig.setExpressionEngine(new XPathExpressionEngine());
+        xmlConfig.load(new StringReader("<config><identifierColumnName>Kalliope-ID</identifierColumnName>"
+                + "<doctypeColumnName>Strukturelement_Typ</doctypeColumnName><hierarchyColumnName>Ebene</hierarchyColumnName>"
+                + "<imageStartColumnName>Bild_von</imageStartColumnName><imageEndColumnName>Bild_bis</imageEndColumnName>"
+                + "<column columnName=\"Haupttitel\" metadata=\"TitleDocMain\" />"
+                + "<docstruct label=\"Abschnitt\" value=\"Section_Kalliope\" /><docstruct label=\"Karte\" value=\"NoSuchType\" /></config>"));
+        config = new ImportConfiguration(xmlConfig.configurationAt("/"));
+    }
+
+    @Test
+    public void testUnusedUndefinedType() throws Exception {
+        SheetParser parser = new SheetParser(config, prefs, null);
+        parser.handleRow(1, HEADER);
+        parser.handleRow(2, Arrays.asList("DE-611-HS-1", "Abschnitt", "1", "1", "2", "Brief"));
+        assertTrue(parser.getErrors().toString(), parser.getErrors().isEmpty());
+    }
+
+    @Test
+    public void testUsedUndefinedType() throws Exception {
+        SheetParser parser = new SheetParser(config, prefs, null);
+        parser.handleRow(1, HEADER);
+        parser.handleRow(2, Arrays.asList("DE-611-HS-1", "Abschnitt", "1", "1", "2", "Brief"));
+        parser.handleRow(3, Arrays.asList("DE-611-HS-2", "Karte", "1", "3", "3", "Karte"));
+        assertEquals(Arrays.asList("Structure type 'NoSuchType' of 'Karte' in row 3 is not defined in the ruleset"), parser.getErrors());
+    }
+}
@@ -0,0 +1,81 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SpoolFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testStrings() throws Exception {
+        try (SpoolFile spool = SpoolFile.create(folder.getRoot().toPath())) {
+            long first = spool.writeStrings(Arrays.asList("Brief", "", null, "Ärztliches Gutachten"));
+            long second = spool.writeStrings(Collections.emptyList());
+            // entries can be read in any order, also while more entries are written
+            assertEquals(Collections.emptyList(), spool.readStrings(second));
+            long third = spool.writeStrings(Arrays.asList("Kalliope"));
+            assertEquals(Arrays.asList("Brief", "", null, "Ärztliches Gutachten"), spool.readStrings(first));
+            assertEquals(Arrays.asList("Kalliope"), spool.readStrings(third));
+        }
+    }
+
+    @Test
+    public void testRecord() throws Exception {
+        OpacRecord rec = new OpacRecord();
+        rec.getMetadata().add(new OpacRecord.Field("TitleDocMain", "Brief", null, null, null, null));
+        rec.getPersons().add(new OpacRecord.Field("Author", "Tychsen", "Oluf Gerhard", "gnd", "http://d-nb.info/gnd/", "116599200"));
+        rec.getCorporates().add(new OpacRecord.Field("Corporation", "Universität Rostock", null, null, null, null));
+
+        try (SpoolFile spool = SpoolFile.create(folder.getRoot().toPath())) {
+            OpacRecord read = spool.readRecord(spool.writeRecord(rec));
+            assertEquals(1, read.getMetadata().size());
+            assertEquals("Brief", read.getMetadata().get(0).getValue());
+            assertNull(read.getMetadata().get(0).getFirstname());
+            OpacRecord.Field person = read.getPersons().get(0);
+            assertEquals("Author", person.getType());
+            assertEquals("Oluf Gerhard", person.getFirstname());
+            assertEquals("116599200", person.getAuthorityValue());
+            assertEquals("Universität Rostock", read.getCorporates().get(0).getValue());
+        }
+    }
+
+    @Test
+    public void testFileIsDeleted() throws Exception {
+        Path tempFolder = folder.newFolder("spool").toPath();
+        SpoolFile spool = SpoolFile.create(tempFolder);
+        spool.writeStrings(Arrays.asList("value"));
+        assertTrue(spool.getSize() > 0);
+        spool.close();
+        try (Stream<Path> files = Files.list(tempFolder)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testSpooledRows() throws Exception {
+        try (SpoolFile spool = SpoolFile.create(folder.getRoot().toPath())) {
+            StructureRows rows = new StructureRows(2, false, spool);
+            for (int i = 0; i < 1000; i++) {
+                rows.add(i + 3, null, 1, "id" + i, i + 1, i + 1, Arrays.asList("Title " + i));
+            }
+            rows.compact();
+            assertEquals(1000, rows.size());
+            assertEquals("id499", rows.getIdentifier(499));
+            assertEquals(Arrays.asList("Title 499", ""), rows.getColumnValues(499));
+            assertEquals(Arrays.asList("Title 0", ""), rows.getColumnValues(0));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+import org.junit.Before;
+import org.junit.Test;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Fileformat;
+import ugh.dl.Prefs;
+import ugh.dl.Reference;
+import ugh.fileformats.mets.MetsMods;
+
+public class StructureCleanerTest {
+
+    private DocStruct logical;
+    private List<DocStruct> pages;
+
+    @Before
+    public void setUp() throws Exception {
+        String resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "ruleset.xml");
+        Fileformat ff = new MetsMods(prefs);
+        ff.read(resourcesFolder + "meta.xml");
+        DigitalDocument digDoc = ff.getDigitalDocument();
+        logical = digDoc.getLogicalDocStruct();
+        pages = digDoc.getPhysicalDocStruct().getAllChildren();
+
+        XMLConfiguration xmlConfig = new XMLConfiguration();
+        xmlConfig.setDelimiterParsingDisabled(true);
+        xmlConfig.setExpressionEngine(new XPathExpressionEngine());
+        xmlConfig.load(resourcesFolder + "plugin_intranda_step_MetadataStructureImport.xml");
+        ImportConfiguration config = new ImportConfiguration(xmlConfig.configurationAt("/config"));
+
+        // two sections, the second one nested in the first one
+        StructureImporter.StructureRowHandler handler = new StructureImporter(config, prefs, null).createRowHandler(digDoc, logical, pages);
+        handler.handleRow(1, Arrays.asList("Goobi_ID", "Goobi_Vorgangstitel", "Strukturelement_Typ", "Order", "Ebene", "Bild_von", "Bild_bis",
+                "Haupttitel", "Kalliope-ID"));
+        handler.handleRow(2, Arrays.asList("1", "Test", "Handschrift", "0", "0", "1", "497", "Test", ""));
+        handler.handleRow(3, Arrays.asList("1", "Test", "Abschnitt (Kalliope)", "0", "1", "1", "4", "Section", ""));
+        handler.handleRow(4, Arrays.asList("1", "Test", "Abschnitt (Kalliope)", "0", "2", "3", "4", "Subsection", ""));
+        handler.finish();
+    }
+
+    @Test
+    public void testRemoveChildren() {
+        DocStruct section = logical.getAllChildren().get(0);
+        DocStruct subsection = section.getAllChildren().get(0);
+
+        assertEquals(2, StructureCleaner.removeChildren(logical));
+
+        assertTrue(logical.getAllChildren() == null || logical.getAllChildren().isEmpty());
+        assertTrue(section.getAllToReferences().isEmpty());
+        // the references of nested elements are removed as well
+        assertTrue(subsection.getAllToReferences().isEmpty());
+        for (Reference ref : pages.get(2).getAllFromReferences()) {
+            assertNotSame(subsection, ref.getSource());
+            assertNotSame(section, ref.getSource());
+        }
+        // the root element keeps its pages
+        assertEquals(497, logical.getAllToReferences("logical_physical").size());
+    }
+}
@@ -0,0 +1,78 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.easymock.EasyMock;
+import org.goobi.beans.Process;
+import org.goobi.beans.Step;
+import org.goobi.production.enums.PluginReturnValue;
+import org.junit.Test;
+
+public class StructureImportBatchTest {
+
+    private static Process createProcess(String title, String stepTitle) {
+        Step step = EasyMock.createNiceMock(Step.class);
+        EasyMock.expect(step.getTitel()).andReturn(stepTitle).anyTimes();
+        Process process = EasyMock.createNiceMock(Process.class);
+        EasyMock.expect(process.getTitel()).andReturn(title).anyTimes();
+        EasyMock.expect(process.getSchritte()).andReturn(Collections.singletonList(step)).anyTimes();
+        EasyMock.replay(step, process);
+        return process;
+    }
+
+    @Test
+    public void testFailedProcessDoesNotAffectOthers() {
+        List<String> imported = Collections.synchronizedList(new ArrayList<>());
+        StructureImportBatch batch = new StructureImportBatch("structure import", 2) {
+            @Override
+            PluginReturnValue importProcess(Process process, Step step) {
+                switch (process.getTitel()) {
+                    case "failing":
+                        throw new IllegalStateException("Cannot read the metadata file");
+                    case "invalid":
+                        return PluginReturnValue.ERROR;
+                    default:
+                        imported.add(process.getTitel());
+                        return PluginReturnValue.FINISH;
+                }
+            }
+        };
+
+        StructureImportBatch.BatchResult result = batch.run(Arrays.asList(createProcess("first", "structure import"),
+                createProcess("failing", "structure import"), createProcess("invalid", "structure import"),
+                createProcess("noStep", "other step"), createProcess("last", "structure import")));
+
+        assertEquals(Arrays.asList("first", "last"), result.getFinished());
+        assertTrue(imported.containsAll(result.getFinished()));
+        assertEquals(Arrays.asList("failing", "invalid", "noStep"), new ArrayList<>(result.getErrors().keySet()));
+        assertEquals("Cannot read the metadata file", result.getErrors().get("failing"));
+        assertEquals("Process noStep has no step structure import", result.getErrors().get("noStep"));
+    }
+
+    @Test
+    public void testCancelBetweenProcesses() {
+        ImportProgress progress = new ImportProgress();
+        StructureImportBatch batch = new StructureImportBatch("structure import", 1) {
+            @Override
+            PluginReturnValue importProcess(Process process, Step step) {
+                // the running import is finished, the next processes are skipped
+                progress.cancel();
+                return PluginReturnValue.FINISH;
+            }
+        };
+
+        StructureImportBatch.BatchResult result = batch.run(Arrays.asList(createProcess("first", "structure import"),
+                createProcess("second", "structure import"), createProcess("third", "structure import")), progress);
+
+        assertEquals(Arrays.asList("first"), result.getFinished());
+        assertEquals(Arrays.asList("second", "third"), result.getCancelled());
+        assertEquals(1, progress.getProcessedRows());
+        assertEquals(3, progress.getTotalRows());
+    }
+}
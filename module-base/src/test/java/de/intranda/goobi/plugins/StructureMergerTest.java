@@ -0,0 +1,126 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+import org.junit.Before;
+import org.junit.Test;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Fileformat;
+import ugh.dl.Metadata;
+import ugh.dl.Prefs;
+import ugh.fileformats.mets.MetsMods;
+
+public class StructureMergerTest {
+
+    private static final List<String> HEADER = Arrays.asList("Goobi_ID", "Goobi_Vorgangstitel", "Strukturelement_Typ", "Order", "Ebene",
+            "Bild_von", "Bild_bis", "Haupttitel", "Kalliope-ID");
+
+    private String resourcesFolder;
+    private Prefs prefs;
+    private ImportConfiguration config;
+    private DigitalDocument digDoc;
+    private DocStruct logical;
+    private List<DocStruct> pages;
+
+    @Before
+    public void setUp() throws Exception {
+        resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+
+        prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "ruleset.xml");
+        Fileformat ff = new MetsMods(prefs);
+        ff.read(resourcesFolder + "meta.xml");
+        digDoc = ff.getDigitalDocument();
+        logical = digDoc.getLogicalDocStruct();
+        pages = digDoc.getPhysicalDocStruct().getAllChildren();
+
+        XMLConfiguration xmlConfig = new XMLConfiguration();
+        xmlConfig.setDelimiterParsingDisabled(true);
+        xmlConfig.setExpressionEngine(new XPathExpressionEngine());
+        xmlConfig.load(resourcesFolder + "plugin_intranda_step_MetadataStructureImport.xml");
+        xmlConfig.setProperty("/config/incrementalImport", "true");
+        config = new ImportConfiguration(xmlConfig.configurationAt("/config"));
+    }
+
+    @Test
+    public void testMatchedElementsAreKept() throws Exception {
+        importRows(row(1, "1", "2", "Title A", "A"), row(2, "3", "3", "Title B", "B"), row(1, "4", "4", "Title C", ""));
+        DocStruct a = logical.getAllChildren().get(0);
+        DocStruct b = a.getAllChildren().get(0);
+        DocStruct c = logical.getAllChildren().get(1);
+
+        // simulate data from the catalogue, it must survive the second import
+        Metadata subTitle = new Metadata(prefs.getMetadataTypeByName("TitleDocSub"));
+        subTitle.setValue("catalogue data");
+        a.addMetadata(subTitle);
+
+        importRows(row(1, "1", "2", "Title A changed", "A"), row(1, "5", "5", "Title D", "D"), row(1, "3", "3", "Title B", "B"));
+
+        List<DocStruct> children = logical.getAllChildren();
+        assertEquals(3, children.size());
+        assertSame(a, children.get(0));
+        assertSame(b, children.get(2));
+        assertNotSame(c, children.get(1));
+        assertEquals("D", getValue(children.get(1), "CatalogIDKalliope"));
+
+        assertTrue(a.getAllChildren() == null || a.getAllChildren().isEmpty());
+        assertEquals("Title A changed", getValue(a, "TitleDocMain"));
+        assertEquals("catalogue data", getValue(a, "TitleDocSub"));
+
+        assertEquals(1, b.getAllToReferences("logical_physical").size());
+        assertSame(pages.get(2), b.getAllToReferences("logical_physical").get(0).getTarget());
+        assertTrue(c.getAllToReferences() == null || c.getAllToReferences().isEmpty());
+    }
+
+    @Test
+    public void testUnchangedImport() throws Exception {
+        importRows(row(1, "1", "2", "Title A", "A"), row(2, "3", "3", "Title B", ""));
+        DocStruct a = logical.getAllChildren().get(0);
+        DocStruct b = a.getAllChildren().get(0);
+
+        importRows(row(1, "1", "2", "Title A", "A"), row(2, "3", "3", "Title B", ""));
+
+        assertEquals(1, logical.getAllChildren().size());
+        assertSame(a, logical.getAllChildren().get(0));
+        assertSame(b, a.getAllChildren().get(0));
+        assertEquals(2, a.getAllToReferences("logical_physical").size());
+        assertEquals(1, b.getAllToReferences("logical_physical").size());
+    }
+
+    @SafeVarargs
+    private void importRows(List<String>... rows) throws Exception {
+        StructureImporter importer = new StructureImporter(config, prefs, null);
+        StructureImporter.StructureRowHandler handler = importer.createRowHandler(digDoc, logical, pages);
+        handler.handleRow(1, HEADER);
+        handler.handleRow(2, Arrays.asList("1", "Test", "Handschrift", "0", "0", "1", "497", "Test", ""));
+        int rowNumber = 3;
+        for (List<String> row : rows) {
+            handler.handleRow(rowNumber++, row);
+        }
+        handler.finish();
+    }
+
+    private static List<String> row(int hierarchy, String start, String end, String title, String identifier) {
+        return Arrays.asList("1", "Test", "Abschnitt (Kalliope)", "0", String.valueOf(hierarchy), start, end, title, identifier);
+    }
+
+    private String getValue(DocStruct ds, String metadataType) {
+        return ds.getAllMetadataByType(prefs.getMetadataTypeByName(metadataType)).get(0).getValue();
+    }
+}
@@ -0,0 +1,154 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.intranda.goobi.plugins.StructurePreview.PreviewNode;
+
+public class StructurePreviewTest {
+
+    private static final int PROCESS_ID = 4711;
+
+    private XMLConfiguration xmlConfig;
+    private ImportConfiguration config;
+
+    @Before
+    public void setUp() throws Exception {
+        String resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+        xmlConfig = new XMLConfiguration();
+        xmlConfig.setDelimiterParsingDisabled(true);
+        xmlConfig.setExpressionEngine(new XPathExpressionEngine());
+        xmlConfig.load(resourcesFolder + "plugin_intranda_step_MetadataStructureImport.xml");
+        config = new ImportConfiguration(xmlConfig.configurationAt("/config"));
+    }
+
+    @After
+    public void tearDown() {
+        StructurePreview.removeCached(PROCESS_ID);
+    }
+
+    @Test
+    public void testExpandAndCollapse() {
+        // 0: publication, 1: chapter with 2 sections, 4: chapter without children
+        SheetParser sheet = sheet(null, 0, 1, 2, 2, 1);
+        StructurePreview preview = StructurePreview.create(PROCESS_ID, parsed(sheet), config);
+
+        assertTrue(preview.isAvailable());
+        assertEquals(4, preview.getElementCount());
+        List<PreviewNode> nodes = preview.getNodes();
+        assertEquals(Arrays.asList(1, 4), ids(nodes));
+        assertTrue(nodes.get(0).isHasChildren());
+        assertFalse(nodes.get(1).isHasChildren());
+        assertEquals("2-3", nodes.get(0).getPages());
+
+        preview.toggle(1);
+        nodes = preview.getNodes();
+        assertEquals(Arrays.asList(1, 2, 3, 4), ids(nodes));
+        assertEquals(1, nodes.get(1).getLevel());
+        assertEquals("Title 2", nodes.get(1).getTitle());
+
+        preview.collapseAll();
+        assertEquals(Arrays.asList(1, 4), ids(preview.getNodes()));
+    }
+
+    @Test
+    public void testPaging() {
+        int[] hierarchies = new int[StructurePreview.PAGE_SIZE * 2 + 10];
+        Arrays.fill(hierarchies, 1);
+        StructurePreview preview = StructurePreview.create(PROCESS_ID, parsed(sheet(null, hierarchies)), config);
+
+        assertEquals(3, preview.getPageCount());
+        assertEquals(StructurePreview.PAGE_SIZE, preview.getNodes().size());
+        preview.lastPage();
+        assertEquals(3, preview.getPageNumber());
+        assertEquals(10, preview.getNodes().size());
+        assertEquals(StructurePreview.PAGE_SIZE * 2, preview.getNodes().get(0).getId());
+        preview.nextPage();
+        assertEquals(3, preview.getPageNumber());
+        preview.firstPage();
+        assertEquals(0, preview.getNodes().get(0).getId());
+    }
+
+    @Test
+    public void testSheets() {
+        xmlConfig.setProperty("/config/readAllSheets", "true");
+        xmlConfig.setProperty("/config/sheetDocstruct", "Volume");
+        config = new ImportConfiguration(xmlConfig.configurationAt("/config"));
+        StructurePreview preview = StructurePreview.create(PROCESS_ID, parsed(sheet("Volume 1", 1, 2), sheet("Empty"), sheet("Volume 2", 1)), config);
+
+        // rows are numbered first, followed by the elements of the sheets
+        List<PreviewNode> nodes = preview.getNodes();
+        assertEquals(Arrays.asList(3, 4, 5), ids(nodes));
+        assertEquals("Volume 1", nodes.get(0).getTitle());
+        assertEquals(0, nodes.get(0).getRowNumber());
+
+        preview.toggle(5);
+        nodes = preview.getNodes();
+        assertEquals(Arrays.asList(3, 4, 5, 2), ids(nodes));
+        assertEquals("Title 0", nodes.get(3).getTitle());
+    }
+
+    @Test
+    public void testSheetsWithoutElements() {
+        // without a structure type for the sheets, the rows of all sheets are added below the root element like in the import
+        xmlConfig.setProperty("/config/readAllSheets", "true");
+        config = new ImportConfiguration(xmlConfig.configurationAt("/config"));
+        StructurePreview preview = StructurePreview.create(PROCESS_ID, parsed(sheet("Volume 1", 1, 2), sheet("Volume 2", 1)), config);
+
+        List<PreviewNode> nodes = preview.getNodes();
+        assertEquals(Arrays.asList(0, 2), ids(nodes));
+        assertEquals("Title 0", nodes.get(1).getTitle());
+    }
+
+    @Test
+    public void testExpiredPreview() {
+        StructurePreview preview = StructurePreview.create(PROCESS_ID, parsed(sheet(null, 1)), config);
+        assertEquals(1, preview.getNodes().size());
+        StructurePreview.removeCached(PROCESS_ID);
+        // the preview keeps the rows it has loaded, a new preview for the process is not available
+        assertTrue(preview.isAvailable());
+        assertFalse(new StructurePreview(PROCESS_ID, new ArrayList<>(), "Sheet").isAvailable());
+    }
+
+    private SheetParser sheet(String name, int... hierarchies) {
+        SheetParser sheet = new SheetParser(config, null, name);
+        for (int i = 0; i < hierarchies.length; i++) {
+            List<String> values = new ArrayList<>();
+            for (int column = 0; column < config.getColumns().size(); column++) {
+                values.add(column == 0 ? "Title " + i : "");
+            }
+            sheet.getRows().add(i + 2, null, hierarchies[i], "", i + 1, i + 2, values);
+        }
+        return sheet;
+    }
+
+    private static ParsedSpreadsheet parsed(SheetParser... sheets) {
+        Path file = Paths.get("structure.xlsx");
+        return new ParsedSpreadsheet(file, 0, 0, Arrays.asList(sheets));
+    }
+
+    private static List<Integer> ids(List<PreviewNode> nodes) {
+        List<Integer> ids = new ArrayList<>();
+        for (PreviewNode node : nodes) {
+            ids.add(node.getId());
+        }
+        return ids;
+    }
+}
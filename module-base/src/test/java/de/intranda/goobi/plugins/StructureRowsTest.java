@@ -0,0 +1,85 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class StructureRowsTest {
+
+    @Test
+    public void testRowsAreStoredByColumn() {
+        StructureRows rows = new StructureRows(2);
+        for (int i = 0; i < 1000; i++) {
+            rows.add(i + 3, null, i % 3, "id" + i, i + 1, i + 2, Arrays.asList("Title " + i, new String("Kalliope")));
+        }
+        rows.compact();
+
+        assertEquals(1000, rows.size());
+        assertEquals(502, rows.getRowNumber(499));
+        assertEquals(1, rows.getHierarchy(499));
+        assertEquals("id499", rows.getIdentifier(499));
+        assertEquals(500, rows.getStartPage(499));
+        assertEquals(501, rows.getEndPage(499));
+        assertEquals(Arrays.asList("Title 499", "Kalliope"), rows.getColumnValues(499));
+
+        // repeated values are stored once
+        assertSame(rows.getColumnValues(0).get(1), rows.getColumnValues(999).get(1));
+    }
+
+    @Test
+    public void testMissingColumnValues() {
+        StructureRows rows = new StructureRows(2);
+        rows.add(1, null, 1, "", 1, 1, Arrays.asList("only one"));
+        assertEquals(Arrays.asList("only one", ""), rows.getColumnValues(0));
+    }
+
+    @Test
+    public void testSkippedLevels() {
+        StructureRows rows = new StructureRows(0);
+        int[] levels = { 0, 1, 3, 2, 4, 1, 0, 2 };
+        for (int i = 0; i < levels.length; i++) {
+            rows.add(i + 2, null, levels[i], "", 1, 1, Collections.emptyList());
+        }
+        // level 2 after the jump from 1 to 3 is a child of the row on level 1, not its sibling
+        assertArrayEquals(new int[] { -1, -1, 1, 1, 3, -1, -1, -1 }, rows.getParents());
+        assertArrayEquals(new int[] { 0, 1, 2, 3, 4, 5, 6, 7 }, rows.getOrder());
+        assertTrue(rows.getTreeErrors().isEmpty());
+    }
+
+    @Test
+    public void testParentIds() {
+        StructureRows rows = new StructureRows(0, true);
+        rows.add(2, null, 1, "", "c", "b", 1, 1, Collections.emptyList());
+        rows.add(3, null, 1, "", "a", "", 1, 1, Collections.emptyList());
+        rows.add(4, null, 1, "", "d", "a", 1, 1, Collections.emptyList());
+        rows.add(5, null, 1, "", "b", "a", 1, 1, Collections.emptyList());
+        rows.add(6, null, 1, "", "e", "", 1, 1, Collections.emptyList());
+
+        assertTrue(rows.isParentIdMode());
+        assertArrayEquals(new int[] { 3, -1, 1, 1, -1 }, rows.getParents());
+        // parents before children, siblings in row order
+        assertArrayEquals(new int[] { 1, 2, 3, 0, 4 }, rows.getOrder());
+        assertTrue(rows.getTreeErrors().isEmpty());
+    }
+
+    @Test
+    public void testInvalidParentIds() {
+        StructureRows rows = new StructureRows(0, true);
+        rows.add(2, null, 1, "", "a", "x", 1, 1, Collections.emptyList());
+        rows.add(3, null, 1, "", "b", "c", 1, 1, Collections.emptyList());
+        rows.add(4, null, 1, "", "c", "b", 1, 1, Collections.emptyList());
+        rows.add(5, null, 1, "", "a", "", 1, 1, Collections.emptyList());
+
+        assertEquals(Arrays.asList("Id 'a' in row 5 is already used in row 2", "Parent id 'x' in row 2 does not exist",
+                "Row 3 is not below the root element, its parent ids form a cycle",
+                "Row 4 is not below the root element, its parent ids form a cycle"), rows.getTreeErrors());
+        assertArrayEquals(new int[] { -1, -1, -1, -1 }, rows.getParents());
+        assertEquals(4, rows.getOrder().length);
+    }
+}
@@ -0,0 +1,71 @@
+package de.intranda.goobi.plugins;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Decodes the configured cells of a workbook that is already loaded, without the cost of opening the file
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CellValueBenchmark {
+
+    @Param({ "1000", "10000", "50000" })
+    private int rows;
+
+    private Path folder;
+    private Workbook workbook;
+    private Sheet sheet;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        folder = Files.createTempDirectory("structure-benchmark");
+        Path excelFile = folder.resolve("structure.xlsx");
+        SyntheticData.writeWorkbook(excelFile, rows, rows, 4);
+        try (InputStream in = Files.newInputStream(excelFile)) {
+            workbook = WorkbookFactory.create(in);
+        }
+        sheet = workbook.getSheetAt(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        workbook.close();
+        FileUtils.deleteQuietly(folder.toFile());
+    }
+
+    @Benchmark
+    public void getCellValue(Blackhole blackhole) {
+        for (Row row : sheet) {
+            for (int column : SpreadsheetReaderBenchmark.CONFIGURED_COLUMNS) {
+                blackhole.consume(ExcelWorkbookReader.getCellValue(row, column));
+            }
+        }
+    }
+}
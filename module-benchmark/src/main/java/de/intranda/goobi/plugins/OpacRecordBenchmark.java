@@ -0,0 +1,104 @@
+package de.intranda.goobi.plugins;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.DocStructType;
+import ugh.dl.Fileformat;
+import ugh.dl.Metadata;
+import ugh.dl.Person;
+import ugh.dl.Prefs;
+import ugh.fileformats.mets.MetsMods;
+
+/**
+ * Copies the metadata of a typical catalogue record into a structure element
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OpacRecordBenchmark {
+
+    private Path folder;
+    private Prefs prefs;
+    private RulesetTypes rulesetTypes;
+    private DigitalDocument digDoc;
+    private DocStructType sectionType;
+
+    private Fileformat opacResponse;
+    private OpacRecord opacRecord;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        folder = Files.createTempDirectory("structure-benchmark");
+        prefs = SyntheticData.loadPrefs(folder);
+        sectionType = prefs.getDocStrctTypeByName("Section_Kalliope");
+        rulesetTypes = RulesetTypes.create(prefs);
+
+        // catalogue response with a title, an identifier, some notes and subjects and a few persons
+        DigitalDocument opacDocument = new DigitalDocument();
+        DocStruct opacLogical = opacDocument.createDocStruct(sectionType);
+        opacDocument.setLogicalDocStruct(opacLogical);
+        addMetadata(opacLogical, "TitleDocMain", "Brief an Andreas Gottlieb Masch");
+        addMetadata(opacLogical, "CatalogIDKalliope", "DE-611-HS-3000001");
+        addMetadata(opacLogical, "PublicationYear", "1772");
+        for (int i = 0; i < 5; i++) {
+            addMetadata(opacLogical, "Note", "Note " + i);
+            addMetadata(opacLogical, "Subject", "Subject " + i);
+        }
+        for (String role : new String[] { "Author", "Addressee", "Correspondent" }) {
+            Person person = new Person(prefs.getMetadataTypeByName(role));
+            person.setLastname("Tychsen");
+            person.setFirstname("Oluf Gerhard");
+            opacLogical.addPerson(person);
+        }
+        opacResponse = new MetsMods(prefs);
+        opacResponse.setDigitalDocument(opacDocument);
+        opacRecord = OpacRecord.fromFileformat(opacResponse);
+
+        digDoc = new DigitalDocument();
+    }
+
+    private void addMetadata(DocStruct ds, String type, String value) throws Exception {
+        Metadata md = new Metadata(prefs.getMetadataTypeByName(type));
+        md.setValue(value);
+        ds.addMetadata(md);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtils.deleteQuietly(folder.toFile());
+    }
+
+    @Benchmark
+    public OpacRecord fromFileformat() throws Exception {
+        return OpacRecord.fromFileformat(opacResponse);
+    }
+
+    @Benchmark
+    public DocStruct applyTo() throws Exception {
+        // a new element for each invocation, otherwise the metadata would accumulate
+        DocStruct ds = digDoc.createDocStruct(sectionType);
+        opacRecord.applyTo(ds, rulesetTypes);
+        return ds;
+    }
+}
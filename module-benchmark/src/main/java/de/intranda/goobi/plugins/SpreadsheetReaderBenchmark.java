@@ -0,0 +1,108 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reads a complete workbook with each reader and touches the values of the configured columns. The csv reader reads the same rows from a csv
+ * file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SpreadsheetReaderBenchmark {
+
+    // columns used by the configuration: type, level, first and last image, title, identifier
+    static final int[] CONFIGURED_COLUMNS = { 2, 4, 5, 6, 7, 8 };
+
+    @Param({ "1000", "10000", "50000" })
+    private int rows;
+
+    private Path folder;
+    private Path excelFile;
+    private Path csvFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        folder = Files.createTempDirectory("structure-benchmark");
+        excelFile = folder.resolve("structure.xlsx");
+        SyntheticData.writeWorkbook(excelFile, rows, rows, 4);
+        csvFile = folder.resolve("structure.csv");
+        writeCsvFile();
+    }
+
+    private void writeCsvFile() throws Exception {
+        try (Writer w = Files.newBufferedWriter(csvFile, StandardCharsets.UTF_8)) {
+            new ExcelStreamingReader().read(excelFile, (rowNumber, values) -> {
+                try {
+                    for (int i = 0; i < values.size(); i++) {
+                        w.write(i == 0 ? "\"" : ",\"");
+                        w.write(values.get(i).replace("\"", "\"\""));
+                        w.write("\"");
+                    }
+                    w.write("\n");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return true;
+            });
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtils.deleteQuietly(folder.toFile());
+    }
+
+    @Benchmark
+    public void workbookReader(Blackhole blackhole) throws Exception {
+        read(new ExcelWorkbookReader(), blackhole);
+    }
+
+    @Benchmark
+    public void streamingReader(Blackhole blackhole) throws Exception {
+        read(new ExcelStreamingReader(), blackhole);
+    }
+
+    @Benchmark
+    public void csvReader(Blackhole blackhole) throws Exception {
+        read(new DelimitedFileReader(',', StandardCharsets.UTF_8), csvFile, blackhole);
+    }
+
+    private void read(SpreadsheetReader reader, Blackhole blackhole) throws Exception {
+        read(reader, excelFile, blackhole);
+    }
+
+    private void read(SpreadsheetReader reader, Path file, Blackhole blackhole) throws Exception {
+        reader.read(file, (rowNumber, values) -> {
+            for (int column : CONFIGURED_COLUMNS) {
+                blackhole.consume(values.get(column));
+            }
+            return true;
+        });
+    }
+}
@@ -0,0 +1,113 @@
+package de.intranda.goobi.plugins;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.Fileformat;
+import ugh.dl.Prefs;
+import ugh.fileformats.mets.MetsMods;
+
+/**
+ * Adds parsed rows to a freshly loaded metadata file. The spreadsheet is read once before the measurement and the metadata file is read again
+ * before each invocation, so only the creation of the structure elements and the page assignments are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StructureBuildingBenchmark {
+
+    // number of rows and pages
+    @Param({ "1000", "10000", "50000" })
+    private int size;
+
+    private Path folder;
+    private Path metadataFile;
+    private Prefs prefs;
+    private StructureImporter importer;
+
+    // one element per page, nested up to level 4
+    private List<List<String>> hierarchyRows;
+    // flat list of elements with 100 pages each
+    private List<List<String>> pageRangeRows;
+
+    private DigitalDocument digDoc;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        folder = Files.createTempDirectory("structure-benchmark");
+        prefs = SyntheticData.loadPrefs(folder);
+        importer = new StructureImporter(SyntheticData.createConfiguration(true), prefs, null);
+
+        metadataFile = folder.resolve("meta.xml");
+        SyntheticData.writeMetadataFile(metadataFile, size);
+
+        Path excelFile = folder.resolve("hierarchy.xlsx");
+        SyntheticData.writeWorkbook(excelFile, size, size, 4);
+        hierarchyRows = readRows(excelFile);
+
+        excelFile = folder.resolve("ranges.xlsx");
+        SyntheticData.writeWorkbook(excelFile, Math.max(1, size / 100), size, 1);
+        pageRangeRows = readRows(excelFile);
+    }
+
+    @Setup(Level.Invocation)
+    public void readMetadataFile() throws Exception {
+        Fileformat fileformat = new MetsMods(prefs);
+        fileformat.read(metadataFile.toString());
+        digDoc = fileformat.getDigitalDocument();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtils.deleteQuietly(folder.toFile());
+    }
+
+    @Benchmark
+    public DigitalDocument hierarchy() throws Exception {
+        return addRows(hierarchyRows);
+    }
+
+    @Benchmark
+    public DigitalDocument pageAssignment() throws Exception {
+        return addRows(pageRangeRows);
+    }
+
+    private DigitalDocument addRows(List<List<String>> rows) throws Exception {
+        StructureImporter.StructureRowHandler handler =
+                importer.createRowHandler(digDoc, digDoc.getLogicalDocStruct(), digDoc.getPhysicalDocStruct().getAllChildren());
+        int rowNumber = 0;
+        for (List<String> row : rows) {
+            handler.handleRow(rowNumber++, row);
+        }
+        handler.finish();
+        return digDoc;
+    }
+
+    private static List<List<String>> readRows(Path excelFile) throws Exception {
+        List<List<String>> rows = new ArrayList<>();
+        new ExcelStreamingReader().read(excelFile, (rowNumber, values) -> rows.add(new ArrayList<>(values)));
+        return rows;
+    }
+}
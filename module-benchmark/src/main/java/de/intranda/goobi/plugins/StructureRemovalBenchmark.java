@@ -0,0 +1,110 @@
+package de.intranda.goobi.plugins;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Fileformat;
+import ugh.dl.Prefs;
+import ugh.dl.Reference;
+import ugh.fileformats.mets.MetsMods;
+
+/**
+ * Removes an imported structure before a new import. The structure is created again before each invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StructureRemovalBenchmark {
+
+    // number of rows and pages
+    @Param({ "1000", "10000", "50000" })
+    private int size;
+
+    private Path folder;
+    private Path metadataFile;
+    private Prefs prefs;
+    private StructureImporter importer;
+    private List<List<String>> rows;
+
+    private DocStruct logical;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        folder = Files.createTempDirectory("structure-benchmark");
+        prefs = SyntheticData.loadPrefs(folder);
+        importer = new StructureImporter(SyntheticData.createConfiguration(true), prefs, null);
+
+        metadataFile = folder.resolve("meta.xml");
+        SyntheticData.writeMetadataFile(metadataFile, size);
+
+        // sections with 10 pages each, nested up to level 4
+        Path excelFile = folder.resolve("structure.xlsx");
+        SyntheticData.writeWorkbook(excelFile, Math.max(1, size / 10), size, 4);
+        rows = new ArrayList<>();
+        new ExcelStreamingReader().read(excelFile, (rowNumber, values) -> rows.add(new ArrayList<>(values)));
+    }
+
+    @Setup(Level.Invocation)
+    public void createStructure() throws Exception {
+        Fileformat fileformat = new MetsMods(prefs);
+        fileformat.read(metadataFile.toString());
+        DigitalDocument digDoc = fileformat.getDigitalDocument();
+        logical = digDoc.getLogicalDocStruct();
+        StructureImporter.StructureRowHandler handler =
+                importer.createRowHandler(digDoc, logical, digDoc.getPhysicalDocStruct().getAllChildren());
+        int rowNumber = 0;
+        for (List<String> row : rows) {
+            handler.handleRow(rowNumber++, row);
+        }
+        handler.finish();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtils.deleteQuietly(folder.toFile());
+    }
+
+    @Benchmark
+    public int bulkRemoval() {
+        return StructureCleaner.removeChildren(logical);
+    }
+
+    /**
+     * The previous implementation, removes each reference of the direct children on its own
+     */
+    @Benchmark
+    public int referenceByReference() {
+        List<DocStruct> children = new ArrayList<>(logical.getAllChildren());
+        for (DocStruct child : children) {
+            List<Reference> refs = new ArrayList<>(child.getAllToReferences());
+            for (Reference ref : refs) {
+                child.removeReferenceTo(ref.getTarget());
+            }
+            logical.removeChild(child);
+        }
+        return children.size();
+    }
+}
@@ -0,0 +1,167 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.SubnodeConfiguration;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import ugh.dl.Prefs;
+import ugh.exceptions.PreferencesException;
+
+/**
+ * Generates the files used by the benchmarks: workbooks in the layout of the example file of the plugin tests, metadata files with a given
+ * number of pages and the matching plugin configuration.
+ */
+public final class SyntheticData {
+
+    public static final String[] HEADER = { "Goobi_ID", "Goobi_Vorgangstitel", "Strukturelement_Typ", "Order", "Ebene", "Bild_von", "Bild_bis",
+            "Haupttitel", "Kalliope-ID" };
+
+    private static final String CONFIGURATION = "<config_plugin><config>" //
+            + "<project>*</project><step>*</step>" //
+            + "<rowHeader>1</rowHeader><rowDataStart>3</rowDataStart><rowDataEnd>1000000</rowDataEnd>" //
+            + "<streamingReader>%s</streamingReader>" //
+            + "<identifierColumnName>Kalliope-ID</identifierColumnName>" //
+            + "<doctypeColumnName>Strukturelement_Typ</doctypeColumnName>" //
+            + "<hierarchyColumnName>Ebene</hierarchyColumnName>" //
+            + "<imageStartColumnName>Bild_von</imageStartColumnName>" //
+            + "<imageEndColumnName>Bild_bis</imageEndColumnName>" //
+            + "<column columnName=\"Haupttitel\" type=\"metadata\" metadata=\"TitleDocMain\" />" //
+            + "<column columnName=\"Kalliope-ID\" type=\"metadata\" metadata=\"CatalogIDKalliope\" />" //
+            + "<docstruct label=\"Handschrift\" value=\"Monograph\"/>" //
+            + "<docstruct label=\"Abschnitt (Kalliope)\" value=\"Section_Kalliope\"/>" //
+            + "</config></config_plugin>";
+
+    private SyntheticData() {
+    }
+
+    /**
+     * Write a workbook with a root row on hierarchy level 0 and the given number of data rows. The data rows repeat the levels 1 to depth and
+     * divide the pages into consecutive ranges of equal size. The range of a row is extended to the ranges of its children.
+     *
+     * @param file the workbook to create
+     * @param rows number of data rows
+     * @param pages number of pages
+     * @param depth deepest hierarchy level, 1 creates a flat list
+     * @throws IOException
+     */
+    public static void writeWorkbook(Path file, int rows, int pages, int depth) throws IOException {
+        // keep only a small window of rows in memory, the large workbooks would not fit otherwise
+        try (SXSSFWorkbook wb = new SXSSFWorkbook(100); OutputStream out = Files.newOutputStream(file)) {
+            Sheet sheet = wb.createSheet();
+            Row header = sheet.createRow(0);
+            for (int i = 0; i < HEADER.length; i++) {
+                header.createCell(i).setCellValue(HEADER[i]);
+            }
+            writeRow(sheet.createRow(1), 0, "Handschrift", 0, 1, pages);
+            for (int i = 0; i < rows; i++) {
+                int level = i % depth + 1;
+                int start = (int) ((long) i * pages / rows) + 1;
+                // the last child follows the row directly, as the levels only increase within a group
+                int lastChild = i + depth - level;
+                lastChild = Math.min(lastChild, rows - 1);
+                int end = Math.max(start, (int) ((long) (lastChild + 1) * pages / rows));
+                writeRow(sheet.createRow(i + 2), i + 1, "Abschnitt (Kalliope)", level, start, end);
+            }
+            wb.write(out);
+            wb.dispose();
+        }
+    }
+
+    private static void writeRow(Row row, int number, String doctype, int level, int start, int end) {
+        row.createCell(0).setCellValue(11492);
+        row.createCell(1).setCellValue("konvbrlom_842171568");
+        row.createCell(2).setCellValue(doctype);
+        row.createCell(3).setCellValue(number);
+        row.createCell(4).setCellValue(level);
+        row.createCell(5).setCellValue(start);
+        row.createCell(6).setCellValue(end);
+        row.createCell(7).setCellValue("Brief " + number);
+        row.createCell(8).setCellValue("DE-611-HS-" + (3000000 + number));
+    }
+
+    /**
+     * Write a metadata file with an empty logical element and the given number of pages, all linked to the logical element
+     *
+     * @param file the metadata file to create
+     * @param pages number of pages
+     * @throws IOException
+     */
+    public static void writeMetadataFile(Path file, int pages) throws IOException {
+        try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            w.write("<mets:mets xmlns:mets=\"http://www.loc.gov/METS/\" xmlns:mods=\"http://www.loc.gov/mods/v3\""
+                    + " xmlns:goobi=\"http://meta.goobi.org/v1.5.1/\" xmlns:xlink=\"http://www.w3.org/1999/xlink\">\n");
+            w.write("<mets:dmdSec ID=\"DMDLOG_0000\"><mets:mdWrap MDTYPE=\"MODS\"><mets:xmlData><mods:mods><mods:extension><goobi:goobi>"
+                    + "<goobi:metadata name=\"TitleDocMain\">Synthetic record</goobi:metadata>"
+                    + "</goobi:goobi></mods:extension></mods:mods></mets:xmlData></mets:mdWrap></mets:dmdSec>\n");
+            w.write("<mets:dmdSec ID=\"DMDPHYS_0000\"><mets:mdWrap MDTYPE=\"MODS\"><mets:xmlData><mods:mods><mods:extension><goobi:goobi>"
+                    + "<goobi:metadata name=\"pathimagefiles\">file:///opt/digiverso/goobi/metadata/1/images/synthetic_tif</goobi:metadata>"
+                    + "</goobi:goobi></mods:extension></mods:mods></mets:xmlData></mets:mdWrap></mets:dmdSec>\n");
+            w.write("<mets:fileSec><mets:fileGrp USE=\"LOCAL\">\n");
+            for (int i = 1; i <= pages; i++) {
+                w.write(String.format("<mets:file ID=\"FILE_%04d\" MIMETYPE=\"image/tiff\"><mets:FLocat LOCTYPE=\"URL\""
+                        + " xlink:href=\"file:///opt/digiverso/goobi/metadata/1/images/synthetic_tif/%08d.tif\"/></mets:file>\n", i, i));
+            }
+            w.write("</mets:fileGrp></mets:fileSec>\n");
+            w.write("<mets:structMap TYPE=\"LOGICAL\"><mets:div DMDID=\"DMDLOG_0000\" ID=\"LOG_0000\" TYPE=\"Monograph\"/></mets:structMap>\n");
+            w.write("<mets:structMap TYPE=\"PHYSICAL\"><mets:div DMDID=\"DMDPHYS_0000\" ID=\"PHYS_0000\" TYPE=\"BoundBook\">\n");
+            for (int i = 1; i <= pages; i++) {
+                w.write(String.format("<mets:div ID=\"PHYS_%04d\" ORDER=\"%d\" ORDERLABEL=\"%d\" TYPE=\"page\">"
+                        + "<mets:fptr FILEID=\"FILE_%04d\"/></mets:div>\n", i, i, i, i));
+            }
+            w.write("</mets:div></mets:structMap>\n");
+            w.write("<mets:structLink>\n");
+            for (int i = 1; i <= pages; i++) {
+                w.write(String.format("<mets:smLink xlink:to=\"PHYS_%04d\" xlink:from=\"LOG_0000\"/>\n", i));
+            }
+            w.write("</mets:structLink>\n</mets:mets>\n");
+        }
+    }
+
+    /**
+     * Load the ruleset of the plugin tests
+     *
+     * @param folder temporary folder to extract the ruleset into
+     * @return the ruleset
+     * @throws IOException
+     * @throws PreferencesException
+     */
+    public static Prefs loadPrefs(Path folder) throws IOException, PreferencesException {
+        Path ruleset = folder.resolve("ruleset.xml");
+        try (InputStream in = SyntheticData.class.getResourceAsStream("/ruleset.xml")) {
+            Files.copy(in, ruleset, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(ruleset.toString());
+        return prefs;
+    }
+
+    /**
+     * Create the plugin configuration for the generated workbooks. No catalogue is configured.
+     *
+     * @param streamingReader true to read the workbooks row by row
+     * @return the configuration
+     * @throws ConfigurationException
+     */
+    public static ImportConfiguration createConfiguration(boolean streamingReader) throws ConfigurationException {
+        XMLConfiguration xml = new XMLConfiguration();
+        xml.setExpressionEngine(new XPathExpressionEngine());
+        xml.load(new StringReader(String.format(CONFIGURATION, streamingReader)));
+        SubnodeConfiguration config = xml.configurationAt("/config");
+        return new ImportConfiguration(config);
+    }
+}